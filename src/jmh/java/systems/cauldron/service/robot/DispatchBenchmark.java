@@ -0,0 +1,60 @@
+package systems.cauldron.service.robot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link DiscordSocket#handleMessage} from a received frame to its handlers, on the inline dispatcher.
+ *
+ * @author Amann Malik
+ */
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    private String messageCreate;
+    private String guildCreate;
+
+    private DiscordSocket subscribed;
+    private DiscordSocket cached;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        messageCreate = Payloads.load(Payloads.DISCORD_MESSAGE_CREATE);
+        guildCreate = Payloads.load(Payloads.DISCORD_GUILD_CREATE);
+        subscribed = new DiscordSocket("token");
+        subscribed.addEventHandler("MESSAGE_CREATE", event -> {
+            blackhole.consume(event.getChannelId());
+            blackhole.consume(event.getData().getString("content"));
+        });
+        cached = new DiscordSocket("token");
+        cached.setEntityCache(new DiscordEntityCache());
+    }
+
+    /**
+     * An event with a handler: envelope scan, routing and the handler decoding the payload.
+     */
+    @Benchmark
+    public void subscribedMessage() {
+        subscribed.handleMessage(new JsonFrame(messageCreate));
+    }
+
+    /**
+     * An event nobody subscribed to, which should be dropped after the envelope scan.
+     */
+    @Benchmark
+    public void unsubscribedGuild() {
+        subscribed.handleMessage(new JsonFrame(guildCreate));
+    }
+
+    /**
+     * A large GUILD_CREATE applied to the entity cache.
+     */
+    @Benchmark
+    public void cachedGuild() {
+        cached.handleMessage(new JsonFrame(guildCreate));
+    }
+
+}
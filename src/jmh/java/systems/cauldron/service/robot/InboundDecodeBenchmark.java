@@ -0,0 +1,97 @@
+package systems.cauldron.service.robot;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.json.JsonObject;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Receive path of {@link JsonSocket}: inflating the transport, then reading a frame's envelope or its whole tree.
+ * {@link #tree} and {@link #inflatedTree} also report the bytes the frame takes on the wire as text and compressed.
+ *
+ * @author Amann Malik
+ */
+@State(Scope.Thread)
+public class InboundDecodeBenchmark {
+
+    @Param({Payloads.DISCORD_READY, Payloads.DISCORD_GUILD_CREATE, Payloads.DISCORD_MESSAGE_CREATE, Payloads.SLACK_MESSAGE})
+    public String payload;
+
+    private String text;
+    private long textBytes;
+    private long compressedBytes;
+    private ByteBuffer compressed;
+    private ZlibStreamDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        text = Payloads.load(payload);
+        textBytes = text.getBytes(StandardCharsets.UTF_8).length;
+        compressed = ByteBuffer.wrap(Payloads.compress(text));
+        compressedBytes = compressed.remaining();
+        decoder = new ZlibStreamDecoder();
+    }
+
+    @TearDown
+    public void tearDown() {
+        decoder.close();
+    }
+
+    @Benchmark
+    public void envelope(Blackhole blackhole) {
+        JsonFrame frame = new JsonFrame(text);
+        blackhole.consume(frame.getOp());
+        blackhole.consume(frame.getEventName());
+        blackhole.consume(frame.getType());
+    }
+
+    /**
+     * Payload bytes of the frame as last decoded. The fields are assigned rather than summed, so with one thread they
+     * read as bytes per frame.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WireSize {
+
+        public long textBytes;
+        public long compressedBytes;
+
+        void record(long textBytes, long compressedBytes) {
+            this.textBytes = textBytes;
+            this.compressedBytes = compressedBytes;
+        }
+    }
+
+    @Benchmark
+    public JsonObject tree(WireSize wire) {
+        wire.record(textBytes, compressedBytes);
+        return new JsonFrame(text).getObject();
+    }
+
+    @Benchmark
+    public String inflate() {
+        decoder.reset();
+        decoder.feed(compressed.duplicate());
+        return new String(decoder.buffer(), 0, decoder.length(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The zlib-stream counterpart of {@link #tree}: the same frame, inflated from its compressed form first.
+     */
+    @Benchmark
+    public JsonObject inflatedTree(WireSize wire) {
+        wire.record(textBytes, compressedBytes);
+        decoder.reset();
+        decoder.feed(compressed.duplicate());
+        return new JsonFrame(new String(decoder.buffer(), 0, decoder.length(), StandardCharsets.UTF_8)).getObject();
+    }
+
+}
@@ -0,0 +1,84 @@
+package systems.cauldron.service.robot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Appending received frames to a {@link FrameJournal}, and reading them back with {@link FrameJournalReader}.
+ *
+ * @author Amann Malik
+ */
+@State(Scope.Thread)
+public class JournalBenchmark {
+
+    @Param({Payloads.DISCORD_MESSAGE_CREATE, Payloads.SLACK_MESSAGE})
+    public String payload;
+
+    private String text;
+    private Path directory;
+    private FrameJournal journal;
+    private FrameJournalReader reader;
+    private int sequence = 0;
+
+    @Setup(Level.Trial)
+    public void openJournal() throws IOException {
+        text = Payloads.load(payload);
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new FrameJournal(directory);
+        // keep the disk footprint of long runs bounded
+        journal.setRetentionSize(256L * 1024L * 1024L);
+        // something to read for the read benchmark, which runs in a trial of its own
+        for (int i = 0; i < 10_000; i++) {
+            append();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openReader() {
+        journal.flush();
+        reader = new FrameJournalReader(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        journal.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void append() {
+        journal.append(++sequence, System.currentTimeMillis(), text);
+    }
+
+    @Benchmark
+    public String read() {
+        if (!reader.next()) {
+            reader = new FrameJournalReader(directory);
+            if (!reader.next()) {
+                return null;
+            }
+        }
+        return reader.getText();
+    }
+
+}
@@ -0,0 +1,59 @@
+package systems.cauldron.service.robot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import javax.json.Json;
+
+/**
+ * Serializing outbound frames: through an intermediate {@link javax.json.JsonObject} as before, and written directly
+ * into a reused {@link FrameBuffer}.
+ *
+ * @author Amann Malik
+ */
+@State(Scope.Thread)
+public class OutboundBenchmark {
+
+    private static final String CHANNEL = "C024BE91L";
+    private static final String TEXT = "deploying robot 1.0 to the staging workspace in 5 minutes";
+
+    private final FrameBuffer frameBuffer = new FrameBuffer(512);
+    private int id = 0;
+
+    @Benchmark
+    public String messageObjectBuilder() {
+        return Json.createObjectBuilder()
+                .add("id", ++id)
+                .add("type", "message")
+                .add("channel", CHANNEL)
+                .add("text", TEXT)
+                .build()
+                .toString();
+    }
+
+    @Benchmark
+    public String messageFrameBuffer() {
+        int messageId = ++id;
+        return frameBuffer.writeObject(frame -> frame
+                .write("id", messageId)
+                .write("type", "message")
+                .write("channel", CHANNEL)
+                .write("text", TEXT));
+    }
+
+    @Benchmark
+    public String heartbeatObjectBuilder() {
+        return Json.createObjectBuilder()
+                .add("op", 1)
+                .add("d", ++id)
+                .build()
+                .toString();
+    }
+
+    @Benchmark
+    public String heartbeatTemplate() {
+        return frameBuffer.writeTemplate("{\"op\":1,\"d\":", ++id, "}");
+    }
+
+}
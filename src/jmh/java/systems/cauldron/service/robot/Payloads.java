@@ -0,0 +1,53 @@
+package systems.cauldron.service.robot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * Representative gateway and RTM payloads, shaped after live sessions but with synthetic identifiers and content.
+ *
+ * @author Amann Malik
+ */
+final class Payloads {
+
+    static final String DISCORD_READY = "discord-ready";
+    static final String DISCORD_GUILD_CREATE = "discord-guild-create";
+    static final String DISCORD_MESSAGE_CREATE = "discord-message-create";
+    static final String SLACK_MESSAGE = "slack-message";
+
+    private Payloads() {
+    }
+
+    static String load(String name) {
+        try (InputStream inputStream = Payloads.class.getResourceAsStream("/payloads/" + name + ".json")) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("unknown payload: " + name);
+            }
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return the payload as the first message of a zlib-stream transport, ending in the 00 00 ff ff flush marker
+     */
+    static byte[] compress(String text) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int length;
+        do {
+            length = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+            outputStream.write(chunk, 0, length);
+        } while (length == chunk.length);
+        deflater.end();
+        return outputStream.toByteArray();
+    }
+
+}
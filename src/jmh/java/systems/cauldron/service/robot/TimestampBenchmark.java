@@ -0,0 +1,22 @@
+package systems.cauldron.service.robot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Instant;
+
+/**
+ * @author Amann Malik
+ */
+@State(Scope.Thread)
+public class TimestampBenchmark {
+
+    private String ts = "1592157764.000400";
+
+    @Benchmark
+    public Instant convertTimestamp() {
+        return Util.convertTimestamp(ts);
+    }
+
+}
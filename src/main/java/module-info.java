@@ -1,6 +1,8 @@
 open module systems.cauldron.service.robot {
     requires tyrus.client;
     requires java.json;
+    requires java.net.http;
+    requires java.management;
     requires org.slf4j;
     requires jakarta.websocket.api;
     exports systems.cauldron.service.robot;
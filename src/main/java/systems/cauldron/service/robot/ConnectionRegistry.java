@@ -0,0 +1,152 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Connections kept under a key, such as a Slack workspace ID, for opening, closing and inspecting many of them at once.
+ * All sockets share the threads of {@link WebSocketRuntime}; the registry adds no threads of its own, and
+ * {@link #connectAll} only waits on the calling thread.
+ *
+ * @author Amann Malik
+ */
+public class ConnectionRegistry<K, C extends RealtimeConnection> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionRegistry.class);
+
+    private final ConcurrentHashMap<K, C> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a connection without connecting it.
+     */
+    public void register(K key, C connection) {
+        if (connections.putIfAbsent(key, connection) != null) {
+            throw new IllegalArgumentException("connection already registered: " + key);
+        }
+    }
+
+    /**
+     * Removes a connection without disconnecting it.
+     *
+     * @return the removed connection, or null if none was registered under the key
+     */
+    public C unregister(K key) {
+        return connections.remove(key);
+    }
+
+    public C get(K key) {
+        return connections.get(key);
+    }
+
+    /**
+     * @return a snapshot of the registered keys
+     */
+    public Set<K> getKeys() {
+        return Set.copyOf(connections.keySet());
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    public int getConnectedCount() {
+        int connected = 0;
+        for (C connection : connections.values()) {
+            if (connection.isConnected()) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * @return keys of the registered connections that are not connected
+     */
+    public Set<K> getDisconnected() {
+        Set<K> disconnected = new HashSet<>();
+        connections.forEach((key, connection) -> {
+            if (!connection.isConnected()) {
+                disconnected.add(key);
+            }
+        });
+        return disconnected;
+    }
+
+    /**
+     * Connects every registered connection that is not connected, at most the given number at a time, and waits for
+     * all of them.
+     *
+     * @return the connections that failed to connect, with the failure
+     */
+    public Map<K, RuntimeException> connectAll(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("invalid parallelism: " + parallelism);
+        }
+        Map<K, RuntimeException> failures = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(parallelism);
+        List<CompletableFuture<?>> attempts = new ArrayList<>();
+        try {
+            for (Map.Entry<K, C> entry : connections.entrySet()) {
+                K key = entry.getKey();
+                C connection = entry.getValue();
+                if (connection.isConnected()) {
+                    continue;
+                }
+                permits.acquire();
+                CompletableFuture<?> attempt;
+                try {
+                    attempt = connection.connectAsync();
+                } catch (RuntimeException ex) {
+                    attempt = CompletableFuture.failedFuture(ex);
+                }
+                attempts.add(attempt.handle((result, ex) -> {
+                    permits.release();
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        failures.put(key, cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause));
+                    }
+                    return null;
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        CompletableFuture.allOf(attempts.toArray(new CompletableFuture<?>[0])).join();
+        if (!failures.isEmpty()) {
+            LOG.warn("{} of {} connections failed to connect", failures.size(), connections.size());
+        }
+        return failures;
+    }
+
+    /**
+     * Disconnects every registered connection that is connected; they stay registered.
+     *
+     * @return the connections that failed to disconnect, with the failure
+     */
+    public Map<K, RuntimeException> disconnectAll() {
+        Map<K, RuntimeException> failures = new ConcurrentHashMap<>();
+        connections.forEach((key, connection) -> {
+            if (!connection.isConnected()) {
+                return;
+            }
+            try {
+                connection.disconnect();
+            } catch (RuntimeException ex) {
+                failures.put(key, ex);
+            }
+        });
+        return failures;
+    }
+
+}
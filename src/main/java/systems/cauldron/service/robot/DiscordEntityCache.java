@@ -0,0 +1,556 @@
+package systems.cauldron.service.robot;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory view of the guilds, channels, roles and members a bot can see, kept current from gateway dispatches.
+ * <p>
+ * Entities are keyed by their snowflake as a primitive {@code long} in open-addressing maps. Each entity type has a
+ * retention limit on the number of entries held; once a type is full further entities of that type are not cached
+ * (and counted as rejected) until others are removed, so memory stays bounded no matter how many guilds are joined.
+ *
+ * @author Amann Malik
+ */
+public class DiscordEntityCache {
+
+    public enum EntityType {
+        GUILD, CHANNEL, ROLE, MEMBER
+    }
+
+    static final Set<String> HANDLED_EVENTS = new HashSet<>(Arrays.asList(
+            "READY",
+            "GUILD_CREATE", "GUILD_UPDATE", "GUILD_DELETE",
+            "CHANNEL_CREATE", "CHANNEL_UPDATE", "CHANNEL_DELETE",
+            "GUILD_ROLE_CREATE", "GUILD_ROLE_UPDATE", "GUILD_ROLE_DELETE",
+            "GUILD_MEMBER_ADD", "GUILD_MEMBER_UPDATE", "GUILD_MEMBER_REMOVE", "GUILD_MEMBERS_CHUNK"
+    ));
+
+    private static final int DEFAULT_MEMBER_RETENTION = 100_000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongObjectMap<Guild> guilds = new LongObjectMap<>();
+    private final LongObjectMap<Channel> channels = new LongObjectMap<>();
+    private final LongObjectMap<Role> roles = new LongObjectMap<>();
+    private final LongObjectMap<LongObjectMap<Member>> membersByGuild = new LongObjectMap<>();
+    // guild channels and roles by guild, so a guild's entries are evicted without scanning every guild's
+    private final LongObjectMap<LongObjectMap<Channel>> channelsByGuild = new LongObjectMap<>();
+    private final LongObjectMap<LongObjectMap<Role>> rolesByGuild = new LongObjectMap<>();
+    private int memberCount = 0;
+
+    private final EnumMap<EntityType, Integer> retention = new EnumMap<>(EntityType.class);
+    private final EnumMap<EntityType, LongAdder> rejected = new EnumMap<>(EntityType.class);
+
+    public DiscordEntityCache() {
+        for (EntityType type : EntityType.values()) {
+            retention.put(type, Integer.MAX_VALUE);
+            rejected.put(type, new LongAdder());
+        }
+        retention.put(EntityType.MEMBER, DEFAULT_MEMBER_RETENTION);
+    }
+
+    /**
+     * @param maxEntries maximum number of entities of this type to hold; 0 disables caching the type
+     */
+    public void setRetention(EntityType type, int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("retention must not be negative");
+        }
+        lock.writeLock().lock();
+        try {
+            retention.put(type, maxEntries);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getRejectedCount(EntityType type) {
+        return rejected.get(type).sum();
+    }
+
+    public Guild getGuild(long guildId) {
+        lock.readLock().lock();
+        try {
+            return guilds.get(guildId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Channel getChannel(long channelId) {
+        lock.readLock().lock();
+        try {
+            return channels.get(channelId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Role getRole(long roleId) {
+        lock.readLock().lock();
+        try {
+            return roles.get(roleId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Member getMember(long guildId, long userId) {
+        lock.readLock().lock();
+        try {
+            LongObjectMap<Member> members = membersByGuild.get(guildId);
+            return members == null ? null : members.get(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size(EntityType type) {
+        lock.readLock().lock();
+        try {
+            switch (type) {
+                case GUILD:
+                    return guilds.size();
+                case CHANNEL:
+                    return channels.size();
+                case ROLE:
+                    return roles.size();
+                default:
+                    return memberCount;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            guilds.clear();
+            channels.clear();
+            roles.clear();
+            membersByGuild.clear();
+            channelsByGuild.clear();
+            rolesByGuild.clear();
+            memberCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a dispatch event; events outside {@link #HANDLED_EVENTS} are ignored.
+     */
+    void handle(String eventName, JsonObject data) {
+        lock.writeLock().lock();
+        try {
+            switch (eventName) {
+                case "READY":
+                    for (JsonValue guild : data.getJsonArray("guilds")) {
+                        long guildId = snowflake(guild.asJsonObject(), "id");
+                        if (!guilds.containsKey(guildId)) {
+                            putGuild(new Guild(guildId, null, 0L, 0, true));
+                        }
+                    }
+                    break;
+                case "GUILD_CREATE":
+                    handleGuildCreate(data);
+                    break;
+                case "GUILD_UPDATE": {
+                    long guildId = snowflake(data, "id");
+                    // GUILD_UPDATE carries no member_count, so the count from GUILD_CREATE stands
+                    Guild previous = guilds.get(guildId);
+                    putGuild(readGuild(data, previous == null ? 0 : previous.memberCount));
+                    putRoles(guildId, data.getJsonArray("roles"));
+                }
+                break;
+                case "GUILD_DELETE": {
+                    long guildId = snowflake(data, "id");
+                    if (data.getBoolean("unavailable", false)) {
+                        Guild guild = guilds.get(guildId);
+                        if (guild != null) {
+                            guilds.put(guildId, new Guild(guildId, guild.name, guild.ownerId, guild.memberCount, true));
+                        }
+                    } else {
+                        removeGuild(guildId);
+                    }
+                }
+                break;
+                case "CHANNEL_CREATE":
+                case "CHANNEL_UPDATE":
+                    putChannel(readChannel(data, snowflake(data, "guild_id")));
+                    break;
+                case "CHANNEL_DELETE":
+                    removeChannel(snowflake(data, "id"));
+                    break;
+                case "GUILD_ROLE_CREATE":
+                case "GUILD_ROLE_UPDATE":
+                    putRole(readRole(data.getJsonObject("role"), snowflake(data, "guild_id")));
+                    break;
+                case "GUILD_ROLE_DELETE":
+                    removeRole(snowflake(data, "role_id"));
+                    break;
+                case "GUILD_MEMBER_ADD": {
+                    Member member = readMember(data, snowflake(data, "guild_id"));
+                    // a member already cached is a redelivered join, already counted
+                    if (getCachedMember(member.guildId, member.userId) == null) {
+                        adjustMemberCount(member.guildId, 1);
+                    }
+                    putMember(member);
+                }
+                break;
+                case "GUILD_MEMBER_UPDATE":
+                    putMember(readMember(data, snowflake(data, "guild_id")));
+                    break;
+                case "GUILD_MEMBER_REMOVE": {
+                    long guildId = snowflake(data, "guild_id");
+                    // large guilds are not fully cached, so a member leaving counts whether it was cached or not
+                    removeMember(guildId, snowflake(data.getJsonObject("user"), "id"));
+                    adjustMemberCount(guildId, -1);
+                }
+                break;
+                case "GUILD_MEMBERS_CHUNK": {
+                    long guildId = snowflake(data, "guild_id");
+                    for (JsonValue member : data.getJsonArray("members")) {
+                        putMember(readMember(member.asJsonObject(), guildId));
+                    }
+                }
+                break;
+                default:
+                    break;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void handleGuildCreate(JsonObject data) {
+        long guildId = snowflake(data, "id");
+        // a guild created again, say after an outage, is a full snapshot; whatever it no longer lists is gone
+        removeGuild(guildId);
+        putGuild(readGuild(data, 0));
+        if (data.containsKey("channels")) {
+            for (JsonValue channel : data.getJsonArray("channels")) {
+                putChannel(readChannel(channel.asJsonObject(), guildId));
+            }
+        }
+        putRoles(guildId, data.getJsonArray("roles"));
+        if (data.containsKey("members")) {
+            for (JsonValue member : data.getJsonArray("members")) {
+                putMember(readMember(member.asJsonObject(), guildId));
+            }
+        }
+    }
+
+    private void putRoles(long guildId, JsonArray guildRoles) {
+        if (guildRoles == null) {
+            return;
+        }
+        for (JsonValue role : guildRoles) {
+            putRole(readRole(role.asJsonObject(), guildId));
+        }
+    }
+
+    private void putGuild(Guild guild) {
+        if (guilds.containsKey(guild.id) || guilds.size() < retention.get(EntityType.GUILD)) {
+            guilds.put(guild.id, guild);
+        } else {
+            rejected.get(EntityType.GUILD).increment();
+        }
+    }
+
+    private void putChannel(Channel channel) {
+        if (channels.containsKey(channel.id) || channels.size() < retention.get(EntityType.CHANNEL)) {
+            Channel previous = channels.put(channel.id, channel);
+            if (previous != null) {
+                unindex(channelsByGuild, previous.guildId, previous.id);
+            }
+            index(channelsByGuild, channel.guildId, channel.id, channel);
+        } else {
+            rejected.get(EntityType.CHANNEL).increment();
+        }
+    }
+
+    private void putRole(Role role) {
+        if (roles.containsKey(role.id) || roles.size() < retention.get(EntityType.ROLE)) {
+            Role previous = roles.put(role.id, role);
+            if (previous != null) {
+                unindex(rolesByGuild, previous.guildId, previous.id);
+            }
+            index(rolesByGuild, role.guildId, role.id, role);
+        } else {
+            rejected.get(EntityType.ROLE).increment();
+        }
+    }
+
+    private Member getCachedMember(long guildId, long userId) {
+        LongObjectMap<Member> members = membersByGuild.get(guildId);
+        return members == null ? null : members.get(userId);
+    }
+
+    private void adjustMemberCount(long guildId, int delta) {
+        Guild guild = guilds.get(guildId);
+        if (guild != null) {
+            int memberCount = Math.max(0, guild.memberCount + delta);
+            guilds.put(guildId, new Guild(guildId, guild.name, guild.ownerId, memberCount, guild.unavailable));
+        }
+    }
+
+    private void putMember(Member member) {
+        LongObjectMap<Member> members = membersByGuild.get(member.guildId);
+        if (members != null && members.containsKey(member.userId)) {
+            members.put(member.userId, member);
+            return;
+        }
+        if (memberCount >= retention.get(EntityType.MEMBER)) {
+            rejected.get(EntityType.MEMBER).increment();
+            return;
+        }
+        if (members == null) {
+            members = new LongObjectMap<>();
+            membersByGuild.put(member.guildId, members);
+        }
+        members.put(member.userId, member);
+        memberCount++;
+    }
+
+    private void removeMember(long guildId, long userId) {
+        LongObjectMap<Member> members = membersByGuild.get(guildId);
+        if (members != null && members.remove(userId) != null) {
+            memberCount--;
+            if (members.isEmpty()) {
+                membersByGuild.remove(guildId);
+            }
+        }
+    }
+
+    private void removeChannel(long channelId) {
+        Channel channel = channels.remove(channelId);
+        if (channel != null) {
+            unindex(channelsByGuild, channel.guildId, channelId);
+        }
+    }
+
+    private void removeRole(long roleId) {
+        Role role = roles.remove(roleId);
+        if (role != null) {
+            unindex(rolesByGuild, role.guildId, roleId);
+        }
+    }
+
+    private void removeGuild(long guildId) {
+        guilds.remove(guildId);
+        LongObjectMap<Channel> guildChannels = channelsByGuild.remove(guildId);
+        if (guildChannels != null) {
+            for (long channelId : guildChannels.keys()) {
+                channels.remove(channelId);
+            }
+        }
+        LongObjectMap<Role> guildRoles = rolesByGuild.remove(guildId);
+        if (guildRoles != null) {
+            for (long roleId : guildRoles.keys()) {
+                roles.remove(roleId);
+            }
+        }
+        LongObjectMap<Member> members = membersByGuild.remove(guildId);
+        if (members != null) {
+            memberCount -= members.size();
+        }
+    }
+
+    /**
+     * Direct message channels have no guild and are not indexed.
+     */
+    private static <V> void index(LongObjectMap<LongObjectMap<V>> byGuild, long guildId, long id, V value) {
+        if (guildId == 0L) {
+            return;
+        }
+        LongObjectMap<V> entries = byGuild.get(guildId);
+        if (entries == null) {
+            entries = new LongObjectMap<>();
+            byGuild.put(guildId, entries);
+        }
+        entries.put(id, value);
+    }
+
+    private static <V> void unindex(LongObjectMap<LongObjectMap<V>> byGuild, long guildId, long id) {
+        if (guildId == 0L) {
+            return;
+        }
+        LongObjectMap<V> entries = byGuild.get(guildId);
+        if (entries != null) {
+            entries.remove(id);
+            if (entries.isEmpty()) {
+                byGuild.remove(guildId);
+            }
+        }
+    }
+
+    private static Guild readGuild(JsonObject data, int defaultMemberCount) {
+        return new Guild(
+                snowflake(data, "id"),
+                data.getString("name", null),
+                snowflake(data, "owner_id"),
+                data.getInt("member_count", defaultMemberCount),
+                data.getBoolean("unavailable", false)
+        );
+    }
+
+    private static Channel readChannel(JsonObject data, long guildId) {
+        return new Channel(
+                snowflake(data, "id"),
+                guildId,
+                data.getInt("type", 0),
+                data.getString("name", null),
+                data.getInt("position", 0),
+                snowflake(data, "parent_id")
+        );
+    }
+
+    private static Role readRole(JsonObject data, long guildId) {
+        return new Role(
+                snowflake(data, "id"),
+                guildId,
+                data.getString("name", null),
+                longValue(data.get("permissions")),
+                data.getInt("color", 0),
+                data.getInt("position", 0)
+        );
+    }
+
+    private static Member readMember(JsonObject data, long guildId) {
+        JsonObject user = data.getJsonObject("user");
+        JsonArray roleArray = data.getJsonArray("roles");
+        long[] roleIds = new long[roleArray == null ? 0 : roleArray.size()];
+        for (int i = 0; i < roleIds.length; i++) {
+            roleIds[i] = longValue(roleArray.get(i));
+        }
+        return new Member(
+                guildId,
+                snowflake(user, "id"),
+                user.getString("username", null),
+                data.getString("nick", null),
+                roleIds,
+                data.getString("joined_at", null)
+        );
+    }
+
+    /**
+     * @return the snowflake stored under the key, or 0 if it is absent or null
+     */
+    private static long snowflake(JsonObject object, String key) {
+        return longValue(object.get(key));
+    }
+
+    private static long longValue(JsonValue value) {
+        if (value == null) {
+            return 0L;
+        }
+        switch (value.getValueType()) {
+            case STRING:
+                return Snowflake.parseLong(((JsonString) value).getString());
+            case NUMBER:
+                return ((JsonNumber) value).longValue();
+            default:
+                return 0L;
+        }
+    }
+
+    public static final class Guild {
+
+        public final long id;
+        public final String name;
+        public final long ownerId;
+        public final int memberCount;
+        public final boolean unavailable;
+
+        Guild(long id, String name, long ownerId, int memberCount, boolean unavailable) {
+            this.id = id;
+            this.name = name;
+            this.ownerId = ownerId;
+            this.memberCount = memberCount;
+            this.unavailable = unavailable;
+        }
+    }
+
+    public static final class Channel {
+
+        public final long id;
+        public final long guildId;
+        public final int type;
+        public final String name;
+        public final int position;
+        public final long parentId;
+
+        Channel(long id, long guildId, int type, String name, int position, long parentId) {
+            this.id = id;
+            this.guildId = guildId;
+            this.type = type;
+            this.name = name;
+            this.position = position;
+            this.parentId = parentId;
+        }
+    }
+
+    public static final class Role {
+
+        public final long id;
+        public final long guildId;
+        public final String name;
+        public final long permissions;
+        public final int color;
+        public final int position;
+
+        Role(long id, long guildId, String name, long permissions, int color, int position) {
+            this.id = id;
+            this.guildId = guildId;
+            this.name = name;
+            this.permissions = permissions;
+            this.color = color;
+            this.position = position;
+        }
+    }
+
+    public static final class Member {
+
+        public final long guildId;
+        public final long userId;
+        public final String username;
+        public final String nickname;
+        private final long[] roleIds;
+        public final String joinedAt;
+
+        Member(long guildId, long userId, String username, String nickname, long[] roleIds, String joinedAt) {
+            this.guildId = guildId;
+            this.userId = userId;
+            this.username = username;
+            this.nickname = nickname;
+            this.roleIds = roleIds;
+            this.joinedAt = joinedAt;
+        }
+
+        public long[] getRoleIds() {
+            return roleIds.clone();
+        }
+
+        public boolean hasRole(long roleId) {
+            for (long id : roleIds) {
+                if (id == roleId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package systems.cauldron.service.robot;
+
+import javax.json.JsonObject;
+
+/**
+ * @author Amann Malik
+ */
+public class DiscordEvent {
+
+    public final int shardId;
+    public final int sequenceNumber;
+    public final String name;
+
+    private final JsonFrame frame;
+
+    public DiscordEvent(int shardId, int sequenceNumber, String name, JsonFrame frame) {
+        this.shardId = shardId;
+        this.sequenceNumber = sequenceNumber;
+        this.name = name;
+        this.frame = frame;
+    }
+
+    /**
+     * @return the channel the event belongs to, or null if it has none
+     */
+    public Snowflake getChannelId() {
+        String channelId = frame.getChannelId();
+        return channelId == null ? null : Snowflake.parse(channelId);
+    }
+
+    /**
+     * @return the guild the event belongs to, or null if it has none
+     */
+    public Snowflake getGuildId() {
+        String guildId = frame.getGuildId();
+        return guildId == null ? null : Snowflake.parse(guildId);
+    }
+
+    /**
+     * Decodes the event payload on first access.
+     */
+    public JsonObject getData() {
+        return frame.getData();
+    }
+}
@@ -9,7 +9,7 @@ public class DiscordGatewaySession {
 
     private boolean ready = false;
 
-    private List<String> guilds = Collections.emptyList();
+    private List<Snowflake> guilds = Collections.emptyList();
 
     public DiscordGatewaySession(String id) {
         this.id = id;
@@ -23,11 +23,11 @@ public class DiscordGatewaySession {
         this.ready = ready;
     }
 
-    public List<String> getGuilds() {
+    public List<Snowflake> getGuilds() {
         return guilds;
     }
 
-    public void setGuilds(List<String> guilds) {
+    public void setGuilds(List<Snowflake> guilds) {
         this.guilds = guilds;
     }
 
@@ -0,0 +1,99 @@
+package systems.cauldron.service.robot;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gateway intents: groups of dispatch events a connection subscribes to at IDENTIFY. Discord never sends events of
+ * intents that were not requested. Privileged intents must additionally be enabled for the application.
+ *
+ * @author Amann Malik
+ */
+public enum DiscordIntent {
+
+    GUILDS(0, false, "GUILD_CREATE", "GUILD_UPDATE", "GUILD_DELETE",
+            "GUILD_ROLE_CREATE", "GUILD_ROLE_UPDATE", "GUILD_ROLE_DELETE",
+            "CHANNEL_CREATE", "CHANNEL_UPDATE", "CHANNEL_DELETE", "CHANNEL_PINS_UPDATE"),
+    GUILD_MEMBERS(1, true, "GUILD_MEMBER_ADD", "GUILD_MEMBER_UPDATE", "GUILD_MEMBER_REMOVE"),
+    GUILD_BANS(2, false, "GUILD_BAN_ADD", "GUILD_BAN_REMOVE"),
+    GUILD_EMOJIS(3, false, "GUILD_EMOJIS_UPDATE"),
+    GUILD_INTEGRATIONS(4, false, "GUILD_INTEGRATIONS_UPDATE"),
+    GUILD_WEBHOOKS(5, false, "WEBHOOKS_UPDATE"),
+    GUILD_INVITES(6, false, "INVITE_CREATE", "INVITE_DELETE"),
+    GUILD_VOICE_STATES(7, false, "VOICE_STATE_UPDATE"),
+    GUILD_PRESENCES(8, true, "PRESENCE_UPDATE"),
+    GUILD_MESSAGES(9, false, "MESSAGE_CREATE", "MESSAGE_UPDATE", "MESSAGE_DELETE", "MESSAGE_DELETE_BULK"),
+    GUILD_MESSAGE_REACTIONS(10, false, "MESSAGE_REACTION_ADD", "MESSAGE_REACTION_REMOVE",
+            "MESSAGE_REACTION_REMOVE_ALL", "MESSAGE_REACTION_REMOVE_EMOJI"),
+    GUILD_MESSAGE_TYPING(11, false, "TYPING_START"),
+    DIRECT_MESSAGES(12, false, "MESSAGE_CREATE", "MESSAGE_UPDATE", "MESSAGE_DELETE", "CHANNEL_PINS_UPDATE"),
+    DIRECT_MESSAGE_REACTIONS(13, false, "MESSAGE_REACTION_ADD", "MESSAGE_REACTION_REMOVE",
+            "MESSAGE_REACTION_REMOVE_ALL", "MESSAGE_REACTION_REMOVE_EMOJI"),
+    DIRECT_MESSAGE_TYPING(14, false, "TYPING_START");
+
+    private static final Map<String, Set<DiscordIntent>> intentsByEvent = new HashMap<>();
+
+    static {
+        for (DiscordIntent intent : values()) {
+            for (String event : intent.events) {
+                intentsByEvent.computeIfAbsent(event, k -> EnumSet.noneOf(DiscordIntent.class)).add(intent);
+            }
+        }
+    }
+
+    public final int bit;
+    public final boolean privileged;
+
+    private final Set<String> events;
+
+    DiscordIntent(int shift, boolean privileged, String... events) {
+        this.bit = 1 << shift;
+        this.privileged = privileged;
+        this.events = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(events)));
+    }
+
+    public Set<String> getEvents() {
+        return events;
+    }
+
+    /**
+     * @return the intents that deliver the given dispatch event; empty for events every connection receives, such as
+     * READY
+     */
+    public static Set<DiscordIntent> forEvent(String eventName) {
+        Set<DiscordIntent> intents = intentsByEvent.get(eventName);
+        return intents == null ? Collections.emptySet() : Collections.unmodifiableSet(intents);
+    }
+
+    /**
+     * @return the smallest intent set delivering all of the given dispatch events
+     */
+    public static Set<DiscordIntent> forEvents(Collection<String> eventNames) {
+        Set<DiscordIntent> intents = EnumSet.noneOf(DiscordIntent.class);
+        for (String eventName : eventNames) {
+            intents.addAll(forEvent(eventName));
+        }
+        return intents;
+    }
+
+    public static Set<DiscordIntent> nonPrivileged() {
+        Set<DiscordIntent> intents = EnumSet.allOf(DiscordIntent.class);
+        intents.removeIf(intent -> intent.privileged);
+        return intents;
+    }
+
+    public static int toBitfield(Collection<DiscordIntent> intents) {
+        int bitfield = 0;
+        for (DiscordIntent intent : intents) {
+            bitfield |= intent.bit;
+        }
+        return bitfield;
+    }
+
+}
@@ -0,0 +1,350 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces Discord REST requests so they stay within the per-route bucket limits and the global limit of a bot token.
+ * <p>
+ * Requests are queued per route and major parameter (e.g. channel ID). Bucket limits are learned from the
+ * {@code X-RateLimit-*} response headers; routes that report the same bucket hash share one budget. A queue only
+ * releases a request when its bucket has budget left, and otherwise waits for the bucket to reset, so a 429 only occurs
+ * when some other client shares the token. If one does occur the request is retried after {@code Retry-After}.
+ * <p>
+ * A bucket that has run out is not refilled on the local clock alone: once its reset time passes a single request
+ * probes the new window, and the rest wait for the limits its response reports.
+ *
+ * @author Amann Malik
+ */
+class DiscordRateLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiscordRateLimiter.class);
+
+    private static final ConcurrentHashMap<String, DiscordRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    private static final int GLOBAL_REQUESTS_PER_SECOND = 50;
+
+    private final ConcurrentHashMap<String, String> bucketHashes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RouteQueue> queues = new ConcurrentHashMap<>();
+
+    private final Object globalLock = new Object();
+    private long globalWindowStart = 0L;
+    private int globalWindowCount = 0;
+    private long globalBlockedUntil = 0L;
+
+    private final LongSupplier clock;
+
+    DiscordRateLimiter() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds
+     */
+    DiscordRateLimiter(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Limits apply per bot token, so every socket using the same token shares one limiter.
+     */
+    static DiscordRateLimiter forToken(String token) {
+        return limiters.computeIfAbsent(token, k -> new DiscordRateLimiter());
+    }
+
+    /**
+     * @param route          method and path template, e.g. {@code POST /channels/{channel.id}/messages}
+     * @param majorParameter value of the major parameter in the path, or an empty string if the route has none
+     */
+    CompletableFuture<HttpResponse<byte[]>> submit(String route, String majorParameter, HttpRequest request) {
+        RouteQueue queue = queues.computeIfAbsent(route + ":" + majorParameter, k -> new RouteQueue(route, majorParameter));
+        PendingRequest pending = new PendingRequest(request);
+        queue.enqueue(pending);
+        return pending.result;
+    }
+
+    private Bucket resolveBucket(String route, String majorParameter) {
+        String hash = bucketHashes.get(route);
+        String key = (hash == null ? route : hash) + ":" + majorParameter;
+        return buckets.computeIfAbsent(key, k -> new Bucket());
+    }
+
+    /**
+     * @return 0 if a global slot was taken, otherwise the milliseconds until one may be available
+     */
+    private long acquireGlobal(long now) {
+        synchronized (globalLock) {
+            if (now < globalBlockedUntil) {
+                return globalBlockedUntil - now;
+            }
+            if (now - globalWindowStart >= 1000L) {
+                globalWindowStart = now;
+                globalWindowCount = 0;
+            }
+            if (globalWindowCount < GLOBAL_REQUESTS_PER_SECOND) {
+                globalWindowCount++;
+                return 0L;
+            }
+            return globalWindowStart + 1000L - now;
+        }
+    }
+
+    private void releaseGlobal() {
+        synchronized (globalLock) {
+            if (globalWindowCount > 0) {
+                globalWindowCount--;
+            }
+        }
+    }
+
+    private void blockGlobal(long until) {
+        synchronized (globalLock) {
+            globalBlockedUntil = Math.max(globalBlockedUntil, until);
+        }
+    }
+
+    private void handleResponse(RouteQueue queue, Bucket bucket, PendingRequest pending, HttpResponse<byte[]> response, Throwable error) {
+        bucket.release();
+        try {
+            if (error != null) {
+                pending.result.completeExceptionally(error);
+            } else {
+                applyResponse(queue, bucket, pending, response);
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn("failed to read rate limits of {}", queue.route, ex);
+            pending.result.completeExceptionally(ex);
+        } finally {
+            queue.drain();
+            // routes sharing the bucket may be waiting on this response too
+            bucket.wakeWaiters();
+            Bucket current = resolveBucket(queue.route, queue.majorParameter);
+            if (current != bucket) {
+                current.wakeWaiters();
+            }
+        }
+    }
+
+    private void applyResponse(RouteQueue queue, Bucket bucket, PendingRequest pending, HttpResponse<byte[]> response) {
+        long now = clock.getAsLong();
+        HttpHeaders headers = response.headers();
+        Optional<String> hash = headers.firstValue("X-RateLimit-Bucket");
+        Bucket target = bucket;
+        if (hash.isPresent() && !hash.get().equals(bucketHashes.get(queue.route))) {
+            bucketHashes.put(queue.route, hash.get());
+            target = resolveBucket(queue.route, queue.majorParameter);
+        }
+
+        Optional<String> remaining = headers.firstValue("X-RateLimit-Remaining");
+        Optional<String> resetAfter = headers.firstValue("X-RateLimit-Reset-After");
+        if (remaining.isPresent() && resetAfter.isPresent()) {
+            target.update(Integer.parseInt(remaining.get()), now + secondsToMillis(resetAfter.get()));
+        } else if (response.statusCode() != 429) {
+            target.markUnlimited();
+        }
+
+        if (response.statusCode() == 429) {
+            long retryAfter = headers.firstValue("Retry-After").map(DiscordRateLimiter::secondsToMillis).orElse(1000L);
+            boolean global = headers.firstValue("X-RateLimit-Global").map(Boolean::parseBoolean).orElse(false);
+            LOG.warn("rate limited on {} ({}), retrying in {} ms", queue.route, global ? "global" : "bucket", retryAfter);
+            if (global) {
+                blockGlobal(now + retryAfter);
+            } else {
+                target.block(now + retryAfter);
+            }
+            queue.retry(pending);
+        } else {
+            pending.result.complete(response);
+        }
+    }
+
+    private static long secondsToMillis(String seconds) {
+        return (long) Math.ceil(Double.parseDouble(seconds) * 1000.0);
+    }
+
+    private static final class PendingRequest {
+
+        final HttpRequest request;
+        final CompletableFuture<HttpResponse<byte[]>> result = new CompletableFuture<>();
+
+        PendingRequest(HttpRequest request) {
+            this.request = request;
+        }
+    }
+
+    private final class RouteQueue {
+
+        final String route;
+        final String majorParameter;
+
+        private final ArrayDeque<PendingRequest> pending = new ArrayDeque<>();
+        private boolean drainScheduled = false;
+        private boolean awaitingResponse = false;
+
+        RouteQueue(String route, String majorParameter) {
+            this.route = route;
+            this.majorParameter = majorParameter;
+        }
+
+        synchronized void enqueue(PendingRequest request) {
+            pending.addLast(request);
+            drain();
+        }
+
+        synchronized void retry(PendingRequest request) {
+            pending.addFirst(request);
+        }
+
+        synchronized void drain() {
+            while (!pending.isEmpty()) {
+                long now = clock.getAsLong();
+                long globalDelay = acquireGlobal(now);
+                if (globalDelay > 0L) {
+                    scheduleDrain(globalDelay);
+                    return;
+                }
+                Bucket bucket = resolveBucket(route, majorParameter);
+                long bucketDelay = bucket.tryAcquire(now);
+                if (bucketDelay != 0L) {
+                    releaseGlobal();
+                    if (bucketDelay > 0L) {
+                        scheduleDrain(bucketDelay);
+                    } else {
+                        // the limits are still unknown; the outstanding response, of whichever route, drains the queue
+                        awaitResponse(bucket);
+                    }
+                    return;
+                }
+                PendingRequest request = pending.pollFirst();
+                Util.sendAsync(request.request, route).whenComplete((response, error) -> handleResponse(this, bucket, request, response, error));
+            }
+        }
+
+        private void awaitResponse(Bucket bucket) {
+            if (awaitingResponse) {
+                return;
+            }
+            awaitingResponse = true;
+            bucket.addWaiter(() -> {
+                synchronized (this) {
+                    awaitingResponse = false;
+                    drain();
+                }
+            });
+        }
+
+        private void scheduleDrain(long delayMilliseconds) {
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+            HashedWheelTimer.getDefault().schedule(() -> {
+                synchronized (this) {
+                    drainScheduled = false;
+                    drain();
+                }
+            }, delayMilliseconds, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class Bucket {
+
+        private boolean unlimited = false;
+        // until the first response arrives only one request is let through to learn the real limits
+        private int remaining = 1;
+        private long resetAt = 0L;
+        private int inFlight = 0;
+        // drains of route queues told to wait for an outstanding response
+        private final ArrayDeque<Runnable> waiters = new ArrayDeque<>();
+
+        /**
+         * @return 0 if a request may be sent, a positive delay in milliseconds until the bucket resets, or -1 if the
+         * bucket is exhausted until an outstanding response reports its limits
+         */
+        synchronized long tryAcquire(long now) {
+            if (unlimited) {
+                inFlight++;
+                return 0L;
+            }
+            if (remaining <= 0 && resetAt != 0L && now >= resetAt) {
+                if (inFlight > 0) {
+                    // a response still to come may belong to either window
+                    return -1L;
+                }
+                // only one request probes the new window; its response reports what is left of it
+                remaining = 1;
+                resetAt = 0L;
+            }
+            if (remaining > 0) {
+                remaining--;
+                inFlight++;
+                return 0L;
+            }
+            if (resetAt > now) {
+                return resetAt - now;
+            }
+            return -1L;
+        }
+
+        synchronized void addWaiter(Runnable waiter) {
+            waiters.addLast(waiter);
+        }
+
+        /**
+         * Runs the waiting drains outside the bucket's lock, since each takes its queue's lock before this one.
+         */
+        void wakeWaiters() {
+            Runnable[] woken;
+            synchronized (this) {
+                if (waiters.isEmpty()) {
+                    return;
+                }
+                woken = waiters.toArray(new Runnable[0]);
+                waiters.clear();
+            }
+            for (Runnable waiter : woken) {
+                waiter.run();
+            }
+        }
+
+        synchronized void release() {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+        }
+
+        synchronized void update(int remaining, long resetAt) {
+            this.unlimited = false;
+            // other outstanding requests will still be counted against the reported remainder
+            int estimate = Math.max(0, remaining - inFlight);
+            if (resetAt > this.resetAt + 1000L || this.resetAt == 0L) {
+                this.remaining = estimate;
+            } else {
+                this.remaining = Math.min(this.remaining, estimate);
+            }
+            this.resetAt = resetAt;
+        }
+
+        synchronized void markUnlimited() {
+            this.unlimited = true;
+        }
+
+        synchronized void block(long until) {
+            this.unlimited = false;
+            this.remaining = 0;
+            this.resetAt = Math.max(this.resetAt, until);
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package systems.cauldron.service.robot;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how a gateway connection recovers from a close, and how long to wait between attempts.
+ * <p>
+ * Delays follow exponential backoff with full jitter: attempt {@code n} waits a uniformly random time between zero and
+ * {@code min(maxDelay, baseDelay * 2^n)}, so shards dropped by the same gateway incident spread their reconnects out
+ * instead of arriving together.
+ *
+ * @author Amann Malik
+ */
+final class DiscordReconnectPolicy {
+
+    enum Action {
+        /**
+         * Reconnect and replay missed events with RESUME.
+         */
+        RESUME,
+        /**
+         * The session is gone; reconnect with a fresh IDENTIFY.
+         */
+        IDENTIFY,
+        /**
+         * Reconnecting cannot succeed without intervention.
+         */
+        FATAL
+    }
+
+    private final long baseDelayMilliseconds;
+    private final long maxDelayMilliseconds;
+
+    DiscordReconnectPolicy(long baseDelayMilliseconds, long maxDelayMilliseconds) {
+        if (baseDelayMilliseconds <= 0L || maxDelayMilliseconds < baseDelayMilliseconds) {
+            throw new IllegalArgumentException("invalid backoff range: " + baseDelayMilliseconds + " to " + maxDelayMilliseconds);
+        }
+        this.baseDelayMilliseconds = baseDelayMilliseconds;
+        this.maxDelayMilliseconds = maxDelayMilliseconds;
+    }
+
+    static Action classify(int closeCode) {
+        switch (closeCode) {
+            case 4003: //not authenticated
+            case 4007: //invalid seq
+            case 4009: //session timeout
+                return Action.IDENTIFY;
+            case 4004: //authentication failed
+            case 4010: //invalid shard
+            case 4011: //sharding required
+            case 4012: //invalid API version
+            case 4013: //invalid intents
+            case 4014: //disallowed intents
+                return Action.FATAL;
+            default:
+                // 4000 unknown error, 4001 unknown opcode, 4002 decode error, 4005 already authenticated,
+                // 4008 rate limited and transport level closes such as 1001 or 1006 all leave the session intact
+                return Action.RESUME;
+        }
+    }
+
+    /**
+     * @param attempt number of consecutive failed attempts so far, starting at zero
+     */
+    long nextDelayMilliseconds(int attempt) {
+        long ceiling = maxDelayMilliseconds;
+        if (attempt < Long.numberOfLeadingZeros(baseDelayMilliseconds) - 1) {
+            ceiling = Math.min(maxDelayMilliseconds, baseDelayMilliseconds << attempt);
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+}
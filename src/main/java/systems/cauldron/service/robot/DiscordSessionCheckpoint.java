@@ -0,0 +1,32 @@
+package systems.cauldron.service.robot;
+
+import java.net.URI;
+
+/**
+ * What a shard needs to RESUME its gateway session from another process: the session, the last sequence number
+ * received on it and the gateway it was opened on.
+ *
+ * @author Amann Malik
+ */
+public class DiscordSessionCheckpoint {
+
+    public final int shardId;
+    public final int shardCount;
+    public final String sessionId;
+    public final int sequenceNumber;
+    public final URI gatewayUri;
+    /**
+     * Epoch milliseconds at which the checkpoint was taken.
+     */
+    public final long savedAt;
+
+    public DiscordSessionCheckpoint(int shardId, int shardCount, String sessionId, int sequenceNumber, URI gatewayUri, long savedAt) {
+        this.shardId = shardId;
+        this.shardCount = shardCount;
+        this.sessionId = sessionId;
+        this.sequenceNumber = sequenceNumber;
+        this.gatewayUri = gatewayUri;
+        this.savedAt = savedAt;
+    }
+
+}
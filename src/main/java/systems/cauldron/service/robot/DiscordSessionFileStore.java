@@ -0,0 +1,118 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps each shard's checkpoint as a small JSON file in a directory, named after the shard.
+ * <p>
+ * A save writes and syncs a temporary file, then renames it over the previous checkpoint, so a crash mid-save leaves
+ * either the old or the new checkpoint and never a torn one. Unreadable checkpoint files are treated as missing.
+ *
+ * @author Amann Malik
+ */
+public class DiscordSessionFileStore implements DiscordSessionStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiscordSessionFileStore.class);
+
+    private final Path directory;
+
+    public DiscordSessionFileStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public DiscordSessionCheckpoint load(int shardId, int shardCount) {
+        Path path = checkpointPath(shardId, shardCount);
+        String text;
+        try {
+            text = Files.readString(path, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        try (JsonReader reader = Json.createReader(new StringReader(text))) {
+            JsonObject object = reader.readObject();
+            return new DiscordSessionCheckpoint(
+                    shardId,
+                    shardCount,
+                    object.getString("session_id"),
+                    object.getInt("seq"),
+                    URI.create(object.getString("gateway_url")),
+                    object.getJsonNumber("saved_at").longValue());
+        } catch (JsonException | ClassCastException | NullPointerException | IllegalArgumentException ex) {
+            LOG.warn("ignoring unreadable session checkpoint {}: {}", path, ex.toString());
+            return null;
+        }
+    }
+
+    @Override
+    public void save(DiscordSessionCheckpoint checkpoint) {
+        String text = Json.createObjectBuilder()
+                .add("session_id", checkpoint.sessionId)
+                .add("seq", checkpoint.sequenceNumber)
+                .add("gateway_url", checkpoint.gatewayUri.toString())
+                .add("saved_at", checkpoint.savedAt)
+                .build()
+                .toString();
+        Path path = checkpointPath(checkpoint.shardId, checkpoint.shardCount);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public void clear(int shardId, int shardCount) {
+        try {
+            Files.deleteIfExists(checkpointPath(shardId, shardCount));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private Path checkpointPath(int shardId, int shardCount) {
+        return directory.resolve("discord-session-" + shardId + "-of-" + shardCount + ".json");
+    }
+
+}
@@ -0,0 +1,30 @@
+package systems.cauldron.service.robot;
+
+/**
+ * Keeps the latest {@link DiscordSessionCheckpoint} of each shard across restarts. {@link DiscordSessionFileStore}
+ * keeps them in local files.
+ * <p>
+ * Called from timer and receive threads, so implementations must be thread safe. Checkpoints are saved at most once
+ * per checkpoint interval per shard (see {@link DiscordSocket#setCheckpointInterval}); a save may block for the
+ * duration of a small write.
+ *
+ * @author Amann Malik
+ */
+public interface DiscordSessionStore {
+
+    /**
+     * @return the shard's last saved checkpoint, or null if it has none
+     */
+    DiscordSessionCheckpoint load(int shardId, int shardCount);
+
+    /**
+     * Replaces the shard's checkpoint. A failed save must leave the previous checkpoint readable.
+     */
+    void save(DiscordSessionCheckpoint checkpoint);
+
+    /**
+     * Forgets the shard's checkpoint once its session can no longer be resumed.
+     */
+    void clear(int shardId, int shardCount);
+
+}
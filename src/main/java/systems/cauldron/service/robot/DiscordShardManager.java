@@ -0,0 +1,316 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.JsonObject;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Opens one {@link DiscordSocket} per gateway shard and funnels the dispatch events of every shard into a single
+ * shared {@link EventDispatcher}.
+ *
+ * @author Amann Malik
+ */
+public class DiscordShardManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiscordShardManager.class);
+
+    // Discord allows max_concurrency IDENTIFYs per 5 second window, one per rate limit bucket
+    private static final long IDENTIFY_WINDOW_MILLISECONDS = 5000L;
+
+    private final String token;
+    private final int requestedShardCount;
+    private final Consumer<DiscordEvent> eventHandler;
+
+    private EventDispatcher dispatcher = defaultDispatcher();
+    // the default dispatcher is shut down with the shards; one passed to setDispatcher is left to its owner
+    private boolean ownsDispatcher = true;
+    private EventDispatcher retiredDispatcher = null;
+
+    private final List<DiscordSocket> shards = new CopyOnWriteArrayList<>();
+
+    private boolean compression = false;
+    private Set<DiscordIntent> intents = null;
+    private int largeThreshold = -1;
+    private Boolean guildSubscriptions = null;
+    private DiscordEntityCache entityCache = null;
+    private HashedWheelTimer timer = HashedWheelTimer.getDefault();
+    private DiscordSessionStore sessionStore = null;
+    private final LatencyHistogram recoveryTime = new LatencyHistogram();
+
+    public DiscordShardManager(String token, Consumer<DiscordEvent> eventHandler) {
+        this(token, 0, eventHandler);
+    }
+
+    /**
+     * @param shardCount number of shards to open, or 0 to use the count recommended by the gateway
+     */
+    public DiscordShardManager(String token, int shardCount, Consumer<DiscordEvent> eventHandler) {
+        if (shardCount < 0) {
+            throw new IllegalArgumentException("invalid shard count " + shardCount);
+        }
+        this.token = token;
+        this.requestedShardCount = shardCount;
+        this.eventHandler = eventHandler;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Gateway intents requested by every shard; see {@link DiscordSocket#setIntents}. Takes effect on the next
+     * {@link #connect}.
+     */
+    public void setIntents(Set<DiscordIntent> intents) {
+        this.intents = intents;
+    }
+
+    /**
+     * See {@link DiscordSocket#setLargeThreshold}. Takes effect on the next {@link #connect}.
+     */
+    public void setLargeThreshold(int largeThreshold) {
+        if (largeThreshold < 50 || largeThreshold > 250) {
+            throw new IllegalArgumentException("large threshold must be between 50 and 250");
+        }
+        this.largeThreshold = largeThreshold;
+    }
+
+    /**
+     * See {@link DiscordSocket#setGuildSubscriptions}. Takes effect on the next {@link #connect}.
+     */
+    public void setGuildSubscriptions(boolean guildSubscriptions) {
+        this.guildSubscriptions = guildSubscriptions;
+    }
+
+    /**
+     * Replaces the dispatcher shared by all shards; defaults to {@link EventDispatcher#striped} with one thread per
+     * available processor. Takes effect on the next {@link #connect}. The caller remains responsible for shutting
+     * down the given dispatcher.
+     */
+    public void setDispatcher(EventDispatcher dispatcher) {
+        if (ownsDispatcher) {
+            if (shards.isEmpty()) {
+                this.dispatcher.shutdown();
+            } else {
+                // connected shards still dispatch to it until they disconnect
+                this.retiredDispatcher = this.dispatcher;
+            }
+        }
+        this.dispatcher = dispatcher;
+        this.ownsDispatcher = false;
+    }
+
+    public EventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Shares one entity cache between all shards. Takes effect on the next {@link #connect}.
+     */
+    public void setEntityCache(DiscordEntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    public DiscordEntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * Shares one heartbeat timer between all shards. Takes effect on the next {@link #connect}.
+     */
+    public void setTimer(HashedWheelTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Checkpoints the session of every shard to the given store; see {@link DiscordSocket#setSessionStore}. Shards
+     * with a checkpoint resume their session on {@link #connect} instead of waiting their turn to IDENTIFY.
+     */
+    public void setSessionStore(DiscordSessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    public void connect() {
+        if (!shards.isEmpty()) {
+            throw new IllegalStateException("attempted to connect already connected shards");
+        }
+
+        JsonObject metadata = DiscordSocket.fetchGatewayMetadata(token);
+        URI serverUri;
+        try {
+            serverUri = new URI(metadata.getString("url"));
+        } catch (URISyntaxException ex) {
+            throw new RuntimeException(ex);
+        }
+        int shardCount = requestedShardCount > 0 ? requestedShardCount : metadata.getInt("shards", 1);
+        int maxConcurrency = 1;
+        if (metadata.containsKey("session_start_limit")) {
+            maxConcurrency = Math.max(1, metadata.getJsonObject("session_start_limit").getInt("max_concurrency", 1));
+        }
+        LOG.info("connecting {} shards with identify concurrency {}", shardCount, maxConcurrency);
+
+        List<DiscordSocket> created = new ArrayList<>(shardCount);
+        for (int shardId = 0; shardId < shardCount; shardId++) {
+            created.add(createShard(shardId, shardCount));
+        }
+        shards.addAll(created);
+
+        try {
+            // RESUME is not subject to the IDENTIFY rate limit, so checkpointed shards all go first
+            boolean[] resumed = new boolean[shardCount];
+            if (sessionStore != null) {
+                List<CompletableFuture<DiscordGatewaySession>> resumes = new ArrayList<>(shardCount);
+                for (DiscordSocket shard : created) {
+                    resumes.add(shard.resumeFromCheckpointAsync());
+                }
+                for (int shardId = 0; shardId < shardCount; shardId++) {
+                    resumed[shardId] = resumes.get(shardId).join() != null;
+                }
+            }
+            // shards [n, n + max_concurrency) each fall into a distinct rate limit bucket and may IDENTIFY together;
+            // each bucket starts one window after the previous one has connected
+            CompletableFuture<Void> identified = null;
+            for (int bucketStart = 0; bucketStart < shardCount; bucketStart += maxConcurrency) {
+                List<DiscordSocket> bucket = new ArrayList<>(maxConcurrency);
+                for (int shardId = bucketStart; shardId < Math.min(shardCount, bucketStart + maxConcurrency); shardId++) {
+                    if (!resumed[shardId]) {
+                        bucket.add(created.get(shardId));
+                    }
+                }
+                if (bucket.isEmpty()) {
+                    continue;
+                }
+                CompletableFuture<Void> start = identified == null
+                        ? CompletableFuture.completedFuture(null)
+                        : identified.thenCompose(v -> delay(IDENTIFY_WINDOW_MILLISECONDS));
+                identified = start.thenCompose(v -> {
+                    List<CompletableFuture<DiscordGatewaySession>> connections = new ArrayList<>(bucket.size());
+                    for (DiscordSocket shard : bucket) {
+                        connections.add(shard.connectAsync(serverUri));
+                    }
+                    return CompletableFuture.allOf(connections.toArray(new CompletableFuture<?>[0]));
+                });
+            }
+            if (identified != null) {
+                identified.join();
+            }
+        } catch (RuntimeException ex) {
+            LOG.error("failed to connect all {} shards, disconnecting", shardCount);
+            for (DiscordSocket shard : created) {
+                try {
+                    // leave whatever did connect resumable for the next attempt
+                    shard.disconnect(true);
+                } catch (RuntimeException closeEx) {
+                    LOG.debug("failed to close shard {}: {}", shard.getShardId(), closeEx.toString());
+                }
+            }
+            shards.clear();
+            releaseDispatcher();
+            throw ex;
+        }
+
+        LOG.info("all {} shards connected", shardCount);
+    }
+
+    public void disconnect() {
+        disconnect(false);
+    }
+
+    /**
+     * @param keepSession whether to leave every shard's session resumable; see {@link DiscordSocket#disconnect(boolean)}
+     */
+    public void disconnect(boolean keepSession) {
+        for (DiscordSocket shard : shards) {
+            shard.disconnect(keepSession);
+        }
+        shards.clear();
+        releaseDispatcher();
+    }
+
+    /**
+     * Shuts down the dispatcher threads this manager started, replacing the default with a fresh one that starts no
+     * threads until the next {@link #connect}.
+     */
+    private void releaseDispatcher() {
+        if (retiredDispatcher != null) {
+            retiredDispatcher.shutdown();
+            retiredDispatcher = null;
+        }
+        if (ownsDispatcher) {
+            dispatcher.shutdown();
+            dispatcher = defaultDispatcher();
+        }
+    }
+
+    private static EventDispatcher defaultDispatcher() {
+        return EventDispatcher.striped(Runtime.getRuntime().availableProcessors());
+    }
+
+    private CompletableFuture<Void> delay(long milliseconds) {
+        CompletableFuture<Void> elapsed = new CompletableFuture<>();
+        timer.schedule(() -> elapsed.complete(null), milliseconds, TimeUnit.MILLISECONDS);
+        return elapsed;
+    }
+
+    private DiscordSocket createShard(int shardId, int shardCount) {
+        DiscordSocket shard = new DiscordSocket(token, shardId, shardCount, eventHandler);
+        shard.setCompression(compression);
+        shard.setIntents(intents);
+        if (largeThreshold > 0) {
+            shard.setLargeThreshold(largeThreshold);
+        }
+        if (guildSubscriptions != null) {
+            shard.setGuildSubscriptions(guildSubscriptions);
+        }
+        shard.setDispatcher(dispatcher);
+        shard.setEntityCache(entityCache);
+        shard.setTimer(timer);
+        shard.setRecoveryTime(recoveryTime);
+        shard.setSessionStore(sessionStore);
+        return shard;
+    }
+
+    /**
+     * Presence is per connection, so the update goes out on every shard.
+     */
+    public void updatePresence(String status, String gameName) {
+        for (DiscordSocket shard : shards) {
+            shard.updatePresence(status, gameName);
+        }
+    }
+
+    public void requestGuildMembers(Snowflake guildId, String query, int limit) {
+        getShardForGuild(guildId).requestGuildMembers(guildId, query, limit);
+    }
+
+    /**
+     * @return time-to-recover of every shard's automatic reconnects
+     */
+    public LatencyHistogram getRecoveryTime() {
+        return recoveryTime;
+    }
+
+    public List<DiscordSocket> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public DiscordSocket getShardForGuild(Snowflake guildId) {
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("no shards are connected");
+        }
+        long shardId = (guildId.longValue() >>> 22) % shards.size();
+        return shards.get((int) shardId);
+    }
+
+}
@@ -5,23 +5,30 @@ import org.slf4j.LoggerFactory;
 
 import javax.json.Json;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.CyclicBarrier;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * @author Amann Malik
  */
-public class DiscordSocket {
+public class DiscordSocket implements RealtimeConnection {
 
     //TODO: properly think about the concurrency situations
 
@@ -31,114 +38,614 @@ public class DiscordSocket {
     private static final String DISCORD_API_BASE_URL = "https://discordapp.com/api";
     private static final String DISCORD_GATEWAY_RESOLUTION_URL = DISCORD_API_BASE_URL + "/gateway/bot";
 
-    private static final long SOCKET_CONNECTION_TIMEOUT = 5000L;
+    private static final int GATEWAY_VERSION = 6;
+
+    private static final String INITIAL_HEARTBEAT_FRAME = "{\"op\":1,\"d\":null}";
+    private static final String HEARTBEAT_FRAME_PREFIX = "{\"op\":1,\"d\":";
+    private static final String HEARTBEAT_FRAME_SUFFIX = "}";
+
+    private static final long HANDSHAKE_TIMEOUT = 15000L;
+
+    private static final String METRICS_SOURCE = "discord";
+    private static final String[] OP_NAMES = {
+            "DISPATCH", "HEARTBEAT", "IDENTIFY", "STATUS_UPDATE", "VOICE_STATE_UPDATE", "VOICE_SERVER_PING",
+            "RESUME", "RECONNECT", "REQUEST_GUILD_MEMBERS", "INVALID_SESSION", "HELLO", "HEARTBEAT_ACK"
+    };
 
     private final String token;
+    private final int shardId;
+    private final int shardCount;
+    private final Consumer<DiscordEvent> eventHandler;
+    private final ConcurrentHashMap<String, List<Consumer<DiscordEvent>>> eventHandlers = new ConcurrentHashMap<>();
     private final JsonSocket socket;
+    private final DiscordRateLimiter rateLimiter;
+    private final GatewaySendScheduler sendScheduler;
+
+    private EventDispatcher dispatcher = EventDispatcher.inline();
+    private final InboundQueue inboundQueue = new InboundQueue(METRICS_SOURCE);
+    private DiscordEntityCache entityCache = null;
 
+    private URI gatewayUri;
     private URI currentServerUri;
 
-    private PeriodicTask heartbeatTask = new PeriodicTask();
+    private boolean compression = false;
+
+    private Set<DiscordIntent> intents = null;
+    private int largeThreshold = -1;
+    private Boolean guildSubscriptions = null;
+    private volatile String identifyFrame = null;
+
+    private HashedWheelTimer timer = HashedWheelTimer.getDefault();
+    private PeriodicTask heartbeatTask = new PeriodicTask(timer);
     private int currentHeartbeatInterval = -1;
-    private boolean waitingForHeartbeatAcknowledgement = false;
+    private volatile boolean waitingForHeartbeatAcknowledgement = false;
+    private volatile long heartbeatSentAt;
+
+    private DiscordReconnectPolicy reconnectPolicy = new DiscordReconnectPolicy(1000L, 60000L);
+    private boolean autoReconnect = true;
+    private BiConsumer<Integer, String> fatalDisconnectHandler = (closeCode, closeReasonPhrase) -> {
+    };
+    private LatencyHistogram recoveryTime = new LatencyHistogram();
+    private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+    private volatile boolean established = false;
+    private volatile boolean closeRequested = false;
+    private volatile boolean fatallyClosed = false;
+    private volatile long disconnectedAt;
 
     private AtomicInteger currentSequenceNumber = new AtomicInteger(-1);
 
-    private final CyclicBarrier heartbeatLatch = new CyclicBarrier(2);
-    private final CyclicBarrier sessionLatch = new CyclicBarrier(2);
+    private DiscordSessionStore sessionStore = null;
+    private int checkpointInterval = 1000;
+    private PeriodicTask checkpointTask = new PeriodicTask(timer);
+    private final Object checkpointLock = new Object();
+    private String checkpointedSessionId = null;
+    private int checkpointedSequenceNumber = -1;
 
+    private volatile CompletableFuture<DiscordGatewaySession> handshake = null;
 
-    private DiscordGatewaySession currentSession;
+    private volatile DiscordGatewaySession currentSession;
 
     public DiscordSocket(String token) {
+        this(token, null);
+    }
+
+    public DiscordSocket(String token, Consumer<DiscordEvent> eventHandler) {
+        this(token, 0, 1, eventHandler);
+    }
+
+    public DiscordSocket(String token, int shardId, int shardCount, Consumer<DiscordEvent> eventHandler) {
+        if (shardCount < 1 || shardId < 0 || shardId >= shardCount) {
+            throw new IllegalArgumentException("invalid shard " + shardId + " of " + shardCount);
+        }
         this.token = token;
-        this.socket = new JsonSocket(this::handleMessage, this::handleDisconnect);
+        this.shardId = shardId;
+        this.shardCount = shardCount;
+        this.eventHandler = eventHandler;
+        this.socket = JsonSocket.lazy(this::handleMessage, this::handleDisconnect);
+        this.socket.setMetricsSource(METRICS_SOURCE);
+        this.rateLimiter = DiscordRateLimiter.forToken(token);
+        this.sendScheduler = new GatewaySendScheduler(this.socket::sendText, METRICS_SOURCE);
+        this.inboundQueue.coalesce("PRESENCE_UPDATE", DiscordSocket::presenceKey);
+        this.inboundQueue.setPolicy("TYPING_START", InboundQueue.Policy.DROP_OLDEST);
+    }
+
+    /**
+     * Subscribes to a single dispatch event type. Dispatches that have no subscriber, and no catch-all handler was
+     * given at construction, are dropped without their payload ever being decoded.
+     */
+    public void addEventHandler(String eventName, Consumer<DiscordEvent> handler) {
+        eventHandlers.computeIfAbsent(eventName, k -> new CopyOnWriteArrayList<>()).add(handler);
+        this.identifyFrame = null;
+    }
+
+    /**
+     * Fixes the gateway intents requested at IDENTIFY. By default they are derived from what this socket consumes: the
+     * intents delivering the events with registered handlers, plus {@link DiscordIntent#GUILDS} for an entity cache,
+     * or every non-privileged intent if a catch-all handler was given. Takes effect on the next IDENTIFY.
+     *
+     * @param intents the intents to request, or null to derive them
+     */
+    public void setIntents(Set<DiscordIntent> intents) {
+        this.intents = intents == null ? null : Set.copyOf(intents);
+        this.identifyFrame = null;
+    }
+
+    public Set<DiscordIntent> getIntents() {
+        Set<DiscordIntent> intents = this.intents;
+        if (intents != null) {
+            return intents;
+        }
+        if (eventHandler != null) {
+            return DiscordIntent.nonPrivileged();
+        }
+        Set<DiscordIntent> derived = DiscordIntent.forEvents(eventHandlers.keySet());
+        if (entityCache != null) {
+            derived.add(DiscordIntent.GUILDS);
+        }
+        return derived;
+    }
+
+    /**
+     * Member count from which guilds arrive without their offline members, between 50 and 250. Takes effect on the
+     * next IDENTIFY.
+     */
+    public void setLargeThreshold(int largeThreshold) {
+        if (largeThreshold < 50 || largeThreshold > 250) {
+            throw new IllegalArgumentException("large threshold must be between 50 and 250");
+        }
+        this.largeThreshold = largeThreshold;
+        this.identifyFrame = null;
+    }
+
+    /**
+     * Whether presence and typing events are sent for guilds. Takes effect on the next IDENTIFY.
+     */
+    public void setGuildSubscriptions(boolean guildSubscriptions) {
+        this.guildSubscriptions = guildSubscriptions;
+        this.identifyFrame = null;
+    }
+
+    public int getShardId() {
+        return shardId;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Selects the thread user event handlers run on; by default they run inline on the socket's receive thread.
+     * Events of the same channel (or guild, for events outside a channel) are always handled in order.
+     */
+    public void setDispatcher(EventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public EventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Events wait here while the dispatcher is behind. By default only the latest waiting PRESENCE_UPDATE of a guild
+     * member is handled, and TYPING_START events are dropped, oldest first, when the queue is full.
+     */
+    public InboundQueue getInboundQueue() {
+        return inboundQueue;
+    }
+
+    /**
+     * Selects the timer heartbeats and paced sends are scheduled on; by default the shared {@link HashedWheelTimer}.
+     * Takes effect on the next {@link #connect}.
+     */
+    public void setTimer(HashedWheelTimer timer) {
+        this.heartbeatTask.stop();
+        this.timer = timer;
+        this.heartbeatTask = new PeriodicTask(timer);
+        this.checkpointTask.stop();
+        this.checkpointTask = new PeriodicTask(timer);
+        this.sendScheduler.setTimer(timer);
+    }
+
+    /**
+     * Whether a connection lost after it was established is recovered automatically, resuming the session where
+     * possible. Enabled by default.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Bounds of the jittered exponential backoff between reconnect attempts; defaults to 1 second doubling up to 60.
+     */
+    public void setReconnectBackoff(long baseDelayMilliseconds, long maxDelayMilliseconds) {
+        this.reconnectPolicy = new DiscordReconnectPolicy(baseDelayMilliseconds, maxDelayMilliseconds);
+    }
+
+    /**
+     * Called with the close code and reason when the gateway closes the connection in a way reconnecting cannot
+     * fix, such as an invalid token or shard.
+     */
+    public void setFatalDisconnectHandler(BiConsumer<Integer, String> fatalDisconnectHandler) {
+        this.fatalDisconnectHandler = fatalDisconnectHandler;
+    }
+
+    /**
+     * @return time from losing an established connection to having its session resumed or replaced
+     */
+    public LatencyHistogram getRecoveryTime() {
+        return recoveryTime;
+    }
+
+    void setRecoveryTime(LatencyHistogram recoveryTime) {
+        this.recoveryTime = recoveryTime;
+    }
+
+    /**
+     * Keeps the given cache up to date from this connection's dispatches. The cache is updated on the receive thread
+     * before any handler sees the event. Caches may be shared between shards.
+     */
+    public void setEntityCache(DiscordEntityCache entityCache) {
+        this.entityCache = entityCache;
+        this.identifyFrame = null;
+    }
+
+    public DiscordEntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * Request zlib-stream transport compression for gateway payloads. Takes effect on the next connection.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Records every received frame, after decompression, to the given journal; null stops journaling. Takes effect
+     * on the next connection.
+     */
+    public void setJournal(FrameJournal journal) {
+        this.socket.setJournal(journal);
     }
 
+    /**
+     * Feeds the dispatch events of a recorded journal through the entity cache and event handlers, as if they had
+     * just been received. Session and heartbeat frames are skipped, so replaying does not touch the live connection.
+     */
+    public void replay(FrameJournalReader reader) {
+        while (reader.next()) {
+            JsonFrame frame = reader.getFrame();
+            if (frame.getOp() != 0) {
+                continue;
+            }
+            String eventName = frame.getEventName();
+            if ("READY".equals(eventName) || "RESUMED".equals(eventName)) {
+                continue;
+            }
+            deliver(frame.getSequence(), eventName, frame);
+        }
+    }
+
+    /**
+     * Saves the session to the given store while connected, so that {@link #connect} in a later process can RESUME it
+     * rather than IDENTIFY again; null stops checkpointing. Takes effect on the next connection.
+     */
+    public void setSessionStore(DiscordSessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    /**
+     * Shortest time between two saves of the session checkpoint; defaults to 1 second. After a restart the gateway
+     * replays the events received since the last save, so handlers may see those events twice.
+     */
+    public void setCheckpointInterval(int checkpointIntervalMilliseconds) {
+        if (checkpointIntervalMilliseconds <= 0) {
+            throw new IllegalArgumentException("invalid checkpoint interval: " + checkpointIntervalMilliseconds);
+        }
+        this.checkpointInterval = checkpointIntervalMilliseconds;
+    }
+
+    /**
+     * Resumes the session checkpointed in the session store if there is one, and otherwise opens a new session.
+     * Blocks until the session is ready; see {@link #connectAsync()}.
+     */
+    @Override
     public void connect() {
-        LOG.info("initializing connection...");
+        join(connectAsync());
+    }
 
-        this.currentServerUri = fetchServerUrl(token);
+    /**
+     * Starts connecting without blocking: resumes the checkpointed session if there is one, and otherwise opens a new
+     * session. The handshake advances as the gateway's frames arrive, so no thread waits on it.
+     *
+     * @return completes with the session once it is ready, or exceptionally if the handshake fails or takes longer
+     * than 15 seconds
+     */
+    @Override
+    public CompletableFuture<DiscordGatewaySession> connectAsync() {
+        return resumeFromCheckpointAsync().thenCompose(session -> session != null
+                ? CompletableFuture.completedFuture(session)
+                : fetchServerUrlAsync(token).thenCompose(this::connectAsync));
+    }
+
+    /**
+     * Connects by resuming the session of the stored checkpoint. Does nothing if this socket already has a session.
+     *
+     * @return false if there is no checkpoint, or the gateway no longer accepts its session, in which case the
+     * checkpoint is cleared and the socket left disconnected
+     */
+    boolean resumeFromCheckpoint() {
+        return resumeFromCheckpointAsync().join() != null;
+    }
 
-        this.socket.open(this.currentServerUri, SOCKET_CONNECTION_TIMEOUT);
-        LOG.info("establishing heartbeat...");
+    /**
+     * @return completes with the resumed session, or with null where {@link #resumeFromCheckpoint} returns false
+     */
+    CompletableFuture<DiscordGatewaySession> resumeFromCheckpointAsync() {
+        DiscordSessionStore store = this.sessionStore;
+        if (store == null || currentSession != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        DiscordSessionCheckpoint checkpoint;
         try {
-            heartbeatLatch.await(5000L, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException | TimeoutException | BrokenBarrierException e) {
-            throw new RuntimeException(e);
+            checkpoint = store.load(shardId, shardCount);
+        } catch (RuntimeException ex) {
+            LOG.warn("failed to load session checkpoint of shard {}: {}", shardId, ex.toString());
+            return CompletableFuture.completedFuture(null);
+        }
+        if (checkpoint == null) {
+            return CompletableFuture.completedFuture(null);
         }
-        heartbeatLatch.reset();
+        LOG.info("resuming session of shard {} from checkpoint at sequence {}", shardId, checkpoint.sequenceNumber);
+        this.currentSession = new DiscordGatewaySession(checkpoint.sessionId);
+        this.currentSequenceNumber.set(checkpoint.sequenceNumber);
+        return connectAsync(checkpoint.gatewayUri).handle((session, ex) -> {
+            if (ex == null) {
+                return session;
+            }
+            LOG.warn("could not resume shard {} from checkpoint: {}", shardId, unwrap(ex).toString());
+            resetSession();
+            return null;
+        });
+    }
 
-        if(this.currentSession == null) {
-            LOG.info("creating new session...");
-            sendIdentify();
-        } else {
-            LOG.info("resuming existing session...");
-            sendResume(this.currentSession.id);
+    void connect(URI serverUri) {
+        join(connectAsync(serverUri));
+    }
+
+    /**
+     * Opens the socket and starts the handshake, which continues on the receive thread: HELLO starts the heartbeat
+     * and sends IDENTIFY or RESUME, and READY or RESUMED completes the returned future. A close or the timeout fails
+     * it, and a failed handshake closes the socket.
+     */
+    CompletableFuture<DiscordGatewaySession> connectAsync(URI serverUri) {
+        CompletableFuture<DiscordGatewaySession> handshake = new CompletableFuture<>();
+        synchronized (this) {
+            CompletableFuture<DiscordGatewaySession> pending = this.handshake;
+            if (pending != null && !pending.isDone()) {
+                throw new IllegalStateException("attempted to connect while a connection attempt is in progress");
+            }
+            this.handshake = handshake;
         }
+        LOG.info("initializing connection for shard {} of {}...", shardId, shardCount);
+
+        this.closeRequested = false;
+        this.fatallyClosed = false;
+        this.gatewayUri = serverUri;
+        this.currentServerUri = resolveGatewayUri(serverUri);
+        this.socket.setZlibStream(compression);
+
+        this.sendScheduler.open();
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> handshake.completeExceptionally(
+                new TimeoutException("gateway handshake of shard " + shardId + " timed out")), HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS);
+        CompletableFuture<Void> opened;
         try {
-            sessionLatch.await(5000L, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
-            throw new RuntimeException(e);
+            opened = this.socket.openAsync(this.currentServerUri);
+        } catch (RuntimeException ex) {
+            timeout.cancel();
+            handshake.completeExceptionally(ex);
+            return handshake;
         }
-        sessionLatch.reset();
+        opened.whenComplete((v, ex) -> {
+            if (ex != null) {
+                handshake.completeExceptionally(ex);
+            }
+        });
+        handshake.whenComplete((session, ex) -> {
+            timeout.cancel();
+            if (ex == null) {
+                return;
+            }
+            // a connection still opening is dropped once it opens
+            opened.cancel(false);
+            if (socket.isOpen()) {
+                try {
+                    socket.close(4000, "gateway handshake failed");
+                } catch (RuntimeException closeException) {
+                    LOG.debug("failed to close socket after failed handshake", closeException);
+                }
+            }
+        });
+        return handshake;
+    }
 
+    /**
+     * READY or RESUMED arrived: the session is usable and the lower send lanes may open.
+     */
+    private void completeHandshake() {
+        this.established = true;
+        this.sendScheduler.establish();
+        if (this.sessionStore != null) {
+            // saves happen on timer threads, never on the receive thread
+            timer.schedule(this::checkpoint, 0L, TimeUnit.MILLISECONDS);
+            checkpointTask.start(this.checkpointInterval, this::checkpoint);
+        }
         LOG.info("connection established");
+        CompletableFuture<DiscordGatewaySession> handshake = this.handshake;
+        if (handshake != null) {
+            handshake.complete(this.currentSession);
+        }
     }
 
-
-    //TODO: interrupt and cleanup any  waiting threads
+    @Override
     public void disconnect() {
-        this.socket.close(1000, "client requested disconnection");
-        if(this.currentSession != null && this.currentSession.isReady()) {
-            this.currentSession.setReady(false);
+        disconnect(false);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return established && socket.isOpen();
+    }
+
+    /**
+     * Closing normally ends the session on the gateway's side as well, and clears its checkpoint. A connection attempt
+     * still in progress fails, so nothing is left waiting on it.
+     *
+     * @param keepSession whether to leave the session resumable instead, for a restart that resumes it through the
+     *                    session store
+     */
+    public void disconnect(boolean keepSession) {
+        this.closeRequested = true;
+        this.established = false;
+        this.heartbeatTask.stop();
+        this.checkpointTask.stop();
+        try {
+            // the gateway may already have closed the socket; the session state below is reset either way
+            if (keepSession) {
+                checkpoint();
+                if (this.socket.isOpen()) {
+                    // any code other than 1000 and 1001 keeps the session alive on the gateway
+                    this.socket.close(4000, "client restarting");
+                }
+            } else if (this.socket.isOpen()) {
+                this.socket.close(1000, "client requested disconnection");
+            }
+        } finally {
+            if (!keepSession) {
+                clearCheckpoint();
+            }
+            this.inboundQueue.releaseBlocked();
+            DiscordGatewaySession session = this.currentSession;
+            if (session != null && session.isReady()) {
+                session.setReady(false);
+            }
+            CompletableFuture<DiscordGatewaySession> handshake = this.handshake;
+            if (handshake != null && !handshake.isDone()) {
+                handshake.completeExceptionally(new IllegalStateException("disconnected during handshake"));
+            }
         }
     }
 
+    /**
+     * Sets the bot's status ({@code online}, {@code dnd}, {@code idle} or {@code invisible}) and the game shown under
+     * its name. Presence updates are paced behind heartbeats; if several are waiting only the newest is sent.
+     *
+     * @param gameName name of the game being played, or null to show none
+     */
+    public void updatePresence(String status, String gameName) {
+        String frame = socket.serialize(object -> {
+            object.write("op", 3)
+                    .writeStartObject("d")
+                    .writeNull("since");
+            if (gameName == null) {
+                object.writeNull("game");
+            } else {
+                object.writeStartObject("game")
+                        .write("name", gameName)
+                        .write("type", 0)
+                        .writeEnd();
+            }
+            object.write("status", status)
+                    .write("afk", false)
+                    .writeEnd();
+        });
+        sendScheduler.submit(GatewaySendScheduler.Priority.PRESENCE, "STATUS_UPDATE", frame);
+    }
+
+    /**
+     * Asks the gateway for a guild's members; they arrive as {@code GUILD_MEMBERS_CHUNK} events. Requests are paced
+     * behind heartbeats and presence updates.
+     *
+     * @param query username prefix to match, or an empty string for all members
+     * @param limit most members to return, or 0 for no limit when the query is empty
+     * @throws java.util.concurrent.RejectedExecutionException if too many requests are already waiting
+     */
+    public void requestGuildMembers(Snowflake guildId, String query, int limit) {
+        String frame = socket.serialize(object -> object
+                .write("op", 8)
+                .writeStartObject("d")
+                .write("guild_id", guildId.toString())
+                .write("query", query)
+                .write("limit", limit)
+                .writeEnd());
+        sendScheduler.submit(GatewaySendScheduler.Priority.REQUEST, "REQUEST_GUILD_MEMBERS", frame);
+    }
+
+    /**
+     * @return number of gateway frames waiting for the send rate limit
+     */
+    public int getSendQueueDepth() {
+        return sendScheduler.getQueueDepth();
+    }
+
+    /**
+     * @return time gateway frames waited for the send rate limit
+     */
+    public LatencyHistogram getSendDelay() {
+        return sendScheduler.getSendDelay();
+    }
+
     public void createMessage(String channelId, String text) {
+        createMessage(Snowflake.parse(channelId), text);
+    }
+
+    public void createMessage(Snowflake channelId, String text) {
+        JsonObject metadata = createMessageAsync(channelId, text).join();
+        //TODO: use this for something
+    }
 
-        String url = DISCORD_API_BASE_URL + "/channels/"+channelId+"/messages";
+    public CompletableFuture<JsonObject> createMessageAsync(String channelId, String text) {
+        return createMessageAsync(Snowflake.parse(channelId), text);
+    }
+
+    /**
+     * Non-blocking variant of {@link #createMessage}; completes with the created message object. Requests are paced
+     * per channel according to the rate limits reported by Discord.
+     */
+    public CompletableFuture<JsonObject> createMessageAsync(Snowflake channelId, String text) {
+        String channel = channelId.toString();
+        HttpRequest request = Util.buildPostRequest(messagesUrl(channel), authorizationHeaders(), messageContent(text));
+        return rateLimiter.submit("POST /channels/{channel.id}/messages", channel, request)
+                .thenApply(Util::handleJsonResponse);
+    }
 
-        JsonObject content = Json.createObjectBuilder()
+    private static String messagesUrl(String channelId) {
+        return DISCORD_API_BASE_URL + "/channels/" + channelId + "/messages";
+    }
+
+    private static JsonObject messageContent(String text) {
+        return Json.createObjectBuilder()
                 .add("content", text)
                 .build();
+    }
+
+    private HashMap<String, String> authorizationHeaders() {
+        return authorizationHeaders(token);
+    }
 
+    private static HashMap<String, String> authorizationHeaders(String token) {
         HashMap<String, String> headers = new HashMap<>(2);
         headers.put("Authorization", "Bot " + token);
         headers.put("User-Agent", "Bot");
-        try {
-            JsonObject metadata = Util.postResource(url, headers, content);
-            //TODO: use this for something
-        } catch (IOException ex) {
-            throw new RuntimeException(ex);
-        }
+        return headers;
     }
 
 
-    private void handleMessage(JsonObject message) {
-        int opCode = message.getInt("op");
+    void handleMessage(JsonFrame message) {
+        long receivedAt = System.nanoTime();
+        int opCode = message.getOp();
+        String frameType = opCode == 0 ? message.getEventName() : opName(opCode);
+        Metrics metrics = Metrics.get();
+        metrics.parseLatency(METRICS_SOURCE, System.nanoTime() - receivedAt);
+        metrics.frameReceived(METRICS_SOURCE, frameType);
         switch (opCode) {
             case 0: {
                 //Event Dispatch
-                int sequenceNumber = message.getInt("s");
+                int sequenceNumber = message.getSequence();
                 currentSequenceNumber.set(sequenceNumber);
-                String eventName = message.getString("t");
-                JsonObject eventData = message.getJsonObject("d");
+                String eventName = message.getEventName();
                 switch (eventName) {
                     case "READY": {
                         if (currentSession != null) {
                             throw new IllegalStateException("existing session state encountered during READY event");
                         }
+                        JsonObject eventData = message.getData();
                         String sessionId = eventData.getString("session_id");
                         currentSession = new DiscordGatewaySession(sessionId);
-                        List<String> guilds = eventData.getJsonArray("guilds").stream().map(v->(JsonObject)v).map(o->o.getString("id")).collect(Collectors.toList());
+                        List<Snowflake> guilds = eventData.getJsonArray("guilds").stream().map(v->(JsonObject)v).map(o->Snowflake.parse(o.getString("id"))).collect(Collectors.toList());
                         currentSession.setGuilds(guilds);
                         currentSession.setReady(true);
-                        try {
-                            sessionLatch.await(1L, TimeUnit.SECONDS);
-                        } catch (InterruptedException | TimeoutException | BrokenBarrierException e) {
-                            throw new RuntimeException(e);
-                        }
+                        completeHandshake();
                     }
                     break;
                     case "RESUMED": {
@@ -146,58 +653,53 @@ public class DiscordSocket {
                             throw new IllegalStateException("unexpected session state encountered during RESUMED event");
                         }
                         currentSession.setReady(true);
-                        try {
-                            sessionLatch.await(1L, TimeUnit.SECONDS);
-                        } catch (InterruptedException | TimeoutException | BrokenBarrierException e) {
-                            throw new RuntimeException(e);
-                        }
+                        completeHandshake();
                     }
                     break;
                 }
+                deliver(sequenceNumber, eventName, message);
             }
             break;
             case 1: {
                 //Heartbeat Request
-                //TODO: properly understand protocol behavior. here we are resetting the heartbeat timer to 0 then immediately responding with a heartbeat
-                heartbeatTask.start(this.currentHeartbeatInterval, this::sendHeartbeat);
+                // the server is evidently alive, so this answers without touching the pending ACK or the timer
                 sendHeartbeat();
             }
             break;
             case 7: {
                 //Reconnect Request
-                socket.close(1000, "server requested client reconnect");
-                socket.open(this.currentServerUri, SOCKET_CONNECTION_TIMEOUT);
+                // closing with a non-1000 code keeps the session resumable; the reconnect happens off this thread
+                socket.close(4000, "server requested client reconnect");
             }
             break;
             case 9: {
-                //TODO: all this shit
-                //Invalid Session (3)
-                if (currentSession == null) {
-                    // IDENTIFY failure
-                    throw new UnsupportedOperationException("IDENTIFY command failed");
-                } else {
-                    //TODO: do we always need to check if "d" exists?
-                    boolean isResumable = message.containsKey("d") && message.getBoolean("d");
-                    if (!currentSession.isReady()) {
-                        // RESUME failure
-                        throw new UnsupportedOperationException("RESUME command failed");
-                    } else {
-                        // out of process session invalidation
-                        throw new UnsupportedOperationException("active session was invalidated");
-                    }
+                //Invalid Session
+                boolean isResumable = message.getDataValue() == JsonValue.TRUE;
+                LOG.warn("gateway invalidated session of shard {} (resumable: {})", shardId, isResumable);
+                if (!isResumable) {
+                    resetSession();
                 }
+                socket.close(4000, "session invalidated");
             }
-            //break;
+            break;
             case 10: {
                 //Hello
                 //TODO: properly understand protocol behavior. here we are waiting the entire interval before sending our initial heartbeat
-                JsonObject eventData = message.getJsonObject("d");
+                JsonObject eventData = message.getData();
                 this.currentHeartbeatInterval = eventData.getInt("heartbeat_interval");
-                heartbeatTask.start(this.currentHeartbeatInterval, this::sendHeartbeat);
-                try {
-                    heartbeatLatch.await(1L, TimeUnit.SECONDS);
-                } catch (InterruptedException | TimeoutException | BrokenBarrierException e) {
-                    throw new RuntimeException(e);
+                heartbeatTask.start(this.currentHeartbeatInterval, this::heartbeatTick);
+                CompletableFuture<DiscordGatewaySession> handshake = this.handshake;
+                if (handshake == null || handshake.isDone()) {
+                    LOG.debug("received HELLO outside of a handshake");
+                    break;
+                }
+                DiscordGatewaySession session = this.currentSession;
+                if (session == null) {
+                    LOG.info("creating new session...");
+                    sendIdentify();
+                } else {
+                    LOG.info("resuming existing session...");
+                    sendResume(session.id);
                 }
             }
             break;
@@ -205,8 +707,9 @@ public class DiscordSocket {
                 //Heartbeat ACK
                 if (waitingForHeartbeatAcknowledgement) {
                     waitingForHeartbeatAcknowledgement = false;
+                    metrics.heartbeatRoundTrip(METRICS_SOURCE, System.nanoTime() - heartbeatSentAt);
                 } else {
-                    throw new RuntimeException("received unexpected heartbeat acknowledgement");
+                    LOG.debug("received unexpected heartbeat acknowledgement");
                 }
             }
             break;
@@ -216,100 +719,314 @@ public class DiscordSocket {
 
     }
 
+    private void deliver(int sequenceNumber, String eventName, JsonFrame message) {
+        DiscordEntityCache entityCache = this.entityCache;
+        if (entityCache != null && DiscordEntityCache.HANDLED_EVENTS.contains(eventName)) {
+            entityCache.handle(eventName, message.getData());
+        }
+        dispatch(sequenceNumber, eventName, message);
+    }
+
+    private void dispatch(int sequenceNumber, String eventName, JsonFrame message) {
+        List<Consumer<DiscordEvent>> handlers = eventHandlers.get(eventName);
+        if (eventHandler == null && handlers == null) {
+            return;
+        }
+        DiscordEvent event = new DiscordEvent(shardId, sequenceNumber, eventName, message);
+        inboundQueue.offer(dispatcher, eventName, message, orderingKey(message), () -> {
+            long start = System.nanoTime();
+            try {
+                if (eventHandler != null) {
+                    eventHandler.accept(event);
+                }
+                if (handlers != null) {
+                    for (Consumer<DiscordEvent> handler : handlers) {
+                        handler.accept(event);
+                    }
+                }
+            } finally {
+                Metrics.get().dispatchLatency(METRICS_SOURCE, System.nanoTime() - start);
+            }
+        });
+    }
+
+    private static String opName(int opCode) {
+        return opCode >= 0 && opCode < OP_NAMES.length ? OP_NAMES[opCode] : "UNKNOWN";
+    }
+
+    private static Object presenceKey(JsonFrame message) {
+        JsonObject user = message.getData().getJsonObject("user");
+        return user == null ? null : message.getGuildId() + "/" + user.getString("id", null);
+    }
+
+    private Object orderingKey(JsonFrame message) {
+        String channelId = message.getChannelId();
+        if (channelId != null) {
+            return channelId;
+        }
+        String guildId = message.getGuildId();
+        if (guildId != null) {
+            return guildId;
+        }
+        return this;
+    }
+
     private void handleDisconnect(int closeCode, String closeReasonPhrase) {
-        switch (closeCode) {
-            case 1000:
+        heartbeatTask.stop();
+        sendScheduler.close();
+        waitingForHeartbeatAcknowledgement = false;
+        inboundQueue.releaseBlocked();
+        DiscordGatewaySession session = this.currentSession;
+        if (session != null) {
+            session.setReady(false);
+        }
+        // fail a handshake still in progress right away rather than at its timeout
+        CompletableFuture<DiscordGatewaySession> handshake = this.handshake;
+        if (handshake != null && !handshake.isDone()) {
+            handshake.completeExceptionally(new IllegalStateException("connection closed during handshake with code " + closeCode + ": " + closeReasonPhrase));
+        }
+
+        if (closeRequested) {
+            LOG.info("socket connection closed");
+            return;
+        }
+        LOG.warn("socket connection of shard {} closed by server with code {}: {}", shardId, closeCode, closeReasonPhrase);
+        switch (DiscordReconnectPolicy.classify(closeCode)) {
+            case FATAL:
+                fatallyClosed = true;
+                established = false;
+                LOG.error("shard {} cannot reconnect after close code {}", shardId, closeCode);
+                fatalDisconnectHandler.accept(closeCode, closeReasonPhrase);
                 return;
-            case 4000: //unknown error -- We're not sure what went wrong. Try reconnecting?
-                break;
-            case 4001: //unknown opcode -- You sent an invalid Gateway opcode or an invalid payload for an opcode. Don't do that!
-                break;
-            case 4002: //decode error -- You sent an invalid payload to us. Don't do that!
-                break;
-            case 4003: //not authenticated -- You sent us a payload prior to identifying.
-                break;
-            case 4004: //authentication failed -- The account token sent with your identify payload is incorrect.
-                break;
-            case 4005: //already authenticated -- You sent more than one identify payload. Don't do that!
-                break;
-            case 4007: //invalid seq -- The sequence sent when resuming the session was invalid. Reconnect and start a new session.
+            case IDENTIFY:
+                resetSession();
                 break;
-            case 4008: //rate limited -- Woah nelly! You're sending payloads to us too quickly. Slow it down!
-                break;
-            case 4009: //session timeout -- Your session timed out. Reconnect and start a new one.
-                break;
-            case 4010: //invalid shard -- You sent us an invalid shard when identifying.
-                break;
-            case 4011: //sharding required -- The session would have handled too many guilds - you are required to shard your connection in order to connect.
-                break;
-            default:
+            case RESUME:
                 break;
         }
-        //TODO: proper handling/recovery
-        LOG.info("socket connection closed by server: " + closeReasonPhrase);
-        throw new RuntimeException(closeReasonPhrase);
+        if (established && autoReconnect) {
+            scheduleReconnect();
+        }
     }
 
+    private void resetSession() {
+        this.currentSession = null;
+        this.currentSequenceNumber.set(-1);
+        if (this.sessionStore != null) {
+            // may be called on the receive thread, which must not wait on the store
+            timer.schedule(this::clearStaleCheckpoint, 0L, TimeUnit.MILLISECONDS);
+        }
+    }
 
-    private void sendResume(String sessionId) {
+    /**
+     * Saves the session if it is ready and has moved on since the last save.
+     */
+    private void checkpoint() {
+        DiscordSessionStore store = this.sessionStore;
+        if (store == null) {
+            return;
+        }
+        synchronized (checkpointLock) {
+            DiscordGatewaySession session = this.currentSession;
+            int sequenceNumber = this.currentSequenceNumber.get();
+            if (session == null || !session.isReady()) {
+                return;
+            }
+            if (session.id.equals(checkpointedSessionId) && sequenceNumber == checkpointedSequenceNumber) {
+                return;
+            }
+            try {
+                store.save(new DiscordSessionCheckpoint(shardId, shardCount, session.id, sequenceNumber, gatewayUri, System.currentTimeMillis()));
+                checkpointedSessionId = session.id;
+                checkpointedSequenceNumber = sequenceNumber;
+            } catch (RuntimeException ex) {
+                LOG.warn("failed to save session checkpoint of shard {}: {}", shardId, ex.toString());
+            }
+        }
+    }
 
-        JsonObject object = Json.createObjectBuilder()
-                .add("op", 6)
-                .add("d", Json.createObjectBuilder()
-                        .add("token", this.token)
-                        .add("session_id", sessionId)
-                        .add("seq", this.currentSequenceNumber.get())
-                        .build()
-                ).build();
+    /**
+     * Clears the checkpoint unless a newer session has become ready since the old one was invalidated; that session's
+     * own checkpoint replaces the stale one.
+     */
+    private void clearStaleCheckpoint() {
+        synchronized (checkpointLock) {
+            DiscordGatewaySession session = this.currentSession;
+            if (session == null || !session.isReady()) {
+                clearCheckpoint();
+            }
+        }
+    }
 
-        socket.send(object);
+    private void clearCheckpoint() {
+        DiscordSessionStore store = this.sessionStore;
+        if (store == null) {
+            return;
+        }
+        synchronized (checkpointLock) {
+            checkpointedSessionId = null;
+            checkpointedSequenceNumber = -1;
+            try {
+                store.clear(shardId, shardCount);
+            } catch (RuntimeException ex) {
+                LOG.warn("failed to clear session checkpoint of shard {}: {}", shardId, ex.toString());
+            }
+        }
     }
 
-    private void sendIdentify() {
+    /**
+     * Starts a reconnect cycle unless one is already running; the running cycle retries until it succeeds.
+     */
+    private void scheduleReconnect() {
+        if (!reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        disconnectedAt = System.nanoTime();
+        long delay = reconnectPolicy.nextDelayMilliseconds(0);
+        LOG.info("reconnecting shard {} in {} ms", shardId, delay);
+        timer.schedule(() -> attemptReconnect(1), delay, TimeUnit.MILLISECONDS);
+    }
 
-        JsonObject object = Json.createObjectBuilder()
-                .add("op", 2)
-                .add("d", Json.createObjectBuilder()
-                        .add("token", this.token)
-                        .add("properties", Json.createObjectBuilder()
-                                .add("$os", "linux")
-                                .add("$browser", "robot")
-                                .add("$device", "robot")
-                                .build()
-                        ).build()
-                ).build();
+    private void attemptReconnect(int attempt) {
+        if (closeRequested || fatallyClosed) {
+            reconnecting.set(false);
+            return;
+        }
+        CompletableFuture<DiscordGatewaySession> reconnect;
+        try {
+            reconnect = connectAsync(gatewayUri);
+        } catch (RuntimeException ex) {
+            reconnect = CompletableFuture.failedFuture(ex);
+        }
+        reconnect.whenComplete((session, ex) -> {
+            if (ex != null) {
+                Metrics.get().reconnect(METRICS_SOURCE, false);
+                long delay = reconnectPolicy.nextDelayMilliseconds(attempt);
+                LOG.warn("reconnect attempt {} of shard {} failed, retrying in {} ms: {}", attempt, shardId, delay, unwrap(ex).toString());
+                timer.schedule(() -> attemptReconnect(attempt + 1), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            recoveryTime.record(System.nanoTime() - disconnectedAt);
+            Metrics.get().reconnect(METRICS_SOURCE, true);
+            LOG.info("shard {} recovered after {} attempts", shardId, attempt);
+            reconnecting.set(false);
+            if (!socket.isOpen()) {
+                // lost again before the cycle finished
+                scheduleReconnect();
+            }
+        });
+    }
 
-        socket.send(object);
+    private void sendResume(String sessionId) {
+        int sequenceNumber = this.currentSequenceNumber.get();
+        sendScheduler.submit(GatewaySendScheduler.Priority.CONTROL, "RESUME", socket.serialize(frame -> frame
+                .write("op", 6)
+                .writeStartObject("d")
+                .write("token", this.token)
+                .write("session_id", sessionId)
+                .write("seq", sequenceNumber)
+                .writeEnd()));
     }
 
-    private void sendHeartbeat() {
+    private void sendIdentify() {
+        String frame = this.identifyFrame;
+        if (frame == null) {
+            // serialized once per configuration and replayed on every reconnect
+            int intentBits = DiscordIntent.toBitfield(getIntents());
+            frame = new FrameBuffer(256).writeObject(object -> {
+                object.write("op", 2)
+                        .writeStartObject("d")
+                        .write("token", this.token)
+                        .writeStartObject("properties")
+                        .write("$os", "linux")
+                        .write("$browser", "robot")
+                        .write("$device", "robot")
+                        .writeEnd();
+                if (shardCount > 1) {
+                    object.writeStartArray("shard")
+                            .write(shardId)
+                            .write(shardCount)
+                            .writeEnd();
+                }
+                if (largeThreshold > 0) {
+                    object.write("large_threshold", largeThreshold);
+                }
+                if (guildSubscriptions != null) {
+                    object.write("guild_subscriptions", guildSubscriptions);
+                }
+                object.write("intents", intentBits);
+                object.writeEnd();
+            });
+            this.identifyFrame = frame;
+        }
+        sendScheduler.submit(GatewaySendScheduler.Priority.CONTROL, "IDENTIFY", frame);
+    }
+
+    /**
+     * Runs every heartbeat interval; a heartbeat still unacknowledged from the last tick means a zombied connection.
+     */
+    private void heartbeatTick() {
         if (waitingForHeartbeatAcknowledgement) {
-            this.socket.close(1008, "heartbeat period elapsed without receiving heartbeat ACK");
-            //TODO: better handling
-            throw new RuntimeException("heartbeat period elapsed without receiving heartbeat ACK");
+            // a non-1000 close keeps the session resumable
+            LOG.warn("heartbeat period elapsed without receiving heartbeat ACK");
+            this.socket.close(4000, "heartbeat period elapsed without receiving heartbeat ACK");
+            return;
         }
+        waitingForHeartbeatAcknowledgement = true;
+        heartbeatSentAt = System.nanoTime();
+        sendHeartbeat();
+    }
+
+    private void sendHeartbeat() {
+        int sequenceNumber = currentSequenceNumber.get();
+        String frame = sequenceNumber == -1
+                ? INITIAL_HEARTBEAT_FRAME
+                : this.socket.serialize(HEARTBEAT_FRAME_PREFIX, sequenceNumber, HEARTBEAT_FRAME_SUFFIX);
+        sendScheduler.submit(GatewaySendScheduler.Priority.CONTROL, "HEARTBEAT", frame);
+    }
+
+    private static CompletableFuture<URI> fetchServerUrlAsync(String token) {
+        return Util.fetchResourceAsync(DISCORD_GATEWAY_RESOLUTION_URL, authorizationHeaders(token)).thenApply(metadata -> {
+            try {
+                return new URI(metadata.getString("url"));
+            } catch (URISyntaxException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
 
-        JsonObjectBuilder builder = Json.createObjectBuilder();
-        builder.add("op", 1);
-        if (currentSequenceNumber.get() == -1) {
-            builder.addNull("d");
-        } else {
-            builder.add("d", currentSequenceNumber.get());
+    /**
+     * Waits for a connection future, rethrowing its failure as it was raised.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
         }
-        this.socket.send(builder.build());
     }
 
-    private static URI fetchServerUrl(String token) {
-        HashMap<String, String> headers = new HashMap<>(2);
-        headers.put("Authorization", "Bot " + token);
-        headers.put("User-Agent", "Bot");
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private URI resolveGatewayUri(URI serverUri) {
+        String query = "v=" + GATEWAY_VERSION + "&encoding=json";
+        if (compression) {
+            query += "&compress=zlib-stream";
+        }
         try {
-            JsonObject metadata = Util.fetchResource(DISCORD_GATEWAY_RESOLUTION_URL, headers);
-            String websocketUrl = metadata.getString("url");
-            int shardCount = metadata.getInt("shards");
-            //TODO: enable sharding use cases?
-            return new URI(websocketUrl);
-        } catch (IOException | URISyntaxException ex) {
+            return new URI(serverUri.getScheme(), serverUri.getAuthority(), serverUri.getPath().isEmpty() ? "/" : serverUri.getPath(), query, null);
+        } catch (URISyntaxException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    static JsonObject fetchGatewayMetadata(String token) {
+        try {
+            return Util.fetchResource(DISCORD_GATEWAY_RESOLUTION_URL, authorizationHeaders(token));
+        } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
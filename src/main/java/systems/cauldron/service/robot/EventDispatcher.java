@@ -0,0 +1,46 @@
+package systems.cauldron.service.robot;
+
+/**
+ * Decides which thread runs user event handlers, keeping slow handlers off the WebSocket receive thread.
+ * <p>
+ * Handlers dispatched with equal ordering keys run one at a time in dispatch order; handlers with different keys may
+ * run concurrently.
+ *
+ * @author Amann Malik
+ */
+public interface EventDispatcher {
+
+    void dispatch(Object orderingKey, Runnable handler);
+
+    /**
+     * @return number of dispatched handlers that have not finished running
+     */
+    long getQueueDepth();
+
+    LatencyHistogram getHandlerTime();
+
+    void shutdown();
+
+    /**
+     * Runs handlers on the calling thread.
+     */
+    static EventDispatcher inline() {
+        return new InlineDispatcher();
+    }
+
+    /**
+     * Runs handlers on a fixed pool of platform threads, hashing ordering keys onto serial lanes.
+     */
+    static EventDispatcher striped(int threads) {
+        return StripedDispatcher.withPlatformThreads(threads);
+    }
+
+    /**
+     * Runs each handler on its own virtual thread while still serializing equal ordering keys. Falls back to
+     * {@link #striped} sized to the available processors on a JDK without virtual threads.
+     */
+    static EventDispatcher virtualThreads() {
+        return StripedDispatcher.withVirtualThreads();
+    }
+
+}
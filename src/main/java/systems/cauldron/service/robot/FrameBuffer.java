@@ -0,0 +1,111 @@
+package systems.cauldron.service.robot;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reusable character buffer outbound frames are serialized into, either field by field through a
+ * {@link JsonGenerator} or by filling a fixed template. Not thread safe; callers hold the buffer's monitor.
+ *
+ * @author Amann Malik
+ */
+final class FrameBuffer extends Writer {
+
+    private static final JsonGeneratorFactory generatorFactory = Json.createGeneratorFactory(null);
+
+    private char[] chars;
+    private int length = 0;
+
+    FrameBuffer(int initialCapacity) {
+        this.chars = new char[initialCapacity];
+    }
+
+    /**
+     * Serializes a single JSON object whose fields are written by the given writer.
+     */
+    String writeObject(Consumer<JsonGenerator> fields) {
+        length = 0;
+        JsonGenerator generator = generatorFactory.createGenerator(this);
+        generator.writeStartObject();
+        fields.accept(generator);
+        generator.writeEnd();
+        generator.close();
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Fills a template consisting of a fixed prefix, a number and a fixed suffix.
+     */
+    String writeTemplate(String prefix, long value, String suffix) {
+        length = 0;
+        write(prefix, 0, prefix.length());
+        appendLong(value);
+        write(suffix, 0, suffix.length());
+        return new String(chars, 0, length);
+    }
+
+    int length() {
+        return length;
+    }
+
+    private void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            String text = Long.toString(value);
+            write(text, 0, text.length());
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long remaining = value / 10; remaining != 0; remaining /= 10) {
+            digits++;
+        }
+        ensureCapacity(length + digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        ensureCapacity(length + 1);
+        chars[length++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] source, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(source, offset, chars, length, count);
+        length += count;
+    }
+
+    @Override
+    public void write(String source, int offset, int count) {
+        ensureCapacity(length + count);
+        source.getChars(offset, offset + count, chars, length);
+        length += count;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
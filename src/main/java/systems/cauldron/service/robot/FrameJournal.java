@@ -0,0 +1,243 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only record of received frames, written to memory-mapped segment files in a directory.
+ * <p>
+ * Each record holds the raw frame text with its sequence number (-1 if it has none) and the wall clock time it was
+ * received. Appending copies the text straight into the mapped segment, so journaling costs about as much as a memory
+ * copy; the operating system writes the pages back in the background, and {@link #flush} forces them out. A segment
+ * is closed once full and a new one started, and closed segments are deleted once they exceed the retention size or
+ * age. Read a journal back with {@link FrameJournalReader}.
+ * <p>
+ * Record layout: payload length, sequence number (both 32-bit), receive time in epoch milliseconds (64-bit), then the
+ * UTF-8 payload. The length is written last, so a record cut short by a crash reads as the end of the segment.
+ * <p>
+ * Thread safe; shards may share one journal, although records then carry no indication of their shard.
+ *
+ * @author Amann Malik
+ */
+public class FrameJournal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FrameJournal.class);
+
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final int RECORD_HEADER_SIZE = 16;
+
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024L * 1024L;
+
+    private final Path directory;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long retentionBytes = Long.MAX_VALUE;
+    private long retentionMilliseconds = Long.MAX_VALUE;
+
+    private long nextSegmentIndex;
+    private Path segmentPath = null;
+    private FileChannel segmentChannel = null;
+    private MappedByteBuffer segment = null;
+    private boolean failed = false;
+
+    public FrameJournal(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            List<Path> existing = listSegments(directory);
+            // never append to a segment a previous process may have left partially written
+            nextSegmentIndex = existing.isEmpty() ? 0L : segmentIndex(existing.get(existing.size() - 1)) + 1L;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Size each segment file is mapped at; takes effect from the next segment. Frames larger than a segment get a
+     * segment of their own.
+     */
+    public synchronized void setSegmentSize(long segmentSize) {
+        if (segmentSize < 4096L || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid segment size: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Closed segments are deleted, oldest first, while together they take up more than this many bytes.
+     */
+    public synchronized void setRetentionSize(long retentionBytes) {
+        this.retentionBytes = retentionBytes;
+    }
+
+    /**
+     * Closed segments are deleted once they were last written to longer ago than this.
+     */
+    public synchronized void setRetentionTime(long duration, TimeUnit unit) {
+        this.retentionMilliseconds = unit.toMillis(duration);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void append(JsonFrame frame) {
+        append(frame.getSequence(), System.currentTimeMillis(), frame.getText());
+    }
+
+    /**
+     * Stops journaling, with an error logged, if a segment cannot be created; traffic is never held up by the journal.
+     */
+    public synchronized void append(int sequence, long receivedAt, String text) {
+        if (failed) {
+            return;
+        }
+        // a UTF-16 code unit never takes more than three UTF-8 bytes
+        long maxLength = 3L * text.length();
+        try {
+            if (segment == null || segment.remaining() < RECORD_HEADER_SIZE + maxLength) {
+                roll(RECORD_HEADER_SIZE + maxLength);
+            }
+        } catch (IOException | RuntimeException ex) {
+            failed = true;
+            LOG.error("frame journal in {} stopped: {}", directory, ex.toString());
+            return;
+        }
+        int start = segment.position();
+        segment.position(start + RECORD_HEADER_SIZE);
+        // gateway JSON is almost entirely ASCII, which is copied byte for byte until the first other character
+        int i = 0;
+        int textLength = text.length();
+        for (; i < textLength; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            segment.put((byte) c);
+        }
+        if (i < textLength) {
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(text, i, textLength), segment, true);
+            if (result.isError()) {
+                // unpaired surrogate; skip the frame rather than journal something that does not decode
+                segment.position(start);
+                return;
+            }
+            encoder.flush(segment);
+        }
+        int length = segment.position() - start - RECORD_HEADER_SIZE;
+        segment.putInt(start + 4, sequence);
+        segment.putLong(start + 8, receivedAt);
+        segment.putInt(start, length);
+    }
+
+    /**
+     * Forces written records of the current segment to disk.
+     */
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+            closeSegment();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        failed = true;
+    }
+
+    private void roll(long minimumSize) throws IOException {
+        closeSegment();
+        enforceRetention();
+        long size = Math.max(segmentSize, minimumSize + 4L);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("frame too large to journal: " + minimumSize + " bytes");
+        }
+        segmentPath = directory.resolve(String.format("%020d", nextSegmentIndex++) + SEGMENT_SUFFIX);
+        segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        int written = segment.position();
+        segment = null;
+        try {
+            // drop the unused tail; the zero length after the last record already marks the end for readers
+            segmentChannel.truncate(written + 4L);
+        } catch (IOException ex) {
+            LOG.debug("could not truncate journal segment {}: {}", segmentPath, ex.toString());
+        }
+        segmentChannel.close();
+        segmentChannel = null;
+    }
+
+    private void enforceRetention() throws IOException {
+        if (retentionBytes == Long.MAX_VALUE && retentionMilliseconds == Long.MAX_VALUE) {
+            return;
+        }
+        List<Path> segments = listSegments(directory);
+        long total = 0L;
+        for (Path path : segments) {
+            total += Files.size(path);
+        }
+        long cutoff = System.currentTimeMillis() - retentionMilliseconds;
+        for (Path path : segments) {
+            boolean expired = retentionMilliseconds != Long.MAX_VALUE && Files.getLastModifiedTime(path).toMillis() < cutoff;
+            if (total <= retentionBytes && !expired) {
+                break;
+            }
+            total -= Files.size(path);
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * @return segment files in the order they were written
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        // zero padded indexes sort by name
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package systems.cauldron.service.robot;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Reads the records of a {@link FrameJournal} in the order they were written, mapping one segment at a time.
+ * <p>
+ * A cursor: {@link #next} advances to the following record, whose fields are then available from the getters.
+ * Pass a reader to {@link DiscordSocket#replay} or {@link SlackSocket#replay} to feed recorded traffic back through
+ * the event handlers.
+ *
+ * @author Amann Malik
+ */
+public class FrameJournalReader implements AutoCloseable {
+
+    private final List<Path> segments;
+    private int segmentIndex = 0;
+    private MappedByteBuffer segment = null;
+
+    private int sequence;
+    private long receivedAt;
+    private String text;
+
+    /**
+     * Reads the segments present in the directory when the reader is created.
+     */
+    public FrameJournalReader(Path directory) {
+        try {
+            this.segments = FrameJournal.listSegments(directory);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return false once every record has been read
+     */
+    public boolean next() {
+        while (true) {
+            if (segment != null && segment.remaining() >= FrameJournal.RECORD_HEADER_SIZE) {
+                int start = segment.position();
+                int length = segment.getInt(start);
+                if (length > 0 && length <= segment.remaining() - FrameJournal.RECORD_HEADER_SIZE) {
+                    sequence = segment.getInt(start + 4);
+                    receivedAt = segment.getLong(start + 8);
+                    byte[] payload = new byte[length];
+                    segment.position(start + FrameJournal.RECORD_HEADER_SIZE);
+                    segment.get(payload);
+                    text = new String(payload, StandardCharsets.UTF_8);
+                    return true;
+                }
+            }
+            if (segmentIndex >= segments.size()) {
+                segment = null;
+                return false;
+            }
+            segment = map(segments.get(segmentIndex++));
+        }
+    }
+
+    /**
+     * @return the record's sequence number, or -1 if its frame had none
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return epoch milliseconds at which the frame was received
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public JsonFrame getFrame() {
+        return new JsonFrame(text);
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+        segmentIndex = segments.size();
+    }
+
+    private static MappedByteBuffer map(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Paces the frames one gateway connection sends so they stay under Discord's limit of 120 per 60 seconds, which the
+ * gateway enforces by closing with 4008.
+ * <p>
+ * Sends draw from a token bucket holding a sixth of the limit, refilled at the rate that makes any window of the
+ * limit's length admit at most the limit: a full bucket plus a window's worth of refill. Frames wait in one lane per
+ * {@link Priority} and always leave from the most urgent non-empty lane. The lower lanes also leave a few tokens in the
+ * bucket for heartbeats and RESUME, and stay closed until the session is established, since the gateway rejects them
+ * before IDENTIFY or RESUME completes. A queued presence update is replaced by a newer one rather than sent too.
+ *
+ * @author Amann Malik
+ */
+final class GatewaySendScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GatewaySendScheduler.class);
+
+    static final int DEFAULT_LIMIT = 120;
+    static final long DEFAULT_WINDOW_MILLISECONDS = 60_000L;
+
+    private static final int CONTROL_RESERVE = 3;
+    private static final int MAX_QUEUED_REQUESTS = 1024;
+
+    enum Priority {
+        /**
+         * Heartbeats, IDENTIFY and RESUME; these keep the connection alive.
+         */
+        CONTROL,
+        /**
+         * Presence and voice state updates; only the newest queued presence update is kept.
+         */
+        PRESENCE,
+        /**
+         * Guild member chunk requests.
+         */
+        REQUEST
+    }
+
+    private final Consumer<String> sink;
+    private final String metricsSource;
+    private final int burst;
+    private final int reserve;
+    private final long emissionIntervalNanos;
+
+    private final EnumMap<Priority, ArrayDeque<Pending>> lanes = new EnumMap<>(Priority.class);
+    private final LatencyHistogram sendDelay = new LatencyHistogram();
+
+    private HashedWheelTimer timer = HashedWheelTimer.getDefault();
+    private HashedWheelTimer.Timeout drainTimeout = null;
+    // the bucket is full whenever now - theoreticalArrival >= 0; every send pushes it one interval later
+    private long theoreticalArrival = System.nanoTime();
+    private boolean established = false;
+    private int queued = 0;
+
+    GatewaySendScheduler(Consumer<String> sink, String metricsSource) {
+        this(sink, metricsSource, DEFAULT_LIMIT, DEFAULT_WINDOW_MILLISECONDS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param limit most frames allowed in any window of the given length
+     */
+    GatewaySendScheduler(Consumer<String> sink, String metricsSource, int limit, long window, TimeUnit unit) {
+        if (limit < 2 || window <= 0L) {
+            throw new IllegalArgumentException("invalid send limit: " + limit + " per " + window + " " + unit);
+        }
+        this.sink = sink;
+        this.metricsSource = metricsSource;
+        this.burst = Math.max(1, limit / 6);
+        this.reserve = Math.min(CONTROL_RESERVE, burst - 1);
+        this.emissionIntervalNanos = unit.toNanos(window) / (limit - burst);
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    synchronized void setTimer(HashedWheelTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Queues a frame, sending it right away if its lane is open and the bucket allows. The frame counts as sent, under
+     * the given type, once it has been handed to the socket.
+     *
+     * @throws RejectedExecutionException if too many member chunk requests are already waiting
+     */
+    synchronized void submit(Priority priority, String type, String frame) {
+        ArrayDeque<Pending> lane = lanes.get(priority);
+        if (priority == Priority.PRESENCE && !lane.isEmpty()) {
+            // a newer presence supersedes the queued one; it keeps the older frame's place and wait time
+            lane.peekLast().frame = frame;
+            return;
+        }
+        if (priority == Priority.REQUEST && lane.size() >= MAX_QUEUED_REQUESTS) {
+            throw new RejectedExecutionException("gateway send queue is full");
+        }
+        lane.addLast(new Pending(type, frame));
+        queued++;
+        Metrics.get().queuedSends(metricsSource, 1);
+        drain();
+    }
+
+    /**
+     * Starts a new connection: the bucket refills completely, and only control frames may go out until
+     * {@link #establish}. Control frames left over from the previous connection are dropped.
+     */
+    synchronized void open() {
+        theoreticalArrival = System.nanoTime();
+        established = false;
+        clearControlLane();
+    }
+
+    /**
+     * Opens the lower lanes once IDENTIFY or RESUME has completed.
+     */
+    synchronized void establish() {
+        established = true;
+        drain();
+    }
+
+    /**
+     * Holds every lane after the connection is lost; queued presence updates and member requests wait for the next
+     * connection.
+     */
+    synchronized void close() {
+        established = false;
+        clearControlLane();
+        if (drainTimeout != null) {
+            drainTimeout.cancel();
+            drainTimeout = null;
+        }
+    }
+
+    synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    /**
+     * @return time frames spent queued before being sent
+     */
+    LatencyHistogram getSendDelay() {
+        return sendDelay;
+    }
+
+    private void drain() {
+        long now = System.nanoTime();
+        for (Priority priority : Priority.values()) {
+            ArrayDeque<Pending> lane = lanes.get(priority);
+            if (priority != Priority.CONTROL && !established) {
+                return;
+            }
+            int needed = priority == Priority.CONTROL ? 1 : 1 + reserve;
+            while (!lane.isEmpty()) {
+                long waitNanos = waitFor(needed, now);
+                if (waitNanos > 0L) {
+                    scheduleDrain(waitNanos);
+                    return;
+                }
+                Pending pending = lane.peekFirst();
+                try {
+                    sink.accept(pending.frame);
+                } catch (RuntimeException ex) {
+                    // the connection is going away; close() or open() decides what happens to the queue
+                    LOG.debug("failed to send queued gateway frame", ex);
+                    return;
+                }
+                lane.pollFirst();
+                queued--;
+                theoreticalArrival = Math.max(theoreticalArrival, now) + emissionIntervalNanos;
+                long delay = now - pending.queuedAt;
+                sendDelay.record(delay);
+                Metrics metrics = Metrics.get();
+                metrics.queuedSends(metricsSource, -1);
+                metrics.sendDelay(metricsSource, delay);
+                metrics.frameSent(metricsSource, pending.type);
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds until the bucket holds the given number of tokens, or 0 if it already does
+     */
+    private long waitFor(int tokens, long now) {
+        long availableAt = theoreticalArrival - (long) (burst - tokens) * emissionIntervalNanos;
+        return Math.max(0L, availableAt - now);
+    }
+
+    private void scheduleDrain(long waitNanos) {
+        if (drainTimeout != null && !drainTimeout.isExpired() && !drainTimeout.isCancelled()) {
+            return;
+        }
+        drainTimeout = timer.schedule(this::drainLater, waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void drainLater() {
+        drainTimeout = null;
+        drain();
+    }
+
+    private void clearControlLane() {
+        ArrayDeque<Pending> lane = lanes.get(Priority.CONTROL);
+        if (!lane.isEmpty()) {
+            Metrics.get().queuedSends(metricsSource, -lane.size());
+            queued -= lane.size();
+            lane.clear();
+        }
+    }
+
+    private static final class Pending {
+
+        final long queuedAt = System.nanoTime();
+        final String type;
+        String frame;
+
+        Pending(String type, String frame) {
+            this.type = type;
+            this.frame = frame;
+        }
+    }
+
+}
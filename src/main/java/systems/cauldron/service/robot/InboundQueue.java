@@ -0,0 +1,366 @@
+package systems.cauldron.service.robot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounds the events one connection has received but not yet handled.
+ * <p>
+ * Events are passed to the socket's {@link EventDispatcher} in the order they arrive, but at most a fixed number at a
+ * time; the rest wait here, up to the queue's capacity. What happens to an event that arrives while the queue is full
+ * depends on the policy of its type:
+ * <ul>
+ * <li>{@link Policy#BLOCK}, the default, holds the receive thread until a handler finishes, which in turn stops reading
+ * from the network until the queue drains.</li>
+ * <li>{@link Policy#DROP_OLDEST} makes room by discarding the oldest waiting event of any type with this policy, and
+ * blocks only if there is none.</li>
+ * <li>{@link Policy#COALESCE} replaces a waiting event of the same type and key, full or not, so only the latest
+ * presence of a user, say, is handled. An event without a waiting match is queued as under {@link Policy#BLOCK}.</li>
+ * </ul>
+ * A replaced event takes the place of the one it replaces, and events dispatched with the same ordering key are still
+ * handled in order. With the inline dispatcher every event is handled before the next one is received, so the queue
+ * never fills.
+ *
+ * @author Amann Malik
+ */
+public class InboundQueue {
+
+    static final int DEFAULT_CAPACITY = 4096;
+    static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    public enum Policy {
+        BLOCK,
+        DROP_OLDEST,
+        COALESCE
+    }
+
+    private final String metricsSource;
+    private final HashMap<String, Rule> rules = new HashMap<>();
+    private final ArrayDeque<Entry> waiting = new ArrayDeque<>();
+    // entries under DROP_OLDEST in arrival order; a subsequence of waiting
+    private final ArrayDeque<Entry> droppable = new ArrayDeque<>();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+
+    private int capacity = DEFAULT_CAPACITY;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int depth = 0;
+    private int inFlight = 0;
+    // dropped entries not yet removed from waiting
+    private int tombstones = 0;
+    // set while one thread passes drained entries to the dispatcher; only that thread may, so they keep their order
+    private boolean draining = false;
+    // bumped by releaseBlocked; a receive thread waiting for room gives up when it changes
+    private int releases = 0;
+
+    InboundQueue(String metricsSource) {
+        this.metricsSource = metricsSource;
+    }
+
+    /**
+     * Number of events that may wait to be dispatched; defaults to 4096.
+     */
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        notifyAll();
+    }
+
+    /**
+     * Number of events that may be dispatched but not yet handled; defaults to 256. Waiting events can still be
+     * coalesced or dropped, dispatched ones cannot.
+     */
+    public synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("invalid in flight limit: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Sets the policy of an event type to {@link Policy#BLOCK} or {@link Policy#DROP_OLDEST}; use {@link #coalesce}
+     * for {@link Policy#COALESCE}.
+     */
+    public synchronized void setPolicy(String eventType, Policy policy) {
+        if (policy == Policy.COALESCE) {
+            throw new IllegalArgumentException("coalescing requires a key");
+        }
+        if (policy == Policy.BLOCK) {
+            rules.remove(eventType);
+        } else {
+            rules.put(eventType, new Rule(policy, null));
+        }
+    }
+
+    /**
+     * Keeps only the latest waiting event of a type per key. Events the function returns null for are never
+     * coalesced.
+     */
+    public synchronized void coalesce(String eventType, Function<JsonFrame, Object> key) {
+        rules.put(eventType, new Rule(Policy.COALESCE, key));
+    }
+
+    public synchronized Policy getPolicy(String eventType) {
+        Rule rule = rules.get(eventType);
+        return rule == null ? Policy.BLOCK : rule.policy;
+    }
+
+    /**
+     * @return number of events waiting to be dispatched
+     */
+    public synchronized int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return number of events dispatched but not yet handled
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of events the receive thread waited for room for
+     */
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    /**
+     * Queues the handler of a received event, blocking while the queue is full and its policy leaves no room.
+     */
+    void offer(EventDispatcher dispatcher, String eventType, JsonFrame frame, Object orderingKey, Runnable handler) {
+        String droppedType = null;
+        boolean queued = false;
+        Entry pending;
+        synchronized (this) {
+            Rule rule = rules.get(eventType);
+            Policy policy = rule == null ? Policy.BLOCK : rule.policy;
+            Object key = policy == Policy.COALESCE ? rule.key.apply(frame) : null;
+            pending = key != null ? rule.pending.get(key) : null;
+            if (pending != null) {
+                pending.handler = handler;
+                pending.orderingKey = orderingKey;
+            } else {
+                queued = true;
+                if (depth >= capacity) {
+                    droppedType = dropOldest();
+                    if (droppedType == null && !awaitRoom()) {
+                        // released or interrupted: the event itself is dropped
+                        droppedType = eventType;
+                        queued = false;
+                    }
+                }
+                if (queued) {
+                    Entry entry = new Entry(dispatcher, eventType, orderingKey, handler, rule, key);
+                    waiting.add(entry);
+                    depth++;
+                    if (policy == Policy.DROP_OLDEST) {
+                        droppable.add(entry);
+                    } else if (key != null) {
+                        rule.pending.put(key, entry);
+                    }
+                }
+            }
+        }
+        Metrics metrics = Metrics.get();
+        if (pending != null) {
+            coalesced.increment();
+            metrics.eventCoalesced(metricsSource, eventType);
+        } else if (droppedType != null) {
+            dropped.increment();
+            metrics.eventDropped(metricsSource, droppedType);
+        }
+        if (queued) {
+            dispatchReady();
+        }
+    }
+
+    /**
+     * Lets a receive thread blocked for room give up, dropping the event it holds; called when its connection closes,
+     * after which the event would no longer be received in order anyway.
+     */
+    synchronized void releaseBlocked() {
+        releases++;
+        notifyAll();
+    }
+
+    private String dropOldest() {
+        Entry oldest = droppable.pollFirst();
+        if (oldest == null) {
+            return null;
+        }
+        oldest.handler = null;
+        oldest.dropped = true;
+        depth--;
+        if (++tombstones > capacity) {
+            waiting.removeIf(entry -> entry.dropped);
+            tombstones = 0;
+        }
+        return oldest.eventType;
+    }
+
+    /**
+     * @return false if the wait was released or interrupted before room was made
+     */
+    private boolean awaitRoom() {
+        blocked.increment();
+        int release = releases;
+        while (depth >= capacity) {
+            if (release != releases) {
+                return false;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Entry> drain() {
+        List<Entry> ready = null;
+        while (inFlight < maxInFlight && depth > 0) {
+            Entry entry = waiting.poll();
+            if (entry.dropped) {
+                tombstones--;
+                continue;
+            }
+            depth--;
+            inFlight++;
+            if (entry.rule != null) {
+                if (entry.rule.policy == Policy.DROP_OLDEST) {
+                    droppable.pollFirst();
+                } else if (entry.coalescingKey != null) {
+                    entry.rule.pending.remove(entry.coalescingKey);
+                }
+            }
+            if (ready == null) {
+                ready = new ArrayList<>();
+            }
+            ready.add(entry);
+        }
+        if (ready != null) {
+            // the receive thread may be waiting for the room just made
+            notifyAll();
+        }
+        return ready;
+    }
+
+    /**
+     * Passes waiting entries to their dispatcher until none can go. A thread that finds another one at it leaves the
+     * work to that thread, which drains again after each batch.
+     */
+    private void dispatchReady() {
+        List<Entry> ready;
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            ready = drain();
+            if (ready == null) {
+                return;
+            }
+            draining = true;
+        }
+        // an inline handler that throws must not strand the entries drained with it
+        RuntimeException failure = null;
+        while (true) {
+            for (Entry entry : ready) {
+                try {
+                    entry.dispatcher.dispatch(entry.orderingKey, entry);
+                } catch (RuntimeException ex) {
+                    // a rejected entry is never run, so its slot is released here; one that ran inline already was
+                    settle(entry);
+                    if (failure == null) {
+                        failure = ex;
+                    } else {
+                        failure.addSuppressed(ex);
+                    }
+                }
+            }
+            synchronized (this) {
+                ready = drain();
+                if (ready == null) {
+                    draining = false;
+                    break;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized void settle(Entry entry) {
+        if (!entry.settled) {
+            entry.settled = true;
+            inFlight--;
+        }
+    }
+
+    private void handled(Entry entry) {
+        settle(entry);
+        dispatchReady();
+    }
+
+    private static final class Rule {
+
+        final Policy policy;
+        final Function<JsonFrame, Object> key;
+        final HashMap<Object, Entry> pending = new HashMap<>();
+
+        Rule(Policy policy, Function<JsonFrame, Object> key) {
+            this.policy = policy;
+            this.key = key;
+        }
+    }
+
+    private final class Entry implements Runnable {
+
+        final EventDispatcher dispatcher;
+        final String eventType;
+        final Rule rule;
+        final Object coalescingKey;
+        Object orderingKey;
+        Runnable handler;
+        boolean dropped = false;
+        boolean settled = false;
+
+        Entry(EventDispatcher dispatcher, String eventType, Object orderingKey, Runnable handler, Rule rule, Object coalescingKey) {
+            this.dispatcher = dispatcher;
+            this.eventType = eventType;
+            this.orderingKey = orderingKey;
+            this.handler = handler;
+            this.rule = rule;
+            this.coalescingKey = coalescingKey;
+        }
+
+        @Override
+        public void run() {
+            try {
+                handler.run();
+            } finally {
+                handled(this);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package systems.cauldron.service.robot;
+
+/**
+ * @author Amann Malik
+ */
+class InlineDispatcher implements EventDispatcher {
+
+    private final LatencyHistogram handlerTime = new LatencyHistogram();
+
+    @Override
+    public void dispatch(Object orderingKey, Runnable handler) {
+        long start = System.nanoTime();
+        try {
+            handler.run();
+        } finally {
+            handlerTime.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return 0L;
+    }
+
+    @Override
+    public LatencyHistogram getHandlerTime() {
+        return handlerTime;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+}
@@ -0,0 +1,284 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Default {@link Metrics}: lock-free counters and {@link LatencyHistogram}s, readable over JMX.
+ * <p>
+ * Each series is created the first time its key is seen; after that recording is a map lookup and an atomic add.
+ *
+ * @author Amann Malik
+ */
+public class JmxMetrics implements Metrics, JmxMetricsMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmxMetrics.class);
+
+    public static final String OBJECT_NAME = "systems.cauldron.service.robot:type=Metrics";
+
+    private static final String[] STATUS_CLASSES = {"error", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> framesReceived = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> framesSent = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> bytesReceived = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> bytesSent = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> parseLatency = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> dispatchLatency = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> eventsDropped = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> eventsCoalesced = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> heartbeatRoundTrip = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> pendingAcks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> queuedSends = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> sendDelay = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder[]> restResponses = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> restLatency = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder[]> reconnects = new ConcurrentHashMap<>();
+
+    static JmxMetrics registerDefault() {
+        JmxMetrics metrics = new JmxMetrics();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException | RuntimeException ex) {
+            LOG.warn("metrics are not available over JMX: {}", ex.toString());
+        }
+        return metrics;
+    }
+
+    @Override
+    public void frameReceived(String source, String type) {
+        counter(series(framesReceived, source, k -> new ConcurrentHashMap<>()), type).increment();
+    }
+
+    @Override
+    public void frameSent(String source, String type) {
+        counter(series(framesSent, source, k -> new ConcurrentHashMap<>()), type).increment();
+    }
+
+    @Override
+    public void bytesReceived(String source, long bytes) {
+        counter(bytesReceived, source).add(bytes);
+    }
+
+    @Override
+    public void bytesSent(String source, long bytes) {
+        counter(bytesSent, source).add(bytes);
+    }
+
+    @Override
+    public void parseLatency(String source, long nanos) {
+        series(parseLatency, source, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void dispatchLatency(String source, long nanos) {
+        series(dispatchLatency, source, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void eventDropped(String source, String type) {
+        counter(series(eventsDropped, source, k -> new ConcurrentHashMap<>()), type).increment();
+    }
+
+    @Override
+    public void eventCoalesced(String source, String type) {
+        counter(series(eventsCoalesced, source, k -> new ConcurrentHashMap<>()), type).increment();
+    }
+
+    @Override
+    public void heartbeatRoundTrip(String source, long nanos) {
+        series(heartbeatRoundTrip, source, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void pendingAcks(String source, int delta) {
+        counter(pendingAcks, source).add(delta);
+    }
+
+    @Override
+    public void queuedSends(String source, int delta) {
+        counter(queuedSends, source).add(delta);
+    }
+
+    @Override
+    public void sendDelay(String source, long nanos) {
+        series(sendDelay, source, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void restCall(String route, int status, long nanos) {
+        int statusClass = status / 100;
+        series(restResponses, route, k -> newAdders(STATUS_CLASSES.length))[statusClass > 0 && statusClass < STATUS_CLASSES.length ? statusClass : 0].increment();
+        series(restLatency, route, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void reconnect(String source, boolean succeeded) {
+        series(reconnects, source, k -> newAdders(2))[succeeded ? 1 : 0].increment();
+    }
+
+    /**
+     * @return latency histogram of a REST route, or null if it has not been called
+     */
+    public LatencyHistogram getRestLatency(String route) {
+        return restLatency.get(route);
+    }
+
+    public LatencyHistogram getDispatchLatency(String source) {
+        return dispatchLatency.get(source);
+    }
+
+    @Override
+    public Map<String, Long> getFramesReceived() {
+        return snapshotNested(framesReceived);
+    }
+
+    @Override
+    public Map<String, Long> getFramesSent() {
+        return snapshotNested(framesSent);
+    }
+
+    @Override
+    public Map<String, Long> getBytesReceived() {
+        return snapshotCounters(bytesReceived);
+    }
+
+    @Override
+    public Map<String, Long> getBytesSent() {
+        return snapshotCounters(bytesSent);
+    }
+
+    @Override
+    public Map<String, String> getParseLatency() {
+        return snapshotHistograms(parseLatency);
+    }
+
+    @Override
+    public Map<String, String> getDispatchLatency() {
+        return snapshotHistograms(dispatchLatency);
+    }
+
+    @Override
+    public Map<String, Long> getEventsDropped() {
+        return snapshotNested(eventsDropped);
+    }
+
+    @Override
+    public Map<String, Long> getEventsCoalesced() {
+        return snapshotNested(eventsCoalesced);
+    }
+
+    @Override
+    public Map<String, String> getHeartbeatRoundTrip() {
+        return snapshotHistograms(heartbeatRoundTrip);
+    }
+
+    @Override
+    public Map<String, Long> getPendingAcks() {
+        return snapshotCounters(pendingAcks);
+    }
+
+    @Override
+    public Map<String, Long> getQueuedSends() {
+        return snapshotCounters(queuedSends);
+    }
+
+    @Override
+    public Map<String, String> getSendDelay() {
+        return snapshotHistograms(sendDelay);
+    }
+
+    @Override
+    public Map<String, Long> getRestResponses() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        restResponses.forEach((route, adders) -> {
+            for (int i = 0; i < adders.length; i++) {
+                long count = adders[i].sum();
+                if (count > 0L) {
+                    snapshot.put(route + "/" + STATUS_CLASSES[i], count);
+                }
+            }
+        });
+        return snapshot;
+    }
+
+    @Override
+    public Map<String, String> getRestLatency() {
+        return snapshotHistograms(restLatency);
+    }
+
+    @Override
+    public Map<String, Long> getReconnects() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        reconnects.forEach((source, adders) -> {
+            snapshot.put(source + "/failed", adders[0].sum());
+            snapshot.put(source + "/succeeded", adders[1].sum());
+        });
+        return snapshot;
+    }
+
+    /**
+     * Clears every series except pending acknowledgements and queued sends, which track live state rather than
+     * history.
+     */
+    @Override
+    public void reset() {
+        framesReceived.clear();
+        framesSent.clear();
+        bytesReceived.clear();
+        bytesSent.clear();
+        parseLatency.clear();
+        dispatchLatency.clear();
+        eventsDropped.clear();
+        eventsCoalesced.clear();
+        heartbeatRoundTrip.clear();
+        sendDelay.clear();
+        restResponses.clear();
+        restLatency.clear();
+        reconnects.clear();
+    }
+
+    private static <T> T series(ConcurrentHashMap<String, T> map, String key, Function<String, T> factory) {
+        T value = map.get(key);
+        return value != null ? value : map.computeIfAbsent(key, factory);
+    }
+
+    private static LongAdder counter(ConcurrentHashMap<String, LongAdder> map, String key) {
+        return series(map, key, k -> new LongAdder());
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static Map<String, Long> snapshotCounters(ConcurrentHashMap<String, LongAdder> map) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        map.forEach((key, adder) -> snapshot.put(key, adder.sum()));
+        return snapshot;
+    }
+
+    private static Map<String, Long> snapshotNested(ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> map) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        map.forEach((source, counters) -> counters.forEach((type, adder) -> snapshot.put(source + "/" + type, adder.sum())));
+        return snapshot;
+    }
+
+    private static Map<String, String> snapshotHistograms(ConcurrentHashMap<String, LatencyHistogram> map) {
+        Map<String, String> snapshot = new TreeMap<>();
+        map.forEach((key, histogram) -> snapshot.put(key, histogram.toString()));
+        return snapshot;
+    }
+
+}
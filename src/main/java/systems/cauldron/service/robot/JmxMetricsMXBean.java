@@ -0,0 +1,44 @@
+package systems.cauldron.service.robot;
+
+import java.util.Map;
+
+/**
+ * Management view of {@link JmxMetrics}. Counters are keyed {@code source/type}; latencies are summarized as text.
+ *
+ * @author Amann Malik
+ */
+public interface JmxMetricsMXBean {
+
+    Map<String, Long> getFramesReceived();
+
+    Map<String, Long> getFramesSent();
+
+    Map<String, Long> getBytesReceived();
+
+    Map<String, Long> getBytesSent();
+
+    Map<String, String> getParseLatency();
+
+    Map<String, String> getDispatchLatency();
+
+    Map<String, Long> getEventsDropped();
+
+    Map<String, Long> getEventsCoalesced();
+
+    Map<String, String> getHeartbeatRoundTrip();
+
+    Map<String, Long> getPendingAcks();
+
+    Map<String, Long> getQueuedSends();
+
+    Map<String, String> getSendDelay();
+
+    Map<String, Long> getRestResponses();
+
+    Map<String, String> getRestLatency();
+
+    Map<String, Long> getReconnects();
+
+    void reset();
+
+}
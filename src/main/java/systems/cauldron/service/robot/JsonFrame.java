@@ -0,0 +1,247 @@
+package systems.cauldron.service.robot;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * A received JSON text frame that is decoded on demand.
+ * <p>
+ * The envelope fields ({@code op}, {@code s}, {@code t} and {@code type}) and Slack's {@code channel} are read with a
+ * single streaming pass that skips over every other value without building it, {@code d} included; the pass only
+ * records where {@code d} starts. The routing keys {@code d.channel_id} and {@code d.guild_id}, the {@code d} payload
+ * and the full object tree are read from there only when asked for, so frames nobody is interested in cost one scan
+ * and no tree allocation.
+ * <p>
+ * Not thread safe; hand a frame to another thread only through a construct that provides a happens-before edge.
+ *
+ * @author Amann Malik
+ */
+public class JsonFrame {
+
+    // Json.createParser and Json.createReader look the provider up again on every call
+    private static final JsonParserFactory parserFactory = Json.createParserFactory(null);
+    private static final JsonReaderFactory readerFactory = Json.createReaderFactory(null);
+
+    private final String text;
+
+    private boolean scanned = false;
+    private boolean dataScanned = false;
+    // offset of the opening bracket of a structured d payload, or -1
+    private int dataOffset = -1;
+    private int op = -1;
+    private int sequence = -1;
+    private String eventName = null;
+    private String type = null;
+    private String channelId = null;
+    private String guildId = null;
+    private String channel = null;
+
+    private JsonValue data = null;
+    private JsonObject object = null;
+
+    public JsonFrame(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the Discord gateway op code, or -1 if the frame has none
+     */
+    public int getOp() {
+        scan();
+        return op;
+    }
+
+    /**
+     * @return the Discord dispatch sequence number, or -1 if the frame has none
+     */
+    public int getSequence() {
+        scan();
+        return sequence;
+    }
+
+    /**
+     * @return the Discord dispatch event name, or null if the frame has none
+     */
+    public String getEventName() {
+        scan();
+        return eventName;
+    }
+
+    /**
+     * @return the Slack RTM event type, or null if the frame has none
+     */
+    public String getType() {
+        scan();
+        return type;
+    }
+
+    /**
+     * @return the Discord {@code d.channel_id}, or null if the payload has none
+     */
+    public String getChannelId() {
+        scanData();
+        return channelId;
+    }
+
+    /**
+     * @return the Discord {@code d.guild_id}, or null if the payload has none
+     */
+    public String getGuildId() {
+        scanData();
+        return guildId;
+    }
+
+    /**
+     * @return the Slack channel ID, or null if the frame has none
+     */
+    public String getChannel() {
+        scan();
+        return channel;
+    }
+
+    /**
+     * @return the {@code d} payload if it is an object, otherwise null
+     */
+    public JsonObject getData() {
+        JsonValue value = getDataValue();
+        return value.getValueType() == JsonValue.ValueType.OBJECT ? value.asJsonObject() : null;
+    }
+
+    /**
+     * @return the {@code d} payload, or {@link JsonValue#NULL} if the frame has none
+     */
+    public JsonValue getDataValue() {
+        if (data == null) {
+            if (object != null) {
+                data = object.getOrDefault("d", JsonValue.NULL);
+            } else {
+                // the scan keeps a scalar d as it passes
+                scan();
+                if (data == null) {
+                    data = dataOffset < 0 ? JsonValue.NULL : readDataValue();
+                }
+            }
+        }
+        return data;
+    }
+
+    public JsonObject getObject() {
+        if (object == null) {
+            try (JsonReader reader = readerFactory.createReader(new StringReader(text))) {
+                object = reader.readObject();
+            }
+        }
+        return object;
+    }
+
+    private void scan() {
+        if (scanned) {
+            return;
+        }
+        try (JsonParser parser = parserFactory.createParser(new StringReader(text))) {
+            if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+                throw new IllegalArgumentException("frame is not a JSON object");
+            }
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String key = parser.getString();
+                JsonParser.Event value = parser.next();
+                switch (key) {
+                    case "op":
+                        if (value == JsonParser.Event.VALUE_NUMBER) {
+                            op = parser.getInt();
+                        }
+                        break;
+                    case "s":
+                        if (value == JsonParser.Event.VALUE_NUMBER) {
+                            sequence = parser.getInt();
+                        }
+                        break;
+                    case "t":
+                        if (value == JsonParser.Event.VALUE_STRING) {
+                            eventName = parser.getString();
+                        }
+                        break;
+                    case "type":
+                        if (value == JsonParser.Event.VALUE_STRING) {
+                            type = parser.getString();
+                        }
+                        break;
+                    case "channel":
+                        if (value == JsonParser.Event.VALUE_STRING) {
+                            channel = parser.getString();
+                        } else {
+                            Util.skipValue(parser, value);
+                        }
+                        break;
+                    case "d":
+                        if (value == JsonParser.Event.START_OBJECT || value == JsonParser.Event.START_ARRAY) {
+                            // the location is just past the opening bracket
+                            dataOffset = (int) parser.getLocation().getStreamOffset() - 1;
+                            Util.skipValue(parser, value);
+                        } else {
+                            data = parser.getValue();
+                        }
+                        break;
+                    default:
+                        Util.skipValue(parser, value);
+                        break;
+                }
+            }
+        }
+        scanned = true;
+    }
+
+    private void scanData() {
+        if (dataScanned) {
+            return;
+        }
+        scan();
+        if (dataOffset >= 0) {
+            try (JsonParser parser = openData()) {
+                if (parser.next() == JsonParser.Event.START_OBJECT) {
+                    while (parser.next() == JsonParser.Event.KEY_NAME) {
+                        String key = parser.getString();
+                        JsonParser.Event value = parser.next();
+                        if (value == JsonParser.Event.VALUE_STRING && "channel_id".equals(key)) {
+                            channelId = parser.getString();
+                        } else if (value == JsonParser.Event.VALUE_STRING && "guild_id".equals(key)) {
+                            guildId = parser.getString();
+                        } else {
+                            Util.skipValue(parser, value);
+                        }
+                    }
+                }
+            }
+        }
+        dataScanned = true;
+    }
+
+    private JsonValue readDataValue() {
+        try (JsonParser parser = openData()) {
+            parser.next();
+            return parser.getValue();
+        }
+    }
+
+    private JsonParser openData() {
+        StringReader reader = new StringReader(text);
+        try {
+            reader.skip(dataOffset);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return parserFactory.createParser(reader);
+    }
+
+}
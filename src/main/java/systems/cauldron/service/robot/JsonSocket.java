@@ -1,22 +1,22 @@
 package systems.cauldron.service.robot;
 
-import org.glassfish.tyrus.client.ClientManager;
-
-import javax.json.Json;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.websocket.ClientEndpointConfig;
+import javax.json.stream.JsonGenerator;
 import javax.websocket.CloseReason;
-import javax.websocket.DeploymentException;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
 import javax.websocket.MessageHandler;
 import javax.websocket.Session;
 import java.io.IOException;
-import java.io.StringReader;
 import java.net.URI;
-import java.util.concurrent.CountDownLatch;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -25,49 +25,177 @@ import java.util.function.Consumer;
  */
 public class JsonSocket {
 
-    private final Consumer<JsonObject> messageHandler;
+    private final Consumer<JsonFrame> frameHandler;
     private final BiConsumer<Integer, String> closeHandler;
 
-    private Session session = null;
+    private volatile Session session = null;
+    private CompletableFuture<Void> pendingOpen = null;
+    private volatile URI serverUri = null;
+
+    private boolean zlibStream = false;
+    private String metricsSource = "json";
+    private FrameJournal journal = null;
+
+    private final FrameBuffer frameBuffer = new FrameBuffer(512);
 
     public JsonSocket(Consumer<JsonObject> messageHandler, BiConsumer<Integer, String> closeHandler) {
-        this.messageHandler = messageHandler;
+        this(closeHandler, frame -> messageHandler.accept(frame.getObject()));
+    }
+
+    private JsonSocket(BiConsumer<Integer, String> closeHandler, Consumer<JsonFrame> frameHandler) {
+        this.frameHandler = frameHandler;
         this.closeHandler = closeHandler;
     }
 
-    public void open(URI serverEndpointUri, long timeoutMilliseconds) {
+    /**
+     * Creates a socket that hands over frames without decoding them, leaving it to the handler to read only the
+     * parts it needs.
+     */
+    public static JsonSocket lazy(Consumer<JsonFrame> frameHandler, BiConsumer<Integer, String> closeHandler) {
+        return new JsonSocket(closeHandler, frameHandler);
+    }
+
+    /**
+     * Accept binary frames carrying a zlib-stream compressed transport, as negotiated by the server endpoint URI.
+     * Takes effect on the next {@link #open}.
+     */
+    public void setZlibStream(boolean zlibStream) {
+        this.zlibStream = zlibStream;
+    }
+
+    /**
+     * Name this socket's traffic is reported under in {@link Metrics}.
+     */
+    public void setMetricsSource(String metricsSource) {
+        this.metricsSource = metricsSource;
+    }
+
+    /**
+     * Appends every received frame to the given journal before handing it over, or stops journaling if null. Takes
+     * effect on the next {@link #open}.
+     */
+    public void setJournal(FrameJournal journal) {
+        this.journal = journal;
+    }
+
+    public String getMetricsSource() {
+        return metricsSource;
+    }
+
+    /**
+     * @return the endpoint this socket last opened a connection to, or null if it was never opened
+     */
+    public URI getServerUri() {
+        return serverUri;
+    }
 
-        if (session != null) {
-            throw new IllegalStateException("attempted to open unclosed socket");
+    /**
+     * Connects through the shared {@link WebSocketRuntime}, waiting at most the given time for the connection to open.
+     */
+    public void open(URI serverEndpointUri, long timeoutMilliseconds) {
+        CompletableFuture<Void> opened = openAsync(serverEndpointUri);
+        try {
+            opened.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            opened.cancel(false);
+            throw new RuntimeException(e);
+        } catch (TimeoutException e) {
+            opened.cancel(false);
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
         }
+    }
+
+    /**
+     * Connects through the shared {@link WebSocketRuntime} without waiting. The returned future completes once the
+     * connection is open and frames may be sent, which can be before the first frame arrives. A connection that opens
+     * after the future was cancelled or otherwise completed is closed again straight away, without a call to the close
+     * handler.
+     */
+    public CompletableFuture<Void> openAsync(URI serverEndpointUri) {
 
-        final CountDownLatch latch = new CountDownLatch(1);
+        final CompletableFuture<Void> opened = new CompletableFuture<>();
+        synchronized (this) {
+            CompletableFuture<Void> pendingOpen = this.pendingOpen;
+            if (session != null || (pendingOpen != null && !pendingOpen.isDone())) {
+                throw new IllegalStateException("attempted to open unclosed socket");
+            }
+            this.pendingOpen = opened;
+        }
 
-        final Consumer<JsonObject> messageHandler = this.messageHandler;
+        final FrameJournal journal = this.journal;
+        final Consumer<JsonFrame> frameHandler = journal == null ? this.frameHandler : journaling(journal, this.frameHandler);
         final BiConsumer<Integer, String> closeHandler = this.closeHandler;
-        final Runnable clearSessionTask = this::clearSession;
+        final ZlibStreamDecoder decoder = zlibStream ? new ZlibStreamDecoder() : null;
+        final String metricsSource = this.metricsSource;
+        final WebSocketRuntime runtime = WebSocketRuntime.getDefault();
+        final AtomicBoolean abandoned = new AtomicBoolean(false);
         Endpoint endpoint = new Endpoint() {
 
             @Override
             public void onOpen(Session session, EndpointConfig config) {
-                session.addMessageHandler(new MessageHandler.Whole<String>() {
+                JsonSocket.this.session = session;
+                session.addMessageHandler(new MessageHandler.Partial<String>() {
+
+                    private final StringBuilder fragments = new StringBuilder();
+
                     @Override
-                    public void onMessage(String t) {
-                        JsonObject object;
-                        try (JsonReader parser = Json.createReader(new StringReader(t))) {
-                            object = parser.readObject();
+                    public void onMessage(String partialMessage, boolean last) {
+                        Metrics.get().bytesReceived(metricsSource, Util.utf8Length(partialMessage));
+                        if (last && fragments.length() == 0) {
+                            frameHandler.accept(new JsonFrame(partialMessage));
+                            return;
+                        }
+                        fragments.append(partialMessage);
+                        if (last) {
+                            String text = fragments.toString();
+                            fragments.setLength(0);
+                            frameHandler.accept(new JsonFrame(text));
                         }
-                        messageHandler.accept(object);
                     }
                 });
-                latch.countDown();
+                if (decoder != null) {
+                    session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+                        @Override
+                        public void onMessage(ByteBuffer b) {
+                            Metrics.get().bytesReceived(metricsSource, b.remaining());
+                            if (!decoder.feed(b)) {
+                                return;
+                            }
+                            frameHandler.accept(new JsonFrame(new String(decoder.buffer(), 0, decoder.length(), StandardCharsets.UTF_8)));
+                        }
+                    });
+                }
+                runtime.opened(JsonSocket.this);
+                if (!opened.complete(null)) {
+                    // given up on while the handshake was in flight
+                    abandoned.set(true);
+                    clearSession(session);
+                    runtime.closed(JsonSocket.this);
+                    if (decoder != null) {
+                        decoder.close();
+                    }
+                    try {
+                        session.close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "open abandoned"));
+                    } catch (IOException ignored) {
+                    }
+                }
             }
 
             @Override
             public void onClose(Session session, CloseReason closeReason) {
+                if (abandoned.get()) {
+                    return;
+                }
                 int closeCode = closeReason.getCloseCode().getCode();
                 String closeReasonPhrase = closeReason.getReasonPhrase();
-                clearSessionTask.run();
+                clearSession(session);
+                runtime.closed(JsonSocket.this);
+                if (decoder != null) {
+                    decoder.close();
+                }
                 closeHandler.accept(closeCode, closeReasonPhrase);
             }
 
@@ -80,18 +208,22 @@ public class JsonSocket {
 
         };
 
-        ClientEndpointConfig endpointConfig = ClientEndpointConfig.Builder.create().build();
-
-        ClientManager client = ClientManager.createClient("org.glassfish.tyrus.container.jdk.client.JdkClientContainer");
-
-        try {
-            this.session = client.connectToServer(endpoint, endpointConfig, serverEndpointUri);
-            latch.await(timeoutMilliseconds, TimeUnit.MILLISECONDS);
-        } catch (DeploymentException | IOException | InterruptedException e) {
-            // either a network connectivity or config problem
-            throw new RuntimeException(e);
-        }
+        this.serverUri = serverEndpointUri;
+        runtime.connectAsync(endpoint, serverEndpointUri).whenComplete((session, ex) -> {
+            if (ex != null) {
+                // never opened, so onClose will not release the decoder
+                if (decoder != null) {
+                    decoder.close();
+                }
+                opened.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+            }
+        });
+        return opened;
+    }
 
+    public boolean isOpen() {
+        Session session = this.session;
+        return session != null && session.isOpen();
     }
 
     public void close(int closeCode, String closeReasonPhrase) {
@@ -115,17 +247,66 @@ public class JsonSocket {
     }
 
     public void send(JsonObject message) {
+        sendText(message.toString());
+    }
+
+    /**
+     * Streams the fields of an outbound object straight into this socket's frame buffer, skipping the intermediate
+     * {@link JsonObject}.
+     */
+    public void send(Consumer<JsonGenerator> fields) {
+        sendText(serialize(fields));
+    }
+
+    /**
+     * Sends a frame made of a fixed prefix, a number and a fixed suffix, such as a heartbeat.
+     */
+    public void send(String prefix, long value, String suffix) {
+        sendText(serialize(prefix, value, suffix));
+    }
+
+    /**
+     * Writes an outbound object through this socket's frame buffer without sending it, for frames that are queued
+     * before they go out.
+     */
+    public String serialize(Consumer<JsonGenerator> fields) {
+        synchronized (frameBuffer) {
+            return frameBuffer.writeObject(fields);
+        }
+    }
+
+    public String serialize(String prefix, long value, String suffix) {
+        synchronized (frameBuffer) {
+            return frameBuffer.writeTemplate(prefix, value, suffix);
+        }
+    }
+
+    /**
+     * Sends an already serialized frame, such as a cached template.
+     */
+    public void sendText(String serializedMessage) {
 
         if (session == null || !session.isOpen()) {
             throw new IllegalStateException("attempted to send message on closed socket");
         }
 
-        String serializedMessage = message.toString();
         session.getAsyncRemote().sendText(serializedMessage);
+        Metrics.get().bytesSent(metricsSource, Util.utf8Length(serializedMessage));
+    }
+
+    private static Consumer<JsonFrame> journaling(FrameJournal journal, Consumer<JsonFrame> frameHandler) {
+        return frame -> {
+            journal.append(frame);
+            frameHandler.accept(frame);
+        };
     }
 
-    private void clearSession() {
-        this.session = null;
+    private void clearSession(Session closed) {
+        synchronized (this) {
+            if (this.session == closed) {
+                this.session = null;
+            }
+        }
     }
 
 }
@@ -0,0 +1,99 @@
+package systems.cauldron.service.robot;
+
+/**
+ * Receives measurements from the sockets and the REST client.
+ * <p>
+ * Calls are made on receive, send and timer threads, so implementations must be thread safe and should neither block
+ * nor allocate. String arguments are identifiers that repeat from call to call (a source such as {@code "discord"}, an
+ * event type, a route template) and can be used as map keys as they are.
+ * <p>
+ * The installed instance defaults to {@link JmxMetrics}, registered with the platform MBean server on first use.
+ *
+ * @author Amann Malik
+ */
+public interface Metrics {
+
+    /**
+     * @param type op code name or event type of the frame
+     */
+    void frameReceived(String source, String type);
+
+    /**
+     * @param type op code name or message type of a frame just handed to the socket
+     */
+    void frameSent(String source, String type);
+
+    /**
+     * @param bytes payload size of a received websocket message as it arrived on the wire: UTF-8 bytes for text
+     *              messages, compressed bytes for binary ones
+     */
+    void bytesReceived(String source, long bytes);
+
+    /**
+     * @param bytes payload size of a sent text message in UTF-8
+     */
+    void bytesSent(String source, long bytes);
+
+    /**
+     * @param nanos time spent decoding a frame far enough to route it
+     */
+    void parseLatency(String source, long nanos);
+
+    /**
+     * @param nanos time spent running the handlers of one event
+     */
+    void dispatchLatency(String source, long nanos);
+
+    /**
+     * @param type event type of a received event discarded from a full inbound queue
+     */
+    void eventDropped(String source, String type);
+
+    /**
+     * @param type event type of a received event that replaced a waiting one in the inbound queue
+     */
+    void eventCoalesced(String source, String type);
+
+    void heartbeatRoundTrip(String source, long nanos);
+
+    /**
+     * @param delta change in the number of sent messages awaiting acknowledgement
+     */
+    void pendingAcks(String source, int delta);
+
+    /**
+     * @param delta change in the number of outbound frames held back by the send rate limiter
+     */
+    void queuedSends(String source, int delta);
+
+    /**
+     * @param nanos time an outbound frame waited for the send rate limiter
+     */
+    void sendDelay(String source, long nanos);
+
+    /**
+     * @param status HTTP status, or 0 if no response was received
+     */
+    void restCall(String route, int status, long nanos);
+
+    /**
+     * @param succeeded whether the attempt restored the connection
+     */
+    void reconnect(String source, boolean succeeded);
+
+    static Metrics get() {
+        return MetricsRegistry.current();
+    }
+
+    /**
+     * Replaces the instance every socket and REST call reports to.
+     */
+    static void install(Metrics metrics) {
+        MetricsRegistry.install(metrics);
+    }
+
+    static Metrics noop() {
+        return MetricsRegistry.NOOP;
+    }
+
+}
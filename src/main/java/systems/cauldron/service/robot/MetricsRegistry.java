@@ -0,0 +1,91 @@
+package systems.cauldron.service.robot;
+
+/**
+ * Holds the installed {@link Metrics}; the JMX default is only created if nothing else was installed first.
+ *
+ * @author Amann Malik
+ */
+final class MetricsRegistry {
+
+    static final Metrics NOOP = new Metrics() {
+        @Override
+        public void frameReceived(String source, String type) {
+        }
+
+        @Override
+        public void frameSent(String source, String type) {
+        }
+
+        @Override
+        public void bytesReceived(String source, long bytes) {
+        }
+
+        @Override
+        public void bytesSent(String source, long bytes) {
+        }
+
+        @Override
+        public void parseLatency(String source, long nanos) {
+        }
+
+        @Override
+        public void dispatchLatency(String source, long nanos) {
+        }
+
+        @Override
+        public void eventDropped(String source, String type) {
+        }
+
+        @Override
+        public void eventCoalesced(String source, String type) {
+        }
+
+        @Override
+        public void heartbeatRoundTrip(String source, long nanos) {
+        }
+
+        @Override
+        public void pendingAcks(String source, int delta) {
+        }
+
+        @Override
+        public void queuedSends(String source, int delta) {
+        }
+
+        @Override
+        public void sendDelay(String source, long nanos) {
+        }
+
+        @Override
+        public void restCall(String route, int status, long nanos) {
+        }
+
+        @Override
+        public void reconnect(String source, boolean succeeded) {
+        }
+    };
+
+    private static volatile Metrics installed = null;
+
+    private MetricsRegistry() {
+    }
+
+    static Metrics current() {
+        Metrics metrics = installed;
+        if (metrics == null) {
+            synchronized (MetricsRegistry.class) {
+                metrics = installed;
+                if (metrics == null) {
+                    metrics = JmxMetrics.registerDefault();
+                    installed = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    static void install(Metrics metrics) {
+        installed = metrics == null ? NOOP : metrics;
+    }
+
+}
@@ -1,43 +1,88 @@
 package systems.cauldron.service.robot;
 
-import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by amannmalik on 3/20/17.
  */
 public class PeriodicTask {
 
-    private static final ExecutorService executorService = Executors.newSingleThreadExecutor();
-    private static final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+    private final HashedWheelTimer timer;
 
-    private final AtomicReference<ScheduledFuture<?>> currentSchedule = new AtomicReference<>();
-    private final AtomicReference<Future> currentTask = new AtomicReference<>();
+    private volatile Schedule currentSchedule = null;
 
     public PeriodicTask() {
-        this.currentTask.set(executorService.submit(() -> {
-        }));
+        this(HashedWheelTimer.getDefault());
+    }
+
+    public PeriodicTask(HashedWheelTimer timer) {
+        this.timer = timer;
     }
 
     public void start(int intervalMilliseconds, Runnable nextTask) {
         stop();
-        currentSchedule.set(scheduledExecutorService.scheduleAtFixedRate(() -> {
-            Future previousTask = currentTask.get();
-            if (previousTask.isDone()) {
-                currentTask.set(executorService.submit(nextTask));
-            }
-        }, intervalMilliseconds, intervalMilliseconds, TimeUnit.MILLISECONDS));
+        Schedule schedule = new Schedule(TimeUnit.MILLISECONDS.toNanos(intervalMilliseconds), nextTask);
+        currentSchedule = schedule;
+        schedule.arm();
     }
 
     public void stop() {
-        Optional.ofNullable(currentSchedule.get()).ifPresent(it -> it.cancel(true));
+        Schedule schedule = currentSchedule;
+        if (schedule != null) {
+            schedule.cancel();
+        }
     }
 
+    /**
+     * Fixed-rate schedule: each deadline is derived from the previous one rather than from when the task ran, and a
+     * run is skipped if the previous one is still in progress.
+     */
+    private final class Schedule {
+
+        private final long intervalNanos;
+        private final Runnable task;
+        private final AtomicBoolean inProgress = new AtomicBoolean(false);
+
+        private long nextDeadline;
+        private volatile boolean cancelled = false;
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        Schedule(long intervalNanos, Runnable task) {
+            this.intervalNanos = intervalNanos;
+            this.task = task;
+            this.nextDeadline = System.nanoTime() + intervalNanos;
+        }
+
+        void arm() {
+            timeout = timer.schedule(this::fire, nextDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (cancelled) {
+                timeout.cancel();
+            }
+        }
+
+        void fire() {
+            if (cancelled) {
+                return;
+            }
+            nextDeadline += intervalNanos;
+            arm();
+            if (inProgress.compareAndSet(false, true)) {
+                try {
+                    task.run();
+                } finally {
+                    inProgress.set(false);
+                }
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            HashedWheelTimer.Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
 
 }
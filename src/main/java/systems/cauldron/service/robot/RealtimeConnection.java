@@ -0,0 +1,28 @@
+package systems.cauldron.service.robot;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A long-lived connection to a chat service: a {@link DiscordSocket} or a {@link SlackSocket}.
+ *
+ * @author Amann Malik
+ */
+public interface RealtimeConnection {
+
+    void connect();
+
+    /**
+     * Starts connecting without waiting for the connection.
+     *
+     * @return completes once the connection is ready to receive events
+     */
+    CompletableFuture<?> connectAsync();
+
+    void disconnect();
+
+    /**
+     * @return whether the connection is open and ready to receive events
+     */
+    boolean isConnected();
+
+}
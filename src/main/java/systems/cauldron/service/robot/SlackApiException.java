@@ -0,0 +1,32 @@
+package systems.cauldron.service.robot;
+
+/**
+ * A Slack Web API call answered with {@code "ok": false}.
+ *
+ * @author Amann Malik
+ */
+public class SlackApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String method;
+    private final String error;
+
+    public SlackApiException(String method, String error) {
+        super(method + " failed: " + error);
+        this.method = method;
+        this.error = error;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return Slack's error code, such as {@code already_reacted} or {@code channel_not_found}
+     */
+    public String getError() {
+        return error;
+    }
+
+}
@@ -0,0 +1,30 @@
+package systems.cauldron.service.robot;
+
+/**
+ * A change to a channel or private channel: creation, renaming, archiving, deletion, or someone joining or leaving.
+ *
+ * @author Amann Malik
+ */
+public class SlackChannelEvent {
+
+    /**
+     * The RTM event type, such as {@code channel_rename} or {@code member_joined_channel}.
+     */
+    public final String type;
+    public final SlackId channel;
+    /**
+     * The channel's name for events that carry it, otherwise null.
+     */
+    public final String name;
+    /**
+     * The member who joined or left, the creator of a new channel, or whoever archived it; otherwise null.
+     */
+    public final SlackId user;
+
+    public SlackChannelEvent(String type, SlackId channel, String name, SlackId user) {
+        this.type = type;
+        this.channel = channel;
+        this.name = name;
+        this.user = user;
+    }
+}
@@ -0,0 +1,387 @@
+package systems.cauldron.service.robot;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Compact directory of the users, channels and direct message conversations of a Slack workspace.
+ * <p>
+ * Web API responses are consumed with a streaming parser one entry at a time, keeping only the handful of fields the
+ * directory needs, so a multi-megabyte {@code rtm.start} response never exists as a tree. Afterwards the directory is
+ * kept current from RTM events.
+ *
+ * @author Amann Malik
+ */
+public class SlackDirectory {
+
+    static final Set<String> HANDLED_TYPES = new HashSet<>(Arrays.asList(
+            "channel_created", "channel_joined", "group_joined",
+            "channel_rename", "group_rename",
+            "channel_deleted", "group_deleted",
+            "channel_archive", "group_archive", "channel_unarchive", "group_unarchive",
+            "channel_left", "group_left",
+            "member_joined_channel", "member_left_channel",
+            "im_created",
+            "user_change", "team_join"
+    ));
+
+    private static final JsonParserFactory parserFactory = Json.createParserFactory(null);
+
+    private final ConcurrentHashMap<SlackId, User> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<SlackId, Channel> channels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<SlackId, Im> ims = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded = false;
+
+    public User getUser(SlackId id) {
+        return users.get(id);
+    }
+
+    public Channel getChannel(SlackId id) {
+        return channels.get(id);
+    }
+
+    public Im getIm(SlackId id) {
+        return ims.get(id);
+    }
+
+    public int getUserCount() {
+        return users.size();
+    }
+
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    public int getImCount() {
+        return ims.size();
+    }
+
+    /**
+     * @return true once a full listing of the workspace has been ingested
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    void markLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * Streams an {@code rtm.start}, {@code rtm.connect}, {@code users.list} or {@code conversations.list} response
+     * into the directory.
+     */
+    Page ingest(InputStream inputStream) {
+        Page page = new Page();
+        boolean ok = true;
+        String error = null;
+        try (JsonParser parser = parserFactory.createParser(inputStream)) {
+            if (parser.next() != JsonParser.Event.START_OBJECT) {
+                throw new IllegalArgumentException("response is not a JSON object");
+            }
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String key = parser.getString();
+                JsonParser.Event value = parser.next();
+                switch (key) {
+                    case "ok":
+                        ok = value == JsonParser.Event.VALUE_TRUE;
+                        break;
+                    case "error":
+                        error = value == JsonParser.Event.VALUE_STRING ? parser.getString() : null;
+                        break;
+                    case "url":
+                        page.url = value == JsonParser.Event.VALUE_STRING ? parser.getString() : null;
+                        break;
+                    case "users":
+                    case "members":
+                        if (value == JsonParser.Event.START_ARRAY) {
+                            while (parser.next() == JsonParser.Event.START_OBJECT) {
+                                putUser(readUser(parser));
+                            }
+                        } else {
+                            Util.skipValue(parser, value);
+                        }
+                        break;
+                    case "channels":
+                    case "groups":
+                    case "ims":
+                        if (value == JsonParser.Event.START_ARRAY) {
+                            while (parser.next() == JsonParser.Event.START_OBJECT) {
+                                readConversation(parser);
+                            }
+                        } else {
+                            Util.skipValue(parser, value);
+                        }
+                        break;
+                    case "response_metadata":
+                        if (value == JsonParser.Event.START_OBJECT) {
+                            page.nextCursor = readNextCursor(parser);
+                        } else {
+                            Util.skipValue(parser, value);
+                        }
+                        break;
+                    default:
+                        Util.skipValue(parser, value);
+                        break;
+                }
+            }
+        }
+        if (!ok) {
+            throw new RuntimeException("Slack API error: " + error);
+        }
+        return page;
+    }
+
+    void handleEvent(String type, JsonObject event) {
+        switch (type) {
+            case "channel_created":
+            case "channel_joined":
+            case "group_joined":
+                try (JsonParser parser = objectParser(event.getJsonObject("channel"))) {
+                    readConversation(parser);
+                }
+                break;
+            case "channel_rename":
+            case "group_rename": {
+                JsonObject channel = event.getJsonObject("channel");
+                SlackId id = SlackId.of(channel.getString("id"));
+                channels.computeIfPresent(id, (k, v) -> new Channel(id, channel.getString("name", v.name), v.privateChannel, v.archived, v.member, v.memberSet));
+            }
+            break;
+            case "channel_deleted":
+            case "group_deleted":
+                channels.remove(SlackId.of(event.getString("channel")));
+                break;
+            case "channel_archive":
+            case "group_archive":
+                updateChannel(event, channel -> new Channel(channel.id, channel.name, channel.privateChannel, true, channel.member, channel.memberSet));
+                break;
+            case "channel_unarchive":
+            case "group_unarchive":
+                updateChannel(event, channel -> new Channel(channel.id, channel.name, channel.privateChannel, false, channel.member, channel.memberSet));
+                break;
+            case "channel_left":
+            case "group_left":
+                updateChannel(event, channel -> new Channel(channel.id, channel.name, channel.privateChannel, channel.archived, false, channel.memberSet));
+                break;
+            case "member_joined_channel": {
+                Channel channel = channels.get(SlackId.of(event.getString("channel")));
+                if (channel != null) {
+                    channel.memberSet.add(SlackId.of(event.getString("user")));
+                }
+            }
+            break;
+            case "member_left_channel": {
+                Channel channel = channels.get(SlackId.of(event.getString("channel")));
+                if (channel != null) {
+                    channel.memberSet.remove(SlackId.of(event.getString("user")));
+                }
+            }
+            break;
+            case "im_created": {
+                SlackId channel = SlackId.of(event.getJsonObject("channel").getString("id"));
+                ims.put(channel, new Im(channel, SlackId.of(event.getString("user"))));
+            }
+            break;
+            case "user_change":
+            case "team_join":
+                try (JsonParser parser = objectParser(event.getJsonObject("user"))) {
+                    putUser(readUser(parser));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void updateChannel(JsonObject event, UnaryOperator<Channel> update) {
+        channels.computeIfPresent(SlackId.of(event.getString("channel")), (k, v) -> update.apply(v));
+    }
+
+    private void putUser(User user) {
+        if (user.id != null) {
+            users.put(user.id, user);
+        }
+    }
+
+    /**
+     * @param parser positioned on the START_OBJECT of a user
+     */
+    private static User readUser(JsonParser parser) {
+        SlackId id = null;
+        String name = null;
+        String realName = null;
+        boolean bot = false;
+        boolean deleted = false;
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            String key = parser.getString();
+            JsonParser.Event value = parser.next();
+            if (value == JsonParser.Event.VALUE_STRING && "id".equals(key)) {
+                id = SlackId.of(parser.getString());
+            } else if (value == JsonParser.Event.VALUE_STRING && "name".equals(key)) {
+                name = parser.getString();
+            } else if (value == JsonParser.Event.VALUE_STRING && "real_name".equals(key)) {
+                realName = parser.getString();
+            } else if ("is_bot".equals(key)) {
+                bot = value == JsonParser.Event.VALUE_TRUE;
+            } else if ("deleted".equals(key)) {
+                deleted = value == JsonParser.Event.VALUE_TRUE;
+            } else {
+                Util.skipValue(parser, value);
+            }
+        }
+        return new User(id, name, realName, bot, deleted);
+    }
+
+    /**
+     * @param parser positioned on the START_OBJECT of a channel, group or IM
+     */
+    private void readConversation(JsonParser parser) {
+        SlackId id = null;
+        String name = null;
+        SlackId user = null;
+        boolean im = false;
+        boolean privateChannel = false;
+        boolean archived = false;
+        boolean member = false;
+        Set<SlackId> members = null;
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            String key = parser.getString();
+            JsonParser.Event value = parser.next();
+            switch (key) {
+                case "id":
+                    id = value == JsonParser.Event.VALUE_STRING ? SlackId.of(parser.getString()) : null;
+                    break;
+                case "name":
+                    name = value == JsonParser.Event.VALUE_STRING ? parser.getString() : null;
+                    break;
+                case "user":
+                    user = value == JsonParser.Event.VALUE_STRING ? SlackId.of(parser.getString()) : null;
+                    break;
+                case "is_im":
+                    im = value == JsonParser.Event.VALUE_TRUE;
+                    break;
+                case "is_group":
+                case "is_private":
+                    privateChannel |= value == JsonParser.Event.VALUE_TRUE;
+                    break;
+                case "is_archived":
+                    archived = value == JsonParser.Event.VALUE_TRUE;
+                    break;
+                case "is_member":
+                    member = value == JsonParser.Event.VALUE_TRUE;
+                    break;
+                case "members":
+                    if (value == JsonParser.Event.START_ARRAY) {
+                        members = ConcurrentHashMap.newKeySet();
+                        while (parser.next() == JsonParser.Event.VALUE_STRING) {
+                            members.add(SlackId.of(parser.getString()));
+                        }
+                    } else {
+                        Util.skipValue(parser, value);
+                    }
+                    break;
+                default:
+                    Util.skipValue(parser, value);
+                    break;
+            }
+        }
+        if (id == null) {
+            return;
+        }
+        if (im || user != null) {
+            ims.put(id, new Im(id, user));
+        } else {
+            channels.put(id, new Channel(id, name, privateChannel, archived, member, members == null ? ConcurrentHashMap.newKeySet() : members));
+        }
+    }
+
+    private static String readNextCursor(JsonParser parser) {
+        String cursor = null;
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            String key = parser.getString();
+            JsonParser.Event value = parser.next();
+            if (value == JsonParser.Event.VALUE_STRING && "next_cursor".equals(key)) {
+                cursor = parser.getString();
+            } else {
+                Util.skipValue(parser, value);
+            }
+        }
+        return cursor == null || cursor.isEmpty() ? null : cursor;
+    }
+
+    private static JsonParser objectParser(JsonObject object) {
+        JsonParser parser = parserFactory.createParser(object);
+        parser.next();
+        return parser;
+    }
+
+    static final class Page {
+        String url;
+        String nextCursor;
+    }
+
+    public static final class User {
+
+        public final SlackId id;
+        public final String name;
+        public final String realName;
+        public final boolean bot;
+        public final boolean deleted;
+
+        User(SlackId id, String name, String realName, boolean bot, boolean deleted) {
+            this.id = id;
+            this.name = name;
+            this.realName = realName;
+            this.bot = bot;
+            this.deleted = deleted;
+        }
+    }
+
+    public static final class Channel {
+
+        public final SlackId id;
+        public final String name;
+        public final boolean privateChannel;
+        public final boolean archived;
+        public final boolean member;
+        /**
+         * Live, read-only view of the channel's members; joins and leaves update it in place.
+         */
+        public final Set<SlackId> members;
+        // concurrent, shared by every copy of the channel so membership changes never copy it
+        final Set<SlackId> memberSet;
+
+        Channel(SlackId id, String name, boolean privateChannel, boolean archived, boolean member, Set<SlackId> memberSet) {
+            this.id = id;
+            this.name = name;
+            this.privateChannel = privateChannel;
+            this.archived = archived;
+            this.member = member;
+            this.memberSet = memberSet;
+            this.members = Collections.unmodifiableSet(memberSet);
+        }
+    }
+
+    public static final class Im {
+
+        public final SlackId id;
+        public final SlackId user;
+
+        Im(SlackId id, SlackId user) {
+            this.id = id;
+            this.user = user;
+        }
+    }
+
+}
@@ -0,0 +1,340 @@
+package systems.cauldron.service.robot;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import java.io.StringReader;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decodes RTM frames straight from a streaming parser into the typed event classes, reading only the fields those
+ * classes carry and skipping everything else without building it.
+ * <p>
+ * Fields are optional throughout: Slack omits {@code user} on bot messages, {@code text} on file shares, and moves
+ * both into a nested {@code message} for edits, so a missing field decodes to null rather than failing.
+ *
+ * @author Amann Malik
+ */
+final class SlackEventDecoder {
+
+    private static final JsonParserFactory parserFactory = Json.createParserFactory(null);
+
+    private SlackEventDecoder() {
+    }
+
+    static SlackMessageEvent decodeMessage(JsonFrame frame) {
+        String channel = null;
+        String user = null;
+        String text = null;
+        String subtype = null;
+        String ts = null;
+        String threadTs = null;
+        String botId = null;
+        String targetTs = null;
+        try (JsonParser parser = openObject(frame)) {
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String key = parser.getString();
+                JsonParser.Event value = parser.next();
+                if (value == JsonParser.Event.START_OBJECT && "message".equals(key)) {
+                    // message_changed and message_replied nest the affected message
+                    while (parser.next() == JsonParser.Event.KEY_NAME) {
+                        String nestedKey = parser.getString();
+                        JsonParser.Event nestedValue = parser.next();
+                        if (nestedValue != JsonParser.Event.VALUE_STRING) {
+                            Util.skipValue(parser, nestedValue);
+                            continue;
+                        }
+                        switch (nestedKey) {
+                            case "user":
+                                user = parser.getString();
+                                break;
+                            case "text":
+                                text = parser.getString();
+                                break;
+                            case "bot_id":
+                                botId = parser.getString();
+                                break;
+                            case "thread_ts":
+                                threadTs = parser.getString();
+                                break;
+                            case "ts":
+                                targetTs = parser.getString();
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                    continue;
+                }
+                if (value != JsonParser.Event.VALUE_STRING) {
+                    Util.skipValue(parser, value);
+                    continue;
+                }
+                switch (key) {
+                    case "channel":
+                        channel = parser.getString();
+                        break;
+                    case "user":
+                        user = parser.getString();
+                        break;
+                    case "text":
+                        text = parser.getString();
+                        break;
+                    case "subtype":
+                        subtype = parser.getString();
+                        break;
+                    case "ts":
+                        ts = parser.getString();
+                        break;
+                    case "thread_ts":
+                        threadTs = parser.getString();
+                        break;
+                    case "bot_id":
+                        botId = parser.getString();
+                        break;
+                    case "deleted_ts":
+                        targetTs = parser.getString();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return new SlackMessageEvent(timestamp(ts), SlackId.of(channel), SlackId.of(user), text, subtype, ts,
+                threadTs, SlackId.of(botId), targetTs);
+    }
+
+    static SlackReactionEvent decodeReaction(JsonFrame frame) {
+        boolean added = false;
+        String user = null;
+        String reaction = null;
+        String itemUser = null;
+        String itemType = null;
+        String channel = null;
+        String itemTs = null;
+        String eventTs = null;
+        try (JsonParser parser = openObject(frame)) {
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String key = parser.getString();
+                JsonParser.Event value = parser.next();
+                if (value == JsonParser.Event.START_OBJECT && "item".equals(key)) {
+                    while (parser.next() == JsonParser.Event.KEY_NAME) {
+                        String itemKey = parser.getString();
+                        JsonParser.Event itemValue = parser.next();
+                        if (itemValue == JsonParser.Event.VALUE_STRING && "type".equals(itemKey)) {
+                            itemType = parser.getString();
+                        } else if (itemValue == JsonParser.Event.VALUE_STRING && "channel".equals(itemKey)) {
+                            channel = parser.getString();
+                        } else if (itemValue == JsonParser.Event.VALUE_STRING && "ts".equals(itemKey)) {
+                            itemTs = parser.getString();
+                        } else {
+                            Util.skipValue(parser, itemValue);
+                        }
+                    }
+                    continue;
+                }
+                if (value != JsonParser.Event.VALUE_STRING) {
+                    Util.skipValue(parser, value);
+                    continue;
+                }
+                switch (key) {
+                    case "type":
+                        added = "reaction_added".equals(parser.getString());
+                        break;
+                    case "user":
+                        user = parser.getString();
+                        break;
+                    case "reaction":
+                        reaction = parser.getString();
+                        break;
+                    case "item_user":
+                        itemUser = parser.getString();
+                        break;
+                    case "event_ts":
+                        eventTs = parser.getString();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return new SlackReactionEvent(timestamp(eventTs), added, SlackId.of(user), reaction, SlackId.of(itemUser),
+                itemType, SlackId.of(channel), itemTs);
+    }
+
+    static SlackChannelEvent decodeChannel(JsonFrame frame) {
+        String type = null;
+        String channel = null;
+        String name = null;
+        String user = null;
+        try (JsonParser parser = openObject(frame)) {
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String key = parser.getString();
+                JsonParser.Event value = parser.next();
+                if (value == JsonParser.Event.START_OBJECT && "channel".equals(key)) {
+                    // created, renamed and joined events carry the channel object instead of its ID
+                    while (parser.next() == JsonParser.Event.KEY_NAME) {
+                        String channelKey = parser.getString();
+                        JsonParser.Event channelValue = parser.next();
+                        if (channelValue == JsonParser.Event.VALUE_STRING && "id".equals(channelKey)) {
+                            channel = parser.getString();
+                        } else if (channelValue == JsonParser.Event.VALUE_STRING && "name".equals(channelKey)) {
+                            name = parser.getString();
+                        } else if (channelValue == JsonParser.Event.VALUE_STRING && "creator".equals(channelKey)) {
+                            user = user == null ? parser.getString() : user;
+                        } else {
+                            Util.skipValue(parser, channelValue);
+                        }
+                    }
+                    continue;
+                }
+                if (value != JsonParser.Event.VALUE_STRING) {
+                    Util.skipValue(parser, value);
+                    continue;
+                }
+                switch (key) {
+                    case "type":
+                        type = parser.getString();
+                        break;
+                    case "channel":
+                        channel = parser.getString();
+                        break;
+                    case "user":
+                        user = parser.getString();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return new SlackChannelEvent(type, SlackId.of(channel), name, SlackId.of(user));
+    }
+
+    static SlackUserEvent decodeUser(JsonFrame frame) {
+        String type = null;
+        String user = null;
+        String name = null;
+        String realName = null;
+        String profileRealName = null;
+        boolean bot = false;
+        boolean deleted = false;
+        try (JsonParser parser = openObject(frame)) {
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String key = parser.getString();
+                JsonParser.Event value = parser.next();
+                if (value == JsonParser.Event.VALUE_STRING && "type".equals(key)) {
+                    type = parser.getString();
+                    continue;
+                }
+                if (value != JsonParser.Event.START_OBJECT || !"user".equals(key)) {
+                    Util.skipValue(parser, value);
+                    continue;
+                }
+                while (parser.next() == JsonParser.Event.KEY_NAME) {
+                    String userKey = parser.getString();
+                    JsonParser.Event userValue = parser.next();
+                    switch (userKey) {
+                        case "id":
+                            user = readString(parser, userValue);
+                            break;
+                        case "name":
+                            name = readString(parser, userValue);
+                            break;
+                        case "real_name":
+                            realName = readString(parser, userValue);
+                            break;
+                        case "is_bot":
+                            bot = userValue == JsonParser.Event.VALUE_TRUE;
+                            break;
+                        case "deleted":
+                            deleted = userValue == JsonParser.Event.VALUE_TRUE;
+                            break;
+                        case "profile":
+                            if (userValue == JsonParser.Event.START_OBJECT) {
+                                profileRealName = readProfileRealName(parser);
+                            } else {
+                                Util.skipValue(parser, userValue);
+                            }
+                            break;
+                        default:
+                            Util.skipValue(parser, userValue);
+                            break;
+                    }
+                }
+            }
+        }
+        return new SlackUserEvent(type, SlackId.of(user), name, realName != null ? realName : profileRealName, bot, deleted);
+    }
+
+    static SlackPresenceEvent decodePresence(JsonFrame frame) {
+        List<SlackId> users = Collections.emptyList();
+        boolean active = false;
+        try (JsonParser parser = openObject(frame)) {
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String key = parser.getString();
+                JsonParser.Event value = parser.next();
+                if (value == JsonParser.Event.VALUE_STRING && "user".equals(key)) {
+                    users = Collections.singletonList(SlackId.of(parser.getString()));
+                } else if (value == JsonParser.Event.VALUE_STRING && "presence".equals(key)) {
+                    active = "active".equals(parser.getString());
+                } else if (value == JsonParser.Event.START_ARRAY && "users".equals(key)) {
+                    List<SlackId> batch = new ArrayList<>();
+                    JsonParser.Event element;
+                    while ((element = parser.next()) != JsonParser.Event.END_ARRAY) {
+                        if (element == JsonParser.Event.VALUE_STRING) {
+                            batch.add(SlackId.of(parser.getString()));
+                        } else {
+                            Util.skipValue(parser, element);
+                        }
+                    }
+                    users = Collections.unmodifiableList(batch);
+                } else {
+                    Util.skipValue(parser, value);
+                }
+            }
+        }
+        return new SlackPresenceEvent(users, active);
+    }
+
+    private static String readProfileRealName(JsonParser parser) {
+        String realName = null;
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            String key = parser.getString();
+            JsonParser.Event value = parser.next();
+            if (value == JsonParser.Event.VALUE_STRING && "real_name".equals(key)) {
+                realName = parser.getString();
+            } else {
+                Util.skipValue(parser, value);
+            }
+        }
+        return realName;
+    }
+
+    /**
+     * @return the string value, or null after skipping a value of any other type
+     */
+    private static String readString(JsonParser parser, JsonParser.Event value) {
+        if (value == JsonParser.Event.VALUE_STRING) {
+            return parser.getString();
+        }
+        Util.skipValue(parser, value);
+        return null;
+    }
+
+    private static JsonParser openObject(JsonFrame frame) {
+        JsonParser parser = parserFactory.createParser(new StringReader(frame.getText()));
+        if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+            parser.close();
+            throw new IllegalArgumentException("frame is not a JSON object");
+        }
+        return parser;
+    }
+
+    private static Instant timestamp(String ts) {
+        return ts == null ? null : Util.convertTimestamp(ts);
+    }
+
+}
@@ -0,0 +1,59 @@
+package systems.cauldron.service.robot;
+
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A family of RTM events that decode into the same event class, for subscribing with
+ * {@link SlackSocket#addEventHandler}.
+ *
+ * @param <T> the decoded event class
+ * @author Amann Malik
+ */
+public final class SlackEventType<T> {
+
+    public static final SlackEventType<SlackMessageEvent> MESSAGE = new SlackEventType<>(
+            "message", SlackEventDecoder::decodeMessage,
+            "message");
+    public static final SlackEventType<SlackReactionEvent> REACTION = new SlackEventType<>(
+            "reaction", SlackEventDecoder::decodeReaction,
+            "reaction_added", "reaction_removed");
+    public static final SlackEventType<SlackChannelEvent> CHANNEL = new SlackEventType<>(
+            "channel", SlackEventDecoder::decodeChannel,
+            "channel_created", "channel_deleted", "channel_rename", "channel_archive", "channel_unarchive",
+            "channel_joined", "channel_left", "group_rename", "group_archive", "group_unarchive", "group_joined",
+            "group_left", "member_joined_channel", "member_left_channel");
+    public static final SlackEventType<SlackUserEvent> USER = new SlackEventType<>(
+            "user", SlackEventDecoder::decodeUser,
+            "user_change", "team_join");
+    public static final SlackEventType<SlackPresenceEvent> PRESENCE = new SlackEventType<>(
+            "presence", SlackEventDecoder::decodePresence,
+            "presence_change", "manual_presence_change");
+
+    private final String name;
+    private final Function<JsonFrame, T> decoder;
+    private final Set<String> types;
+
+    private SlackEventType(String name, Function<JsonFrame, T> decoder, String... types) {
+        this.name = name;
+        this.decoder = decoder;
+        this.types = Set.of(types);
+    }
+
+    /**
+     * @return the RTM {@code type} values belonging to this family
+     */
+    public Set<String> getTypes() {
+        return types;
+    }
+
+    T decode(JsonFrame frame) {
+        return decoder.apply(frame);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
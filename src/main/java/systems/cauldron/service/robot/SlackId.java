@@ -0,0 +1,86 @@
+package systems.cauldron.service.robot;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A canonical Slack ID such as {@code C024BE91L} or {@code U0G9QF9C6}.
+ * <p>
+ * Instances are interned: {@link #of} returns the same instance for equal strings, so IDs compare by reference and
+ * carry a precomputed hash. The pool holds its IDs weakly, so an ID nothing refers to any more is collected and its
+ * entry is dropped on a later call; a new instance created after that cannot meet the old one.
+ *
+ * @author Amann Malik
+ */
+public final class SlackId {
+
+    private static final ConcurrentHashMap<String, PoolEntry> pool = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<SlackId> collected = new ReferenceQueue<>();
+
+    private final String value;
+    private final int hash;
+
+    private SlackId(String value) {
+        this.value = value;
+        this.hash = value.hashCode();
+    }
+
+    public static SlackId of(String value) {
+        if (value == null) {
+            return null;
+        }
+        purge();
+        while (true) {
+            PoolEntry entry = pool.get(value);
+            if (entry != null) {
+                SlackId id = entry.get();
+                if (id != null) {
+                    return id;
+                }
+            }
+            SlackId id = new SlackId(value);
+            PoolEntry fresh = new PoolEntry(id);
+            if (entry == null ? pool.putIfAbsent(value, fresh) == null : pool.replace(value, entry, fresh)) {
+                return id;
+            }
+        }
+    }
+
+    private static void purge() {
+        PoolEntry entry;
+        while ((entry = (PoolEntry) collected.poll()) != null) {
+            pool.remove(entry.key, entry);
+        }
+    }
+
+    public String value() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+
+    private static final class PoolEntry extends WeakReference<SlackId> {
+
+        final String key;
+
+        PoolEntry(SlackId id) {
+            super(id, collected);
+            this.key = id.value;
+        }
+    }
+
+}
@@ -3,19 +3,54 @@ package systems.cauldron.service.robot;
 import java.time.Instant;
 
 /**
+ * A {@code message} event, including its subtypes. For {@code message_changed} the user, text and thread fields
+ * describe the edited message; for {@code message_deleted} only the channel and the deleted message's timestamp are
+ * set.
+ *
  * @author Amann Malik
  */
 public class SlackMessageEvent {
 
     public final Instant timestamp;
-    public final String channel;
-    public final String user;
+    public final SlackId channel;
+    /**
+     * Null for messages posted by bots and integrations.
+     */
+    public final SlackId user;
+    /**
+     * Null if the message has no text, such as a file share without a comment.
+     */
     public final String text;
 
-    public SlackMessageEvent(Instant timestamp, String channel, String user, String text) {
+    /**
+     * Null for an ordinary message.
+     */
+    public final String subtype;
+    /**
+     * The raw {@code ts}, which is the message's ID within its channel.
+     */
+    public final String ts;
+    public final String threadTs;
+    public final SlackId botId;
+    /**
+     * The {@code ts} of the message a {@code message_changed} or {@code message_deleted} event refers to.
+     */
+    public final String targetTs;
+
+    public SlackMessageEvent(Instant timestamp, SlackId channel, SlackId user, String text) {
+        this(timestamp, channel, user, text, null, null, null, null, null);
+    }
+
+    public SlackMessageEvent(Instant timestamp, SlackId channel, SlackId user, String text, String subtype, String ts,
+                             String threadTs, SlackId botId, String targetTs) {
         this.timestamp = timestamp;
         this.channel = channel;
         this.user = user;
         this.text = text;
+        this.subtype = subtype;
+        this.ts = ts;
+        this.threadTs = threadTs;
+        this.botId = botId;
+        this.targetTs = targetTs;
     }
 }
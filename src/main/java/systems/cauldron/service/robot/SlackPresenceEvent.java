@@ -0,0 +1,20 @@
+package systems.cauldron.service.robot;
+
+import java.util.List;
+
+/**
+ * A {@code presence_change} or {@code manual_presence_change} event. Batched presence updates carry several users at
+ * once; {@code manual_presence_change} concerns the connected user and carries none.
+ *
+ * @author Amann Malik
+ */
+public class SlackPresenceEvent {
+
+    public final List<SlackId> users;
+    public final boolean active;
+
+    public SlackPresenceEvent(List<SlackId> users, boolean active) {
+        this.users = users;
+        this.active = active;
+    }
+}
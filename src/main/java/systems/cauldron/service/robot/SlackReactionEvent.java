@@ -0,0 +1,47 @@
+package systems.cauldron.service.robot;
+
+import java.time.Instant;
+
+/**
+ * A {@code reaction_added} or {@code reaction_removed} event.
+ *
+ * @author Amann Malik
+ */
+public class SlackReactionEvent {
+
+    public final Instant timestamp;
+    public final boolean added;
+    public final SlackId user;
+    /**
+     * Emoji name without colons, such as {@code thumbsup}.
+     */
+    public final String reaction;
+    /**
+     * Author of the reacted-to item, or null if unknown.
+     */
+    public final SlackId itemUser;
+    /**
+     * {@code message}, {@code file} or {@code file_comment}.
+     */
+    public final String itemType;
+    /**
+     * Channel of the reacted-to message, or null for other item types.
+     */
+    public final SlackId channel;
+    /**
+     * {@code ts} of the reacted-to message, or null for other item types.
+     */
+    public final String itemTs;
+
+    public SlackReactionEvent(Instant timestamp, boolean added, SlackId user, String reaction, SlackId itemUser,
+                              String itemType, SlackId channel, String itemTs) {
+        this.timestamp = timestamp;
+        this.added = added;
+        this.user = user;
+        this.reaction = reaction;
+        this.itemUser = itemUser;
+        this.itemType = itemType;
+        this.channel = channel;
+        this.itemTs = itemTs;
+    }
+}
@@ -3,153 +3,559 @@ package systems.cauldron.service.robot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.json.Json;
 import javax.json.JsonObject;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
  * @author Amann Malik
  */
-public class SlackSocket {
+public class SlackSocket implements RealtimeConnection {
 
     private static final Logger LOG = LoggerFactory.getLogger(SlackSocket.class);
 
+    private static final String METRICS_SOURCE = "slack";
+
+    private static final long CONNECT_TIMEOUT_MILLISECONDS = 5000L;
+
     private static final String SLACK_RTM_START_URL = "https://slack.com/api/rtm.start";
+    private static final String SLACK_RTM_CONNECT_URL = "https://slack.com/api/rtm.connect";
+
+    /**
+     * How the workspace directory is populated when connecting.
+     */
+    public enum StartupMode {
+        /**
+         * Connect through {@code rtm.start}, streaming its full workspace listing into the directory first.
+         */
+        FULL,
+        /**
+         * Connect through the lightweight {@code rtm.connect} and page the directory in on a background thread.
+         */
+        LAZY
+    }
 
-    private final JsonSocket socket = new JsonSocket(this::handleMessage, this::handleDisconnect);
+    private final JsonSocket socket = JsonSocket.lazy(this::handleMessage, this::handleDisconnect);
     private final String token;
-    private final Consumer<SlackMessageEvent> messageHandler;
+    private final SlackWebClient webClient;
+    private final ConcurrentHashMap<String, Subscription<?>> subscriptions = new ConcurrentHashMap<>();
+
+    private static final ExecutorService directoryLoader = Executors.newCachedThreadPool(Util.daemonThreadFactory("slack-directory"));
 
     private final AtomicInteger messageId = new AtomicInteger(1);
-    private final ConcurrentHashMap<Integer, Consumer<Boolean>> messageBuffer = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, PendingMessage> messageBuffer = new ConcurrentHashMap<>();
+
+    // sends beyond the in-flight window wait here until acknowledgements free up room
+    private final ArrayDeque<PendingMessage> sendBacklog = new ArrayDeque<>();
+    private int inFlightCount = 0;
+    private int maxInFlight = 16;
+    private int maxBacklog = 1024;
+    private volatile long ackTimeoutMilliseconds = 10000L;
+
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    private EventDispatcher dispatcher = EventDispatcher.inline();
+    private final InboundQueue inboundQueue = new InboundQueue(METRICS_SOURCE);
+    private HashedWheelTimer timer = HashedWheelTimer.getDefault();
+
+    private final SlackDirectory directory = new SlackDirectory();
+    private StartupMode startupMode = StartupMode.FULL;
+    private volatile CompletableFuture<Void> directoryLoad = CompletableFuture.completedFuture(null);
 
     public SlackSocket(String token) {
-        this(token, (event)->{});
+        this.token = token;
+        this.webClient = SlackWebClient.forToken(token);
+        this.socket.setMetricsSource(METRICS_SOURCE);
+        this.inboundQueue.coalesce("presence_change", frame -> frame.getObject().getString("user", null));
     }
 
     public SlackSocket(String token, Consumer<SlackMessageEvent> messageHandler) {
-        this.token = token;
-        this.messageHandler = messageHandler;
+        this(token);
+        addEventHandler(SlackEventType.MESSAGE, messageHandler);
+    }
+
+    /**
+     * Subscribes to a family of RTM events. Events of types nobody subscribed to are dropped without being decoded,
+     * and events with several subscribers are decoded once.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void addEventHandler(SlackEventType<T> eventType, Consumer<? super T> handler) {
+        Subscription<T> subscription = new Subscription<>(eventType);
+        for (String type : eventType.getTypes()) {
+            Subscription<?> existing = subscriptions.putIfAbsent(type, subscription);
+            if (existing != null) {
+                subscription = (Subscription<T>) existing;
+            }
+        }
+        subscription.handlers.add(handler);
     }
 
+    @Override
     public void connect() {
-        URI uri = fetchServerEndpointUrl(this.token);
-        this.socket.open(uri, 5000L);
+        connect(fetchServerEndpointUrl());
     }
 
+    void connect(URI serverUri) {
+        this.socket.open(serverUri, CONNECT_TIMEOUT_MILLISECONDS);
+    }
 
+    /**
+     * Non-blocking variant of {@link #connect}. The {@code rtm.start} or {@code rtm.connect} response is streamed into
+     * the directory, so it is read on the directory loader's threads.
+     */
+    @Override
+    public CompletableFuture<Void> connectAsync() {
+        return CompletableFuture.supplyAsync(this::fetchServerEndpointUrl, directoryLoader)
+                .thenCompose(this::connectAsync);
+    }
+
+    CompletableFuture<Void> connectAsync(URI serverUri) {
+        CompletableFuture<Void> opened = socket.openAsync(serverUri);
+        HashedWheelTimer.Timeout timeout = timer.schedule(
+                () -> opened.completeExceptionally(new TimeoutException("no connection to " + serverUri + " within " + CONNECT_TIMEOUT_MILLISECONDS + " ms")),
+                CONNECT_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS);
+        return opened.whenComplete((result, ex) -> timeout.cancel());
+    }
+
+    public void setStartupMode(StartupMode startupMode) {
+        this.startupMode = startupMode;
+    }
+
+    /**
+     * Records every received frame to the given journal; null stops journaling. Takes effect on the next
+     * {@link #connect}.
+     */
+    public void setJournal(FrameJournal journal) {
+        this.socket.setJournal(journal);
+    }
+
+    /**
+     * Feeds the events of a recorded journal through the directory and event handlers, as if they had just been
+     * received. Replies to sent messages and connection events are skipped.
+     */
+    public void replay(FrameJournalReader reader) {
+        while (reader.next()) {
+            JsonFrame frame = reader.getFrame();
+            String eventType = frame.getType();
+            if (eventType == null || "hello".equals(eventType)) {
+                continue;
+            }
+            handleMessage(frame);
+        }
+    }
+
+    public SlackDirectory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return completes once the directory holds a full listing of the workspace
+     */
+    public CompletableFuture<Void> getDirectoryLoad() {
+        return directoryLoad;
+    }
 
+    /**
+     * Selects the thread the message handler runs on; by default it runs inline on the socket's receive thread.
+     * Messages of the same channel are always handled in order.
+     */
+    public void setDispatcher(EventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public EventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Events wait here while the dispatcher is behind. By default only the latest waiting {@code presence_change} of a
+     * user is handled.
+     */
+    public InboundQueue getInboundQueue() {
+        return inboundQueue;
+    }
+
+    /**
+     * Selects the timer acknowledgement deadlines are tracked on; by default the shared {@link HashedWheelTimer}.
+     */
+    public void setTimer(HashedWheelTimer timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return socket.isOpen();
+    }
+
+    @Override
     public void disconnect() {
+        List<PendingMessage> abandoned;
+        synchronized (sendBacklog) {
+            abandoned = new ArrayList<>(sendBacklog);
+            sendBacklog.clear();
+        }
         for (Integer id : messageBuffer.keySet()) {
-            Consumer<Boolean> remove = messageBuffer.remove(id);
-            remove.accept(false);
+            PendingMessage pending = messageBuffer.remove(id);
+            if (pending != null) {
+                Metrics.get().pendingAcks(METRICS_SOURCE, -1);
+                abandoned.add(pending);
+            }
         }
+        for (PendingMessage pending : abandoned) {
+            pending.complete(false);
+        }
+        synchronized (sendBacklog) {
+            inFlightCount = 0;
+        }
+        this.inboundQueue.releaseBlocked();
         this.socket.close(1000, "client requested disconnection");
     }
 
+    /**
+     * Maximum number of sent messages awaiting acknowledgement before further sends are held back.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("in-flight window must allow at least one message");
+        }
+        synchronized (sendBacklog) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    /**
+     * Maximum number of messages held back while the in-flight window is full; sends beyond that are rejected.
+     */
+    public void setMaxBacklog(int maxBacklog) {
+        synchronized (sendBacklog) {
+            this.maxBacklog = maxBacklog;
+        }
+    }
+
+    /**
+     * Time after which an unacknowledged message is considered lost and its slot in the window is released.
+     */
+    public void setAckTimeout(long ackTimeoutMilliseconds) {
+        this.ackTimeoutMilliseconds = ackTimeoutMilliseconds;
+    }
+
+    public LatencyHistogram getAckLatency() {
+        return ackLatency;
+    }
+
+    public int getInFlightCount() {
+        synchronized (sendBacklog) {
+            return inFlightCount;
+        }
+    }
+
+    public int getBacklogSize() {
+        synchronized (sendBacklog) {
+            return sendBacklog.size();
+        }
+    }
+
     public void sendMessage(String channel, String message, Consumer<Boolean> sentHandler) {
+        sendMessage(channel, message).whenComplete((sent, error) -> sentHandler.accept(error == null && sent));
+    }
+
+    /**
+     * Sends immediately if the in-flight window has room, otherwise queues behind earlier sends. The result completes
+     * with the acknowledgement status, with false if no acknowledgement arrives in time, or exceptionally with
+     * {@link RejectedExecutionException} if the backlog is full.
+     */
+    public CompletableFuture<Boolean> sendMessage(String channel, String message) {
+        PendingMessage pending = new PendingMessage(channel, message);
+        boolean transmit;
+        synchronized (sendBacklog) {
+            if (inFlightCount < maxInFlight) {
+                inFlightCount++;
+                transmit = true;
+            } else if (sendBacklog.size() < maxBacklog) {
+                sendBacklog.addLast(pending);
+                transmit = false;
+            } else {
+                pending.result.completeExceptionally(new RejectedExecutionException("send backlog is full"));
+                return pending.result;
+            }
+        }
+        if (transmit) {
+            transmit(pending);
+        }
+        return pending.result;
+    }
+
+    private void transmit(PendingMessage pending) {
         int id = messageId.getAndIncrement();
-        JsonObject object = Json.createObjectBuilder()
-                .add("id", id)
-                .add("type", "message")
-                .add("channel", channel)
-                .add("text", message)
-                .build();
-        messageBuffer.put(id, sentHandler);
-        this.socket.send(object);
+        pending.sentAt = System.nanoTime();
+        messageBuffer.put(id, pending);
+        Metrics.get().pendingAcks(METRICS_SOURCE, 1);
+        pending.timeout = timer.schedule(() -> expire(id), ackTimeoutMilliseconds, TimeUnit.MILLISECONDS);
+        try {
+            this.socket.send(frame -> frame
+                    .write("id", id)
+                    .write("type", "message")
+                    .write("channel", pending.channel)
+                    .write("text", pending.text));
+            Metrics.get().frameSent(METRICS_SOURCE, "message");
+        } catch (RuntimeException ex) {
+            if (messageBuffer.remove(id, pending)) {
+                Metrics.get().pendingAcks(METRICS_SOURCE, -1);
+                pending.cancelTimeout();
+                pending.result.completeExceptionally(ex);
+                releaseWindowSlot();
+            }
+        }
     }
 
+    private void expire(int id) {
+        PendingMessage pending = messageBuffer.remove(id);
+        if (pending != null) {
+            Metrics.get().pendingAcks(METRICS_SOURCE, -1);
+            LOG.warn("message {} was not acknowledged within {} ms", id, ackTimeoutMilliseconds);
+            pending.result.complete(false);
+            releaseWindowSlot();
+        }
+    }
+
+    private void releaseWindowSlot() {
+        PendingMessage next;
+        synchronized (sendBacklog) {
+            next = sendBacklog.pollFirst();
+            if (next == null) {
+                inFlightCount = Math.max(0, inFlightCount - 1);
+            }
+        }
+        if (next != null) {
+            transmit(next);
+        }
+    }
 
 
-    private void handleMessage(JsonObject message) {
-        LOG.debug("{}", message.toString());
 
-        if (message.containsKey("type")) {
-            String eventType = message.getString("type");
+    void handleMessage(JsonFrame frame) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("{}", frame.getText());
+        }
+
+        long receivedAt = System.nanoTime();
+        String eventType = frame.getType();
+        Metrics metrics = Metrics.get();
+        metrics.parseLatency(METRICS_SOURCE, System.nanoTime() - receivedAt);
+        metrics.frameReceived(METRICS_SOURCE, eventType != null ? eventType : "reply");
+        if (eventType != null) {
             switch (eventType) {
-                case "message":
-                    this.messageHandler.accept(new SlackMessageEvent(
-                            Util.convertTimestamp(message.getString("ts")),
-                            message.getString("channel"),
-                            message.getString("user"),
-                            message.getString("text")
-                    ));
-                    break;
                 case "hello":
                     LOG.info("established connection to Slack's Real Time Messaging API");
                     break;
                 case "error":
-                    JsonObject errorObject = message.getJsonObject("error");
+                    JsonObject errorObject = frame.getObject().getJsonObject("error");
                     int errorCode = errorObject.getInt("code");
                     String errorMessage = errorObject.getString("message");
                     LOG.error("error code {}: {}", errorCode, errorMessage);
                     break;
                 default:
+                    if (SlackDirectory.HANDLED_TYPES.contains(eventType)) {
+                        directory.handleEvent(eventType, frame.getObject());
+                    }
+                    dispatch(eventType, frame);
                     break;
             }
         } else {
+            JsonObject message = frame.getObject();
             if (message.containsKey("reply_to")) {
                 handleSentConfirmation(message);
             }
         }
     }
 
+    private void dispatch(String eventType, JsonFrame frame) {
+        Subscription<?> subscription = subscriptions.get(eventType);
+        if (subscription == null) {
+            return;
+        }
+        String channel = frame.getChannel();
+        inboundQueue.offer(dispatcher, eventType, frame, channel != null ? SlackId.of(channel) : this, () -> {
+            long start = System.nanoTime();
+            try {
+                subscription.deliver(frame);
+            } finally {
+                Metrics.get().dispatchLatency(METRICS_SOURCE, System.nanoTime() - start);
+            }
+        });
+    }
+
     private void handleDisconnect(int closeCode, String closeReasonPhrase) {
         //TODO: does Slack put any useful information here?
+        inboundQueue.releaseBlocked();
     }
 
-    private static URI fetchServerEndpointUrl(String token) {
+    private URI fetchServerEndpointUrl() {
+        String endpoint = startupMode == StartupMode.FULL ? SLACK_RTM_START_URL : SLACK_RTM_CONNECT_URL;
+        String websocketUrl;
+        try (InputStream body = Util.openResourceStream(endpoint, Map.of("Authorization", "Bearer " + token))) {
+            websocketUrl = directory.ingest(body).url;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (websocketUrl == null) {
+            throw new RuntimeException("no websocket url in " + endpoint + " response");
+        }
+        if (startupMode == StartupMode.FULL) {
+            directory.markLoaded();
+        } else if (!directory.isLoaded() && directoryLoad.isDone()) {
+            directoryLoad = CompletableFuture.runAsync(this::loadDirectory, directoryLoader)
+                    .whenComplete((result, ex) -> {
+                        if (ex != null) {
+                            LOG.error("failed to load workspace directory", ex);
+                        }
+                    });
+        }
         try {
-            JsonObject metadata = Util.fetchResource(SLACK_RTM_START_URL + "?token=" + token);
-            if (!metadata.containsKey("url")) {
-                throw new RuntimeException(metadata.toString());
-            }
-            String websocketUrl = metadata.getString("url");
             return new URI(websocketUrl);
-        } catch (IOException | URISyntaxException ex) {
+        } catch (URISyntaxException ex) {
             throw new RuntimeException(ex);
         }
     }
 
+    private void loadDirectory() {
+        loadPages("users.list", "limit=1000");
+        loadPages("conversations.list", "limit=1000&exclude_archived=false&types=public_channel,private_channel,im");
+        directory.markLoaded();
+    }
+
+    /**
+     * Both listings are Tier 2, so pages go out through the token's {@link SlackWebClient}, which paces them and waits
+     * out any 429.
+     */
+    private void loadPages(String method, String query) {
+        String cursor = null;
+        do {
+            String pageQuery = cursor == null ? query : query + "&cursor=" + Util.encodeValue(cursor);
+            try (InputStream body = webClient.stream(method, SlackWebClient.Tier.TIER_2, pageQuery).join()) {
+                cursor = directory.ingest(body).nextCursor;
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        } while (cursor != null);
+    }
+
     private void handleSentConfirmation(JsonObject object) {
         int replyToValue = object.getInt("reply_to");
-        Consumer<Boolean> sentHandler = messageBuffer.remove(replyToValue);
+        PendingMessage pending = messageBuffer.remove(replyToValue);
+        if (pending == null) {
+            LOG.debug("ignoring late confirmation of message {}", replyToValue);
+            return;
+        }
+        Metrics.get().pendingAcks(METRICS_SOURCE, -1);
+        pending.cancelTimeout();
+        ackLatency.record(System.nanoTime() - pending.sentAt);
 
         boolean okValue = object.getBoolean("ok");
         if (okValue) {
             LOG.debug("message {} confirmed sent", replyToValue);
-            sentHandler.accept(true);
+            pending.result.complete(true);
         } else {
             JsonObject error = object.getJsonObject("error");
             LOG.error("error in sent confirmation response: {}", error);
-            sentHandler.accept(false);
+            pending.result.complete(false);
+        }
+        releaseWindowSlot();
+    }
+
+    private static final class PendingMessage {
+
+        final String channel;
+        final String text;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        volatile long sentAt;
+        volatile HashedWheelTimer.Timeout timeout;
+
+        PendingMessage(String channel, String text) {
+            this.channel = channel;
+            this.text = text;
+        }
+
+        void complete(boolean sent) {
+            cancelTimeout();
+            result.complete(sent);
+        }
+
+        void cancelTimeout() {
+            HashedWheelTimer.Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
         }
     }
 
+    /**
+     * @throws CompletionException if adding the reaction failed for any reason other than it already being there
+     */
     public boolean addReaction(String emoji, String channel, Instant timestamp) {
+        return addReactionAsync(emoji, channel, timestamp).join();
+    }
+
+    /**
+     * Non-blocking variant of {@link #addReaction}; completes with false if the message already carries the reaction.
+     * Any other failure, such as a network error or another API error, fails the future. Reactions are paced by the
+     * token's {@link SlackWebClient}.
+     */
+    public CompletableFuture<Boolean> addReactionAsync(String emoji, String channel, Instant timestamp) {
         String serializedTimestamp = String.format("%d.%06d", timestamp.getEpochSecond(), timestamp.getNano() / 1000);
-        String endpoint = "https://slack.com/api/reactions.add" + "?token=" + this.token + "&name=" + emoji + "&channel=" + channel + "&timestamp=" + serializedTimestamp;
+        return webClient.addReaction(channel, serializedTimestamp, emoji)
+                .thenApply(response -> true)
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof SlackApiException && "already_reacted".equals(((SlackApiException) cause).getError())) {
+                        return false;
+                    }
+                    throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+                });
+    }
 
-        try {
-            JsonObject jsonObject = Util.fetchResource(endpoint);
-            if (jsonObject.getBoolean("ok")) {
-                return true;
-            }
-            LOG.warn(jsonObject.toString());
+    /**
+     * @return the Web API client shared by every socket of this token
+     */
+    public SlackWebClient getWebClient() {
+        return webClient;
+    }
 
-        } catch (IOException ex) {
-            LOG.error("failed to add reaction: {}", ex);
-            return false;
+
+    private static final class Subscription<T> {
+
+        private final SlackEventType<T> eventType;
+        private final List<Consumer<? super T>> handlers = new CopyOnWriteArrayList<>();
+
+        Subscription(SlackEventType<T> eventType) {
+            this.eventType = eventType;
         }
 
-        return true;
+        void deliver(JsonFrame frame) {
+            T event = eventType.decode(frame);
+            for (Consumer<? super T> handler : handlers) {
+                handler.accept(event);
+            }
+        }
     }
 
-
 }
@@ -0,0 +1,28 @@
+package systems.cauldron.service.robot;
+
+/**
+ * A {@code user_change} or {@code team_join} event.
+ *
+ * @author Amann Malik
+ */
+public class SlackUserEvent {
+
+    public final String type;
+    public final SlackId user;
+    public final String name;
+    /**
+     * Null if the user has not set one.
+     */
+    public final String realName;
+    public final boolean bot;
+    public final boolean deleted;
+
+    public SlackUserEvent(String type, SlackId user, String name, String realName, boolean bot, boolean deleted) {
+        this.type = type;
+        this.user = user;
+        this.name = name;
+        this.realName = realName;
+        this.bot = bot;
+        this.deleted = deleted;
+    }
+}
@@ -0,0 +1,393 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls the Slack Web API methods a bot uses at volume: reactions, and posting, updating and deleting messages.
+ * <p>
+ * Slack limits each method per workspace according to its rate limit {@link Tier}. Calls wait in one queue per method,
+ * or per channel for {@code chat.postMessage}, and leave it no faster than the tier allows after a short burst, so
+ * any minute sees at most the tier's limit. A 429 holds the queue for its {@code Retry-After} and retries the call
+ * first. Across all queues at most a fixed number of calls are outstanding at once.
+ * <p>
+ * The token travels in the {@code Authorization} header, never in the URL. Futures complete with the response object
+ * when Slack reports {@code ok}, and fail with {@link SlackApiException} when it does not. Paged listings can instead
+ * be {@linkplain #stream streamed} through the same queues.
+ *
+ * @author Amann Malik
+ */
+public class SlackWebClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlackWebClient.class);
+
+    private static final String SLACK_API_BASE_URL = "https://slack.com/api/";
+
+    private static final ConcurrentHashMap<String, SlackWebClient> clients = new ConcurrentHashMap<>();
+
+    // past this many queues, idle ones with a full bucket are dropped; they carry no state worth keeping
+    private static final int QUEUE_PURGE_THRESHOLD = 1024;
+
+    /**
+     * Slack's rate limit tiers, in calls per minute per workspace.
+     */
+    public enum Tier {
+        TIER_1(1, 1),
+        TIER_2(20, 3),
+        TIER_3(50, 5),
+        TIER_4(100, 10),
+        /**
+         * {@code chat.postMessage}: about one message per second in each channel.
+         */
+        CHANNEL_POST(60, 2);
+
+        final int perMinute;
+        final int burst;
+        final long emissionIntervalNanos;
+
+        Tier(int perMinute, int burst) {
+            this.perMinute = perMinute;
+            this.burst = burst;
+            this.emissionIntervalNanos = TimeUnit.MINUTES.toNanos(1L) / Math.max(1, perMinute - burst);
+        }
+
+        public int getPerMinute() {
+            return perMinute;
+        }
+    }
+
+    private final String baseUrl;
+    private final Map<String, String> headers;
+
+    private final HashMap<String, MethodQueue> queues = new HashMap<>();
+    // queues holding calls, visited round robin
+    private final ArrayDeque<MethodQueue> active = new ArrayDeque<>();
+
+    private HashedWheelTimer timer = HashedWheelTimer.getDefault();
+    private HashedWheelTimer.Timeout drainTimeout = null;
+    private int maxConcurrentRequests = 8;
+    private int inFlight = 0;
+    private int queued = 0;
+
+    SlackWebClient(String token, String baseUrl) {
+        this.baseUrl = baseUrl;
+        HashMap<String, String> headers = new HashMap<>(2);
+        headers.put("Authorization", "Bearer " + token);
+        headers.put("User-Agent", "Bot");
+        this.headers = headers;
+    }
+
+    /**
+     * Limits apply per workspace, so every socket using the same token shares one client.
+     */
+    public static SlackWebClient forToken(String token) {
+        return clients.computeIfAbsent(token, k -> new SlackWebClient(k, SLACK_API_BASE_URL));
+    }
+
+    /**
+     * Number of calls that may await a response at once, across all methods; defaults to 8.
+     */
+    public synchronized void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("invalid concurrency: " + maxConcurrentRequests);
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        drain();
+    }
+
+    public synchronized void setTimer(HashedWheelTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * @return number of calls waiting for their rate limit or a free request slot
+     */
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @param ts the message's {@code ts}
+     * @param name emoji name without colons
+     */
+    public CompletableFuture<JsonObject> addReaction(String channel, String ts, String name) {
+        return call("reactions.add", Tier.TIER_3, Json.createObjectBuilder()
+                .add("channel", channel)
+                .add("timestamp", ts)
+                .add("name", name)
+                .build());
+    }
+
+    public CompletableFuture<JsonObject> removeReaction(String channel, String ts, String name) {
+        return call("reactions.remove", Tier.TIER_2, Json.createObjectBuilder()
+                .add("channel", channel)
+                .add("timestamp", ts)
+                .add("name", name)
+                .build());
+    }
+
+    /**
+     * @return completes with the response, whose {@code ts} identifies the posted message
+     */
+    public CompletableFuture<JsonObject> postMessage(String channel, String text) {
+        return call("chat.postMessage", Tier.CHANNEL_POST, Json.createObjectBuilder()
+                .add("channel", channel)
+                .add("text", text)
+                .build());
+    }
+
+    public CompletableFuture<JsonObject> updateMessage(String channel, String ts, String text) {
+        return call("chat.update", Tier.TIER_3, Json.createObjectBuilder()
+                .add("channel", channel)
+                .add("ts", ts)
+                .add("text", text)
+                .build());
+    }
+
+    public CompletableFuture<JsonObject> deleteMessage(String channel, String ts) {
+        return call("chat.delete", Tier.TIER_3, Json.createObjectBuilder()
+                .add("channel", channel)
+                .add("ts", ts)
+                .build());
+    }
+
+    /**
+     * Calls a read method with GET and hands over its response body unparsed, for methods whose responses are too
+     * large to hold as a tree. The call is paced and retried on 429 like any other; the caller closes the stream.
+     *
+     * @param query URL-encoded arguments, without the token
+     */
+    public CompletableFuture<InputStream> stream(String method, Tier tier, String query) {
+        Call call = new Call(method, Util.buildGetRequest(baseUrl + method + "?" + query, headers), true);
+        enqueue(method, tier, call);
+        return call.body;
+    }
+
+    /**
+     * Calls any Web API method that accepts a JSON body. Calls of the {@link Tier#CHANNEL_POST} tier are queued per
+     * {@code channel} argument.
+     */
+    public CompletableFuture<JsonObject> call(String method, Tier tier, JsonObject arguments) {
+        String key = tier == Tier.CHANNEL_POST ? method + ":" + arguments.getString("channel", "") : method;
+        Call call = new Call(method, Util.buildPostRequest(baseUrl + method, headers, arguments), false);
+        enqueue(key, tier, call);
+        return call.result;
+    }
+
+    private void enqueue(String key, Tier tier, Call call) {
+        synchronized (this) {
+            MethodQueue queue = queues.get(key);
+            if (queue == null) {
+                if (queues.size() >= QUEUE_PURGE_THRESHOLD) {
+                    long now = System.nanoTime();
+                    queues.values().removeIf(q -> q.calls.isEmpty() && q.outstanding == 0 && q.isFull(now));
+                }
+                queue = new MethodQueue(tier);
+                queues.put(key, queue);
+            }
+            if (queue.calls.isEmpty()) {
+                active.add(queue);
+            }
+            queue.calls.addLast(call);
+            queued++;
+            drain();
+        }
+    }
+
+    private void drain() {
+        List<Call> ready = null;
+        long now = System.nanoTime();
+        long nextWait = Long.MAX_VALUE;
+        boolean progress = true;
+        while (progress && inFlight < maxConcurrentRequests && !active.isEmpty()) {
+            progress = false;
+            for (int i = active.size(); i > 0 && inFlight < maxConcurrentRequests; i--) {
+                MethodQueue queue = active.pollFirst();
+                long wait = queue.waitNanos(now);
+                if (wait > 0L) {
+                    nextWait = Math.min(nextWait, wait);
+                    active.addLast(queue);
+                    continue;
+                }
+                Call call = queue.calls.pollFirst();
+                call.queue = queue;
+                queue.outstanding++;
+                queue.take(now);
+                queued--;
+                inFlight++;
+                if (!queue.calls.isEmpty()) {
+                    active.addLast(queue);
+                }
+                if (ready == null) {
+                    ready = new ArrayList<>();
+                }
+                ready.add(call);
+                progress = true;
+            }
+        }
+        // a full request window is drained again when a response comes back
+        if (nextWait != Long.MAX_VALUE && inFlight < maxConcurrentRequests) {
+            scheduleDrain(nextWait);
+        }
+        if (ready != null) {
+            for (Call call : ready) {
+                if (call.streamed) {
+                    Util.sendStreamAsync(call.request, call.method).whenComplete((response, error) -> handleResponse(call, response, error));
+                } else {
+                    Util.sendAsync(call.request, call.method).whenComplete((response, error) -> handleResponse(call, response, error));
+                }
+            }
+        }
+    }
+
+    private void scheduleDrain(long waitNanos) {
+        if (drainTimeout != null && !drainTimeout.isExpired() && !drainTimeout.isCancelled()) {
+            return;
+        }
+        drainTimeout = timer.schedule(this::drainLater, waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void drainLater() {
+        drainTimeout = null;
+        drain();
+    }
+
+    private void handleResponse(Call call, HttpResponse<?> response, Throwable error) {
+        if (error == null && response.statusCode() == 429) {
+            closeBody(response);
+            long retryAfter = response.headers().firstValue("Retry-After").map(SlackWebClient::secondsToMillis).orElse(1000L);
+            LOG.warn("rate limited on {}, retrying in {} ms", call.method, retryAfter);
+            synchronized (this) {
+                inFlight--;
+                call.queue.outstanding--;
+                call.queue.block(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfter));
+                if (call.queue.calls.isEmpty()) {
+                    active.add(call.queue);
+                }
+                call.queue.calls.addFirst(call);
+                queued++;
+                drain();
+            }
+            return;
+        }
+        synchronized (this) {
+            inFlight--;
+            call.queue.outstanding--;
+            drain();
+        }
+        if (call.streamed) {
+            if (error != null) {
+                call.body.completeExceptionally(error);
+            } else if (response.statusCode() != 200) {
+                closeBody(response);
+                call.body.completeExceptionally(new RuntimeException("invalid response " + response.statusCode() + " from " + call.method));
+            } else {
+                call.body.complete((InputStream) response.body());
+            }
+            return;
+        }
+        if (error != null) {
+            call.result.completeExceptionally(error);
+            return;
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            JsonObject body = Util.handleJsonResponse((HttpResponse<byte[]>) response);
+            if (body.getBoolean("ok", false)) {
+                call.result.complete(body);
+            } else {
+                call.result.completeExceptionally(new SlackApiException(call.method, body.getString("error", "unknown_error")));
+            }
+        } catch (RuntimeException ex) {
+            call.result.completeExceptionally(ex);
+        }
+    }
+
+    private static void closeBody(HttpResponse<?> response) {
+        if (response.body() instanceof InputStream) {
+            try {
+                ((InputStream) response.body()).close();
+            } catch (IOException ex) {
+                LOG.debug("failed to close response body", ex);
+            }
+        }
+    }
+
+    private static long secondsToMillis(String seconds) {
+        try {
+            return (long) Math.ceil(Double.parseDouble(seconds) * 1000.0);
+        } catch (NumberFormatException ex) {
+            return 1000L;
+        }
+    }
+
+    private static final class Call {
+
+        final String method;
+        final HttpRequest request;
+        // a streamed call completes body, any other call completes result
+        final boolean streamed;
+        final CompletableFuture<JsonObject> result = new CompletableFuture<>();
+        final CompletableFuture<InputStream> body = new CompletableFuture<>();
+        MethodQueue queue;
+
+        Call(String method, HttpRequest request, boolean streamed) {
+            this.method = method;
+            this.request = request;
+            this.streamed = streamed;
+        }
+    }
+
+    private static final class MethodQueue {
+
+        final Tier tier;
+        final ArrayDeque<Call> calls = new ArrayDeque<>();
+        int outstanding = 0;
+        // the bucket is full whenever now - theoreticalArrival >= 0; every call pushes it one interval later
+        private long theoreticalArrival = System.nanoTime();
+
+        MethodQueue(Tier tier) {
+            this.tier = tier;
+        }
+
+        long waitNanos(long now) {
+            long availableAt = theoreticalArrival - (long) (tier.burst - 1) * tier.emissionIntervalNanos;
+            return Math.max(0L, availableAt - now);
+        }
+
+        void take(long now) {
+            theoreticalArrival = Math.max(theoreticalArrival, now) + tier.emissionIntervalNanos;
+        }
+
+        boolean isFull(long now) {
+            return now - theoreticalArrival >= 0L;
+        }
+
+        /**
+         * Holds the queue until the given time, after which a single call may go.
+         */
+        void block(long until) {
+            theoreticalArrival = Math.max(theoreticalArrival, until + (long) (tier.burst - 1) * tier.emissionIntervalNanos);
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package systems.cauldron.service.robot;
+
+import java.time.Instant;
+
+/**
+ * A Discord ID held as its 64 bit value rather than its decimal string.
+ * <p>
+ * Layout, from the most significant bit: 42 bits of milliseconds since the Discord epoch, 5 bits of internal worker
+ * ID, 5 bits of internal process ID and a 12 bit per-process increment.
+ *
+ * @author Amann Malik
+ */
+public final class Snowflake implements Comparable<Snowflake> {
+
+    public static final long DISCORD_EPOCH_MILLISECONDS = 1420070400000L;
+
+    private static final long UNSIGNED_MAX_DIV_10 = Long.divideUnsigned(-1L, 10L);
+    private static final int UNSIGNED_MAX_MOD_10 = (int) Long.remainderUnsigned(-1L, 10L);
+
+    private final long value;
+
+    private Snowflake(long value) {
+        this.value = value;
+    }
+
+    public static Snowflake of(long value) {
+        return new Snowflake(value);
+    }
+
+    public static Snowflake parse(CharSequence text) {
+        return new Snowflake(parseLong(text));
+    }
+
+    /**
+     * Parses the decimal form of a snowflake without allocating.
+     */
+    public static long parseLong(CharSequence text) {
+        int length = text.length();
+        if (length == 0 || length > 20) {
+            throw new NumberFormatException("invalid snowflake: " + text);
+        }
+        long result = 0L;
+        for (int i = 0; i < length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("invalid snowflake: " + text);
+            }
+            // only the twentieth digit can carry past 2^64 - 1; below that the value is exact as an unsigned long
+            if (i == 19 && (Long.compareUnsigned(result, UNSIGNED_MAX_DIV_10) > 0 || (result == UNSIGNED_MAX_DIV_10 && digit > UNSIGNED_MAX_MOD_10))) {
+                throw new NumberFormatException("snowflake out of range: " + text);
+            }
+            result = result * 10L + digit;
+        }
+        return result;
+    }
+
+    public long longValue() {
+        return value;
+    }
+
+    public long getTimestampMillis() {
+        return (value >>> 22) + DISCORD_EPOCH_MILLISECONDS;
+    }
+
+    public Instant getTimestamp() {
+        return Instant.ofEpochMilli(getTimestampMillis());
+    }
+
+    public int getWorkerId() {
+        return (int) ((value >>> 17) & 0x1F);
+    }
+
+    public int getProcessId() {
+        return (int) ((value >>> 12) & 0x1F);
+    }
+
+    public int getIncrement() {
+        return (int) (value & 0xFFF);
+    }
+
+    @Override
+    public int compareTo(Snowflake other) {
+        return Long.compareUnsigned(value, other.value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Snowflake && ((Snowflake) o).value == value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toUnsignedString(value);
+    }
+
+}
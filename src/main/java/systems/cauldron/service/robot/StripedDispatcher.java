@@ -0,0 +1,151 @@
+package systems.cauldron.service.robot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hashes ordering keys onto a fixed set of serial lanes. A lane only occupies a thread of the backing executor while it
+ * has work, so more lanes than threads spread uneven keys without giving up per-key ordering.
+ *
+ * @author Amann Malik
+ */
+class StripedDispatcher implements EventDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StripedDispatcher.class);
+
+    private static final int LANES_PER_PLATFORM_THREAD = 4;
+    private static final int VIRTUAL_THREAD_LANES = 1024;
+
+    // lanes with a long backlog yield their thread after this many handlers
+    private static final int MAX_BATCH = 64;
+
+    private final ExecutorService executor;
+    private final Lane[] lanes;
+    private final LongAdder queueDepth = new LongAdder();
+    private final LatencyHistogram handlerTime = new LatencyHistogram();
+
+    private StripedDispatcher(ExecutorService executor, int laneCount) {
+        this.executor = executor;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    static StripedDispatcher withPlatformThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("dispatcher requires at least one thread");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, Util.daemonThreadFactory("event-dispatch"));
+        return new StripedDispatcher(executor, threads * LANES_PER_PLATFORM_THREAD);
+    }
+
+    static StripedDispatcher withVirtualThreads() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new StripedDispatcher(executor, VIRTUAL_THREAD_LANES);
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("virtual threads are not available on this JDK, dispatching on platform threads");
+            return withPlatformThreads(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    @Override
+    public void dispatch(Object orderingKey, Runnable handler) {
+        int hash = orderingKey == null ? 0 : orderingKey.hashCode();
+        hash ^= (hash >>> 16);
+        queueDepth.increment();
+        try {
+            lanes[(hash & 0x7fffffff) % lanes.length].execute(handler);
+        } catch (RejectedExecutionException ex) {
+            queueDepth.decrement();
+            throw ex;
+        }
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queueDepth.sum();
+    }
+
+    @Override
+    public LatencyHistogram getHandlerTime() {
+        return handlerTime;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void runHandler(Runnable handler) {
+        long start = System.nanoTime();
+        try {
+            handler.run();
+        } catch (RuntimeException ex) {
+            LOG.error("event handler failed", ex);
+        } finally {
+            handlerTime.record(System.nanoTime() - start);
+            queueDepth.decrement();
+        }
+    }
+
+    private final class Lane implements Runnable {
+
+        private final ConcurrentLinkedQueue<Runnable> handlers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        void execute(Runnable handler) {
+            handlers.add(handler);
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    handlers.remove(handler);
+                    pending.decrementAndGet();
+                    throw ex;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int batch = 0;
+            while (true) {
+                try {
+                    runHandler(handlers.poll());
+                } catch (Throwable t) {
+                    // an Error unwinds this thread; the rest of the lane moves to another one so it does not stall
+                    if (pending.decrementAndGet() != 0) {
+                        try {
+                            executor.execute(this);
+                        } catch (RejectedExecutionException ex) {
+                            t.addSuppressed(ex);
+                        }
+                    }
+                    throw t;
+                }
+                if (pending.decrementAndGet() == 0) {
+                    return;
+                }
+                if (++batch == MAX_BATCH) {
+                    try {
+                        executor.execute(this);
+                        return;
+                    } catch (RejectedExecutionException ex) {
+                        // shutting down: finish the lane on this thread
+                        batch = 0;
+                    }
+                }
+            }
+        }
+    }
+
+}
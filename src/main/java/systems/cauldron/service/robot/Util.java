@@ -3,56 +3,181 @@ package systems.cauldron.service.robot;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
+import javax.json.JsonValue;
 import javax.json.JsonWriter;
-import java.io.DataOutputStream;
+import javax.json.stream.JsonParser;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Amann Malik
  */
 class Util {
 
-    static Instant convertTimestamp(String ts) {
-        String[] split = ts.split("\\.");
-        long epochSeconds = Long.parseLong(split[0]);
-        long epochNanoFraction = Long.parseLong(split[1]) * 1000;
-        return Instant.ofEpochSecond(epochSeconds, epochNanoFraction);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    // one pooled client for every REST call; connections are kept alive and multiplexed over HTTP/2 where possible
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    /**
+     * Parses a Slack timestamp such as {@code 1592157764.000200}: epoch seconds, optionally followed by a fraction of
+     * up to nine digits. Runs in a single pass over the characters without splitting or boxing.
+     */
+    static Instant convertTimestamp(CharSequence ts) {
+        int length = ts.length();
+        int i = 0;
+        long seconds = 0L;
+        for (; i < length; i++) {
+            char c = ts.charAt(i);
+            if (c == '.') {
+                break;
+            }
+            if (c < '0' || c > '9' || i >= 18) {
+                throw new IllegalArgumentException("invalid timestamp: " + ts);
+            }
+            seconds = seconds * 10L + (c - '0');
+        }
+        if (i == 0) {
+            throw new IllegalArgumentException("invalid timestamp: " + ts);
+        }
+        long nanos = 0L;
+        long scale = 100_000_000L;
+        for (i++; i < length; i++) {
+            char c = ts.charAt(i);
+            if (c < '0' || c > '9' || scale == 0L) {
+                throw new IllegalArgumentException("invalid timestamp: " + ts);
+            }
+            nanos += (c - '0') * scale;
+            scale /= 10L;
+        }
+        return Instant.ofEpochSecond(seconds, nanos);
     }
 
     static JsonObject fetchResource(String locationString) throws IOException {
-        URL url = tryConstructUrl(locationString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setDoInput(true);
-        connection.setDoOutput(true);
-        return handleJsonResponse(connection);
+        return fetchResource(locationString, Collections.emptyMap());
+    }
+
+    static JsonObject fetchResource(String locationString, Map<String, String> headers) throws IOException {
+        return handleJsonResponse(send(buildGetRequest(locationString, headers)));
     }
 
     static JsonObject postResource(String locationString, Map<String, String> headers, JsonObject payload) throws IOException {
-        byte[] body = getJsonBytes(payload);
-        URL url = tryConstructUrl(locationString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        headers.forEach(connection::setRequestProperty);
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Content-Length", Integer.toString(body.length));
-        connection.setDoOutput(true);
-        try (OutputStream outputStream = connection.getOutputStream()) {
-            try (DataOutputStream dataOutputStream = new DataOutputStream(outputStream)) {
-                dataOutputStream.write(body);
-            }
+        return handleJsonResponse(send(buildPostRequest(locationString, headers, payload)));
+    }
+
+    static CompletableFuture<JsonObject> fetchResourceAsync(String locationString) {
+        return fetchResourceAsync(locationString, Collections.emptyMap());
+    }
+
+    static CompletableFuture<JsonObject> fetchResourceAsync(String locationString, Map<String, String> headers) {
+        return sendAsync(buildGetRequest(locationString, headers))
+                .thenApply(Util::handleJsonResponse);
+    }
+
+    static CompletableFuture<JsonObject> postResourceAsync(String locationString, Map<String, String> headers, JsonObject payload) {
+        return sendAsync(buildPostRequest(locationString, headers, payload))
+                .thenApply(Util::handleJsonResponse);
+    }
+
+    /**
+     * Opens the response body of a GET request for streaming consumption; the caller closes the stream.
+     */
+    static InputStream openResourceStream(String locationString, Map<String, String> headers) throws IOException {
+        HttpRequest request = buildGetRequest(locationString, headers);
+        HttpResponse<InputStream> response = null;
+        long start = System.nanoTime();
+        try {
+            response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            // timed to the response headers; the body is consumed by the caller
+            recordCall(request.uri().getPath(), response, start);
+        }
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new RuntimeException("invalid response " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    static CompletableFuture<HttpResponse<byte[]>> sendAsync(HttpRequest request) {
+        return sendAsync(request, request.uri().getPath());
+    }
+
+    /**
+     * @param route name the call is reported under in {@link Metrics}, such as a route template
+     */
+    static CompletableFuture<HttpResponse<byte[]>> sendAsync(HttpRequest request, String route) {
+        long start = System.nanoTime();
+        return HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> recordCall(route, response, start));
+    }
+
+    /**
+     * Like {@link #sendAsync(HttpRequest, String)}, but leaves the body to be streamed by the caller, who closes it.
+     */
+    static CompletableFuture<HttpResponse<InputStream>> sendStreamAsync(HttpRequest request, String route) {
+        long start = System.nanoTime();
+        // timed to the response headers; the body is consumed by the caller
+        return HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .whenComplete((response, error) -> recordCall(route, response, start));
+    }
+
+    private static void recordCall(String route, HttpResponse<?> response, long start) {
+        Metrics.get().restCall(route, response == null ? 0 : response.statusCode(), System.nanoTime() - start);
+    }
+
+    static HttpRequest buildGetRequest(String locationString, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(tryConstructUri(locationString))
+                .timeout(REQUEST_TIMEOUT)
+                .GET();
+        headers.forEach(builder::header);
+        return builder.build();
+    }
+
+    static HttpRequest buildPostRequest(String locationString, Map<String, String> headers, JsonObject payload) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(tryConstructUri(locationString))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(getJsonBytes(payload)));
+        headers.forEach(builder::header);
+        return builder.build();
+    }
+
+    private static HttpResponse<byte[]> send(HttpRequest request) throws IOException {
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response = null;
+        try {
+            response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            recordCall(request.uri().getPath(), response, start);
         }
-        return handleJsonResponse(connection);
     }
 
     private static byte[] getJsonBytes(JsonObject payload) {
@@ -64,36 +189,70 @@ class Util {
         return body;
     }
 
-    static JsonObject fetchResource(String locationString, Map<String, String> headers) throws IOException {
-        URL url = tryConstructUrl(locationString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        headers.forEach(connection::setRequestProperty);
-        connection.setRequestMethod("GET");
-        return handleJsonResponse(connection);
-
-    }
-
-    private static JsonObject handleJsonResponse(HttpURLConnection connection) throws IOException {
-        int responseCode = connection.getResponseCode();
+    static JsonObject handleJsonResponse(HttpResponse<byte[]> response) {
+        int responseCode = response.statusCode();
         switch (responseCode) {
             case 200:
-                try (JsonReader parser = Json.createReader(connection.getInputStream())) {
+            case 201:
+                try (JsonReader parser = Json.createReader(new ByteArrayInputStream(response.body()))) {
                     return parser.readObject();
                 }
+            case 204:
+                return JsonValue.EMPTY_JSON_OBJECT;
             default:
                 throw new RuntimeException("invalid response " + responseCode);
         }
     }
 
-    private static URL tryConstructUrl(String urlString) {
+    private static URI tryConstructUri(String uriString) {
         try {
-            return new URL(urlString);
-        } catch (MalformedURLException e) {
+            return new URI(uriString);
+        } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static String encodeValue(String value) {
+    /**
+     * Moves the parser past the value that started with the given event without building it.
+     */
+    static void skipValue(JsonParser parser, JsonParser.Event value) {
+        if (value == JsonParser.Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (value == JsonParser.Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    /**
+     * @return number of bytes the text takes in UTF-8, counted without encoding it
+     */
+    static long utf8Length(CharSequence text) {
+        int length = text.length();
+        long bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                // a surrogate pair encodes as 4 bytes over its 2 chars
+                bytes += 1;
+            } else if (c >= 0x800) {
+                bytes += 2;
+            } else if (c >= 0x80) {
+                bytes += 1;
+            }
+        }
+        return bytes;
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    static String encodeValue(String value) {
         try {
             return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
         } catch (UnsupportedEncodingException e) {
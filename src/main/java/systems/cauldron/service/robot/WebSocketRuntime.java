@@ -0,0 +1,238 @@
+package systems.cauldron.service.robot;
+
+import org.glassfish.tyrus.client.ClientManager;
+import org.glassfish.tyrus.client.ClientProperties;
+import org.glassfish.tyrus.client.ThreadPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.DeploymentException;
+import javax.websocket.Endpoint;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The websocket client every {@link JsonSocket} connects through: a single Tyrus container, created on the first
+ * connection and shared from then on.
+ * <p>
+ * Tyrus' JDK transport runs the connections of the whole JVM on one asynchronous channel group, whose threads read
+ * from the network and run frame handlers. Sockets are multiplexed over a bounded pool of those threads rather than
+ * getting threads of their own, so an idle connection costs only its buffers. Handlers that block, such as inline
+ * event handlers, hold a pool thread for as long as they block.
+ * <p>
+ * Tyrus only offers a blocking call to open a connection, so the TCP, TLS and HTTP upgrade handshakes run on a small
+ * fixed pool of connector threads; opening any number of sockets at once queues on that pool rather than taking a
+ * thread per socket.
+ * <p>
+ * Configure the runtime before the first connection; afterwards the setters throw {@link IllegalStateException}. The
+ * runtime also keeps a registry of open sockets and publishes its connection and thread counts over JMX.
+ *
+ * @author Amann Malik
+ */
+public final class WebSocketRuntime implements WebSocketRuntimeMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WebSocketRuntime.class);
+
+    public static final String OBJECT_NAME = "systems.cauldron.service.robot:type=WebSocketRuntime";
+
+    private static final String CONTAINER_CLASS = "org.glassfish.tyrus.container.jdk.client.JdkClientContainer";
+
+    private static final WebSocketRuntime DEFAULT = registerDefault();
+
+    private final Set<JsonSocket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final AtomicInteger threadIndex = new AtomicInteger();
+
+    private int coreThreads = Runtime.getRuntime().availableProcessors();
+    private int maxThreads = Math.max(20, 2 * Runtime.getRuntime().availableProcessors());
+    private int idleTimeoutSeconds = 30;
+    private int incomingBufferSize = 4 * 1024 * 1024;
+    private int connectThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private volatile ClientManager client = null;
+    private ExecutorService connector = null;
+
+    WebSocketRuntime() {
+    }
+
+    private static WebSocketRuntime registerDefault() {
+        WebSocketRuntime runtime = new WebSocketRuntime();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(runtime, new ObjectName(OBJECT_NAME));
+        } catch (JMException | RuntimeException ex) {
+            LOG.warn("websocket runtime is not available over JMX: {}", ex.toString());
+        }
+        return runtime;
+    }
+
+    public static WebSocketRuntime getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Bounds of the thread pool all connections share; defaults to one core thread per processor, growing to twice
+     * the number of processors but at least 20 while handlers are busy. Idle threads above the core are released
+     * after a minute.
+     */
+    public synchronized void setThreads(int coreThreads, int maxThreads) {
+        checkNotStarted();
+        if (coreThreads < 1 || maxThreads < coreThreads) {
+            throw new IllegalArgumentException("invalid thread bounds: " + coreThreads + " to " + maxThreads);
+        }
+        this.coreThreads = coreThreads;
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Seconds the shared thread pool outlives the last open connection; defaults to 30.
+     */
+    public synchronized void setIdleTimeout(int idleTimeoutSeconds) {
+        checkNotStarted();
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    /**
+     * Largest frame, in bytes, a connection buffers while it arrives; defaults to 4 MB. Discord's READY and
+     * GUILD_CREATE frames for large bots are the frames to size this for.
+     */
+    public synchronized void setIncomingBufferSize(int incomingBufferSize) {
+        checkNotStarted();
+        if (incomingBufferSize < 1024) {
+            throw new IllegalArgumentException("invalid incoming buffer size: " + incomingBufferSize);
+        }
+        this.incomingBufferSize = incomingBufferSize;
+    }
+
+    /**
+     * Number of connections whose opening handshake may run at once; defaults to the number of processors, but at
+     * least 4.
+     */
+    public synchronized void setConnectThreads(int connectThreads) {
+        checkNotStarted();
+        if (connectThreads < 1) {
+            throw new IllegalArgumentException("invalid connect thread count: " + connectThreads);
+        }
+        this.connectThreads = connectThreads;
+    }
+
+    /**
+     * @return a snapshot of the sockets currently open through this runtime
+     */
+    public List<JsonSocket> getConnections() {
+        return List.copyOf(connections);
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @return number of live threads in the shared pool
+     */
+    @Override
+    public int getThreadCount() {
+        return threadCount.get();
+    }
+
+    /**
+     * @return largest frame, in bytes, each connection may buffer; the per-connection bound on frame memory
+     */
+    @Override
+    public synchronized int getIncomingBufferSize() {
+        return incomingBufferSize;
+    }
+
+    @Override
+    public synchronized boolean isStarted() {
+        return client != null;
+    }
+
+    /**
+     * Opens a connection on a connector thread. The endpoint's {@code onOpen} runs before the returned future
+     * completes.
+     */
+    CompletableFuture<Session> connectAsync(Endpoint endpoint, URI serverEndpointUri) {
+        ClientManager client = client();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.connectToServer(endpoint, ClientEndpointConfig.Builder.create().build(), serverEndpointUri);
+            } catch (DeploymentException | IOException ex) {
+                // either a network connectivity or config problem
+                throw new CompletionException(ex);
+            }
+        }, connector);
+    }
+
+    void opened(JsonSocket socket) {
+        connections.add(socket);
+    }
+
+    void closed(JsonSocket socket) {
+        connections.remove(socket);
+    }
+
+    private ClientManager client() {
+        ClientManager client = this.client;
+        if (client != null) {
+            return client;
+        }
+        synchronized (this) {
+            if (this.client == null) {
+                this.connector = Executors.newFixedThreadPool(connectThreads, Util.daemonThreadFactory("robot-websocket-connect"));
+                this.client = createClient();
+            }
+            return this.client;
+        }
+    }
+
+    private ClientManager createClient() {
+        ThreadPoolConfig workers = ThreadPoolConfig.defaultConfig()
+                .setPoolName("robot-websocket")
+                .setCorePoolSize(coreThreads)
+                .setMaxPoolSize(maxThreads)
+                .setKeepAliveTime(60L, TimeUnit.SECONDS)
+                .setDaemon(true)
+                .setThreadFactory(this::newThread);
+        ClientManager client = ClientManager.createClient(CONTAINER_CLASS);
+        client.getProperties().put(ClientProperties.WORKER_THREAD_POOL_CONFIG, workers);
+        client.getProperties().put(ClientProperties.SHARED_CONTAINER_IDLE_TIMEOUT, idleTimeoutSeconds);
+        client.getProperties().put(ClientProperties.INCOMING_BUFFER_SIZE, incomingBufferSize);
+        LOG.info("started websocket runtime with {} to {} threads", coreThreads, maxThreads);
+        return client;
+    }
+
+    private Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(() -> {
+            threadCount.incrementAndGet();
+            try {
+                runnable.run();
+            } finally {
+                threadCount.decrementAndGet();
+            }
+        }, "robot-websocket-" + threadIndex.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void checkNotStarted() {
+        if (client != null) {
+            throw new IllegalStateException("websocket runtime is already started");
+        }
+    }
+
+}
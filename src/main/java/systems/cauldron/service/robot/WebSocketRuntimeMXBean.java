@@ -0,0 +1,18 @@
+package systems.cauldron.service.robot;
+
+/**
+ * Management view of {@link WebSocketRuntime}.
+ *
+ * @author Amann Malik
+ */
+public interface WebSocketRuntimeMXBean {
+
+    int getConnectionCount();
+
+    int getThreadCount();
+
+    int getIncomingBufferSize();
+
+    boolean isStarted();
+
+}
@@ -0,0 +1,96 @@
+package systems.cauldron.service.robot;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates a zlib-stream transport: every binary frame of a connection shares one compression context, and a payload
+ * is complete once the accumulated input ends with the Z_SYNC_FLUSH suffix {@code 00 00 ff ff}.
+ * <p>
+ * Input and output buffers are kept for the life of the connection and only grow, so steady state inflation does not
+ * allocate. Not thread safe; one instance per connection.
+ *
+ * @author Amann Malik
+ */
+class ZlibStreamDecoder {
+
+    private static final int INITIAL_INPUT_CAPACITY = 16 * 1024;
+    private static final int INITIAL_OUTPUT_CAPACITY = 64 * 1024;
+
+    private final Inflater inflater = new Inflater();
+
+    private byte[] input = new byte[INITIAL_INPUT_CAPACITY];
+    private int inputLength = 0;
+
+    private byte[] output = new byte[INITIAL_OUTPUT_CAPACITY];
+    private int outputLength = 0;
+
+    /**
+     * @return true if the frame completed a payload, which is then available from {@link #buffer()}
+     */
+    boolean feed(ByteBuffer frame) {
+        int length = frame.remaining();
+        ensureInputCapacity(inputLength + length);
+        frame.get(input, inputLength, length);
+        inputLength += length;
+
+        if (!endsWithFlushSuffix()) {
+            return false;
+        }
+
+        inflater.setInput(input, 0, inputLength);
+        outputLength = 0;
+        try {
+            while (true) {
+                if (outputLength == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int inflated = inflater.inflate(output, outputLength, output.length - outputLength);
+                outputLength += inflated;
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflater.finished())) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeException(e);
+        } finally {
+            inputLength = 0;
+        }
+        return true;
+    }
+
+    byte[] buffer() {
+        return output;
+    }
+
+    int length() {
+        return outputLength;
+    }
+
+    void reset() {
+        inflater.reset();
+        inputLength = 0;
+        outputLength = 0;
+    }
+
+    void close() {
+        inflater.end();
+    }
+
+    private boolean endsWithFlushSuffix() {
+        return inputLength >= 4
+                && input[inputLength - 4] == 0x00
+                && input[inputLength - 3] == 0x00
+                && input[inputLength - 2] == (byte) 0xff
+                && input[inputLength - 1] == (byte) 0xff;
+    }
+
+    private void ensureInputCapacity(int capacity) {
+        if (capacity > input.length) {
+            input = Arrays.copyOf(input, Math.max(capacity, input.length * 2));
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author Amann Malik
+ */
+public class DiscordEntityCacheTest {
+
+    @Test
+    public void guild_delete_evicts_only_that_guilds_entities() {
+        DiscordEntityCache cache = new DiscordEntityCache();
+        cache.handle("GUILD_CREATE", guild("100", "110", "120"));
+        cache.handle("GUILD_CREATE", guild("200", "210", "220"));
+        cache.handle("CHANNEL_CREATE", Json.createObjectBuilder().add("id", "111").add("guild_id", "100").build());
+        cache.handle("CHANNEL_CREATE", Json.createObjectBuilder().add("id", "300").add("type", 1).build());
+
+        cache.handle("GUILD_DELETE", Json.createObjectBuilder().add("id", "100").build());
+        assertNull(cache.getGuild(100L));
+        assertNull(cache.getChannel(110L));
+        assertNull(cache.getChannel(111L));
+        assertNull(cache.getRole(120L));
+        assertNotNull(cache.getChannel(210L));
+        assertNotNull(cache.getRole(220L));
+        assertNotNull(cache.getChannel(300L));
+        assertEquals(2, cache.size(DiscordEntityCache.EntityType.CHANNEL));
+        assertEquals(1, cache.size(DiscordEntityCache.EntityType.ROLE));
+    }
+
+    @Test
+    public void guild_update_keeps_the_member_count() {
+        DiscordEntityCache cache = new DiscordEntityCache();
+        cache.handle("GUILD_CREATE", guild("100", "110", "120"));
+        cache.handle("GUILD_UPDATE", Json.createObjectBuilder()
+                .add("id", "100")
+                .add("name", "renamed")
+                .add("roles", Json.createArrayBuilder())
+                .build());
+        assertEquals("renamed", cache.getGuild(100L).name);
+        assertEquals(42, cache.getGuild(100L).memberCount);
+    }
+
+    @Test
+    public void member_add_and_remove_adjust_the_member_count() {
+        DiscordEntityCache cache = new DiscordEntityCache();
+        cache.handle("GUILD_CREATE", guild("100", "110", "120"));
+        cache.handle("GUILD_MEMBER_ADD", member("100", "500"));
+        cache.handle("GUILD_MEMBER_ADD", member("100", "500"));
+        assertEquals(43, cache.getGuild(100L).memberCount);
+        assertNotNull(cache.getMember(100L, 500L));
+
+        cache.handle("GUILD_MEMBER_REMOVE", member("100", "500"));
+        cache.handle("GUILD_MEMBER_REMOVE", member("100", "501"));
+        assertEquals(41, cache.getGuild(100L).memberCount);
+        assertNull(cache.getMember(100L, 500L));
+    }
+
+    @Test
+    public void guild_create_replaces_the_previous_snapshot() {
+        DiscordEntityCache cache = new DiscordEntityCache();
+        cache.handle("GUILD_CREATE", guild("100", "110", "120"));
+        cache.handle("GUILD_MEMBER_ADD", member("100", "500"));
+        cache.handle("GUILD_CREATE", guild("100", "111", "121"));
+
+        assertNull(cache.getChannel(110L));
+        assertNull(cache.getRole(120L));
+        assertNull(cache.getMember(100L, 500L));
+        assertNotNull(cache.getChannel(111L));
+        assertNotNull(cache.getRole(121L));
+        assertEquals(1, cache.size(DiscordEntityCache.EntityType.CHANNEL));
+        assertEquals(0, cache.size(DiscordEntityCache.EntityType.MEMBER));
+        assertEquals(42, cache.getGuild(100L).memberCount);
+    }
+
+    private static JsonObject member(String guildId, String userId) {
+        return Json.createObjectBuilder()
+                .add("guild_id", guildId)
+                .add("user", Json.createObjectBuilder().add("id", userId).add("username", "user " + userId))
+                .add("roles", Json.createArrayBuilder())
+                .build();
+    }
+
+    private static JsonObject guild(String id, String channelId, String roleId) {
+        return Json.createObjectBuilder()
+                .add("id", id)
+                .add("name", "guild " + id)
+                .add("member_count", 42)
+                .add("channels", Json.createArrayBuilder().add(Json.createObjectBuilder().add("id", channelId)))
+                .add("roles", Json.createArrayBuilder().add(Json.createObjectBuilder().add("id", roleId)))
+                .build();
+    }
+
+}
@@ -0,0 +1,54 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class DiscordHandshakeTest {
+
+    @Test
+    public void concurrent_handshakes_share_the_runtime_threads() throws Exception {
+        int shards = 64;
+        List<DiscordSocket> sockets = new ArrayList<>(shards);
+        List<CompletableFuture<DiscordGatewaySession>> handshakes = new ArrayList<>(shards);
+        try (FakeDiscordGateway gateway = new FakeDiscordGateway(60_000)) {
+            for (int i = 0; i < shards; i++) {
+                DiscordSocket socket = new DiscordSocket("token", i, shards, null);
+                socket.setAutoReconnect(false);
+                sockets.add(socket);
+                handshakes.add(socket.connectAsync(gateway.getUri()));
+            }
+            CompletableFuture.allOf(handshakes.toArray(new CompletableFuture<?>[0])).get(10L, TimeUnit.SECONDS);
+            for (DiscordSocket socket : sockets) {
+                assertTrue(socket.isConnected());
+            }
+            assertTrue(WebSocketRuntime.getDefault().getThreadCount() < shards);
+            for (DiscordSocket socket : sockets) {
+                socket.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void failed_open_fails_the_handshake() {
+        DiscordSocket socket = new DiscordSocket("token", event -> {
+        });
+        socket.setAutoReconnect(false);
+        CompletableFuture<DiscordGatewaySession> handshake = socket.connectAsync(URI.create("ws://127.0.0.1:9/gateway"));
+        assertThrows(ExecutionException.class, () -> handshake.get(10L, TimeUnit.SECONDS));
+        assertFalse(socket.isConnected());
+    }
+
+}
@@ -0,0 +1,36 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class DiscordIntentTest {
+
+    @Test
+    public void derives_minimal_intents_from_handled_events() {
+        assertEquals(EnumSet.of(DiscordIntent.GUILD_MESSAGES, DiscordIntent.DIRECT_MESSAGES, DiscordIntent.GUILD_MESSAGE_REACTIONS, DiscordIntent.DIRECT_MESSAGE_REACTIONS),
+                DiscordIntent.forEvents(Arrays.asList("READY", "MESSAGE_CREATE", "MESSAGE_REACTION_ADD")));
+        assertTrue(DiscordIntent.forEvent("RESUMED").isEmpty());
+        assertEquals((1 << 9) | (1 << 12), DiscordIntent.toBitfield(EnumSet.of(DiscordIntent.GUILD_MESSAGES, DiscordIntent.DIRECT_MESSAGES)));
+    }
+
+    @Test
+    public void socket_requests_only_intents_of_its_handlers() {
+        DiscordSocket socket = new DiscordSocket("token");
+        socket.addEventHandler("TYPING_START", event -> {
+        });
+        assertEquals(EnumSet.of(DiscordIntent.GUILD_MESSAGE_TYPING, DiscordIntent.DIRECT_MESSAGE_TYPING), socket.getIntents());
+        socket.setEntityCache(new DiscordEntityCache());
+        assertTrue(socket.getIntents().contains(DiscordIntent.GUILDS));
+        assertEquals(DiscordIntent.nonPrivileged(), new DiscordSocket("token", event -> {
+        }).getIntents());
+    }
+
+}
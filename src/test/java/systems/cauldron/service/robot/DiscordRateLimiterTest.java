@@ -0,0 +1,152 @@
+package systems.cauldron.service.robot;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Amann Malik
+ */
+public class DiscordRateLimiterTest {
+
+    private static final int LIMIT = 2;
+    private static final long WINDOW_MILLISECONDS = 200L;
+
+    @Test
+    public void paces_bursts_without_hitting_429() throws Exception {
+        // the limiter and the server share a clock that only moves when the test advances it
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        AtomicInteger rejected = new AtomicInteger();
+        HttpServer server = startBucketServer(clock, rejected);
+        try {
+            URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/channels/1/messages");
+            DiscordRateLimiter limiter = new DiscordRateLimiter(clock::get);
+            int requestCount = 7;
+            List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>();
+            for (int i = 0; i < requestCount; i++) {
+                HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+                responses.add(limiter.submit("GET /channels/{channel.id}/messages", "1", request));
+            }
+            for (int window = 1; window <= 4; window++) {
+                int expected = Math.min(requestCount, window * LIMIT);
+                awaitCompleted(responses, expected);
+                // nothing more may go out until the window resets
+                Thread.sleep(50L);
+                assertEquals(expected, countCompleted(responses));
+                clock.addAndGet(WINDOW_MILLISECONDS);
+            }
+            for (CompletableFuture<HttpResponse<byte[]>> response : responses) {
+                assertEquals(200, response.join().statusCode());
+            }
+            assertEquals(0, rejected.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void response_drains_every_route_sharing_the_bucket() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                // keeps the first route's request outstanding while the second one asks the bucket
+                Thread.sleep(200L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("X-RateLimit-Bucket", "shared-bucket");
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", "1");
+            exchange.getResponseHeaders().add("X-RateLimit-Reset-After", "0.2");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/channels/1");
+            DiscordRateLimiter limiter = new DiscordRateLimiter(clock::get);
+            limiter.submit("GET /channels/{channel.id}", "1", HttpRequest.newBuilder(uri).GET().build()).join();
+            limiter.submit("PATCH /channels/{channel.id}", "1", HttpRequest.newBuilder(uri).GET().build()).join();
+            clock.addAndGet(WINDOW_MILLISECONDS + 100L);
+
+            CompletableFuture<HttpResponse<byte[]>> first = limiter.submit("GET /channels/{channel.id}", "1", HttpRequest.newBuilder(uri).GET().build());
+            CompletableFuture<HttpResponse<byte[]>> second = limiter.submit("PATCH /channels/{channel.id}", "1", HttpRequest.newBuilder(uri).GET().build());
+            assertEquals(200, first.get(5L, TimeUnit.SECONDS).statusCode());
+            // the second route was told to wait for the first one's response, and from then on for the reset
+            clock.addAndGet(WINDOW_MILLISECONDS + 100L);
+            assertEquals(200, second.get(5L, TimeUnit.SECONDS).statusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void awaitCompleted(List<CompletableFuture<HttpResponse<byte[]>>> responses, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (countCompleted(responses) < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("only " + countCompleted(responses) + " of " + expected + " requests completed");
+            }
+            Thread.sleep(5L);
+        }
+    }
+
+    private static int countCompleted(List<CompletableFuture<HttpResponse<byte[]>>> responses) {
+        int completed = 0;
+        for (CompletableFuture<HttpResponse<byte[]>> response : responses) {
+            if (response.isDone()) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    private static HttpServer startBucketServer(AtomicLong clock, AtomicInteger rejected) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        long[] windowStart = {Long.MIN_VALUE / 2};
+        int[] windowCount = {0};
+        server.createContext("/", exchange -> {
+            int status;
+            long resetAfter;
+            int remaining;
+            synchronized (windowStart) {
+                long now = clock.get();
+                if (now - windowStart[0] >= WINDOW_MILLISECONDS) {
+                    windowStart[0] = now;
+                    windowCount[0] = 0;
+                }
+                windowCount[0]++;
+                status = windowCount[0] > LIMIT ? 429 : 200;
+                remaining = Math.max(0, LIMIT - windowCount[0]);
+                resetAfter = windowStart[0] + WINDOW_MILLISECONDS - now;
+            }
+            if (status == 429) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", Double.toString(resetAfter / 1000.0));
+            }
+            exchange.getResponseHeaders().add("X-RateLimit-Bucket", "test-bucket");
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", Integer.toString(LIMIT));
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(remaining));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset-After", Double.toString(resetAfter / 1000.0));
+            byte[] body = "{}".getBytes();
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+}
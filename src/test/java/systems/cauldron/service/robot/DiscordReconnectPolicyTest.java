@@ -0,0 +1,39 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class DiscordReconnectPolicyTest {
+
+    @Test
+    public void classifies_gateway_close_codes() {
+        assertEquals(DiscordReconnectPolicy.Action.RESUME, DiscordReconnectPolicy.classify(1006));
+        assertEquals(DiscordReconnectPolicy.Action.RESUME, DiscordReconnectPolicy.classify(4000));
+        assertEquals(DiscordReconnectPolicy.Action.RESUME, DiscordReconnectPolicy.classify(4008));
+        assertEquals(DiscordReconnectPolicy.Action.IDENTIFY, DiscordReconnectPolicy.classify(4007));
+        assertEquals(DiscordReconnectPolicy.Action.IDENTIFY, DiscordReconnectPolicy.classify(4009));
+        assertEquals(DiscordReconnectPolicy.Action.FATAL, DiscordReconnectPolicy.classify(4004));
+        assertEquals(DiscordReconnectPolicy.Action.FATAL, DiscordReconnectPolicy.classify(4011));
+    }
+
+    @Test
+    public void backoff_is_jittered_below_a_capped_exponential_ceiling() {
+        DiscordReconnectPolicy policy = new DiscordReconnectPolicy(100L, 5000L);
+        long largest = 0L;
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long ceiling = Math.min(5000L, attempt < 20 ? 100L << attempt : Long.MAX_VALUE);
+            for (int i = 0; i < 100; i++) {
+                long delay = policy.nextDelayMilliseconds(attempt);
+                assertTrue(delay >= 0L && delay <= ceiling, "attempt " + attempt + " waited " + delay);
+                largest = Math.max(largest, delay);
+            }
+        }
+        assertTrue(largest > 2500L);
+    }
+
+}
@@ -0,0 +1,123 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.json.Json;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class DiscordSessionStoreTest {
+
+    @Test
+    public void file_store_keeps_the_latest_checkpoint_per_shard(@TempDir Path directory) throws IOException {
+        DiscordSessionFileStore store = new DiscordSessionFileStore(directory);
+        URI gateway = URI.create("wss://gateway.discord.gg");
+        assertNull(store.load(0, 2));
+
+        store.save(new DiscordSessionCheckpoint(0, 2, "first", 10, gateway, 1_592_157_764_000L));
+        store.save(new DiscordSessionCheckpoint(0, 2, "second", 42, gateway, 1_592_157_765_000L));
+        store.save(new DiscordSessionCheckpoint(1, 2, "other", 7, gateway, 1_592_157_765_000L));
+
+        DiscordSessionCheckpoint checkpoint = store.load(0, 2);
+        assertEquals("second", checkpoint.sessionId);
+        assertEquals(42, checkpoint.sequenceNumber);
+        assertEquals(gateway, checkpoint.gatewayUri);
+        assertEquals(1_592_157_765_000L, checkpoint.savedAt);
+        // a different shard count is a different shard
+        assertNull(store.load(0, 4));
+
+        store.clear(0, 2);
+        assertNull(store.load(0, 2));
+        assertEquals("other", store.load(1, 2).sessionId);
+
+        Files.writeString(directory.resolve("discord-session-1-of-2.json"), "{\"session_id\":");
+        assertNull(store.load(1, 2));
+    }
+
+    @Test
+    public void socket_resumes_the_checkpointed_session_after_a_restart(@TempDir Path directory) throws Exception {
+        DiscordSessionFileStore store = new DiscordSessionFileStore(directory);
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        try (FakeDiscordGateway gateway = new FakeDiscordGateway(60_000)) {
+            DiscordSocket first = newSocket(store, received);
+            first.connect(gateway.getUri());
+            for (int i = 0; i < 3; i++) {
+                gateway.dispatch("TYPING_START", Json.createObjectBuilder().add("channel_id", "before-" + i).build());
+            }
+            awaitTrue(() -> received.contains("before-2"));
+            awaitTrue(() -> {
+                DiscordSessionCheckpoint checkpoint = store.load(0, 1);
+                return checkpoint != null && checkpoint.sequenceNumber == 4;
+            });
+            first.disconnect(true);
+
+            gateway.dispatch("TYPING_START", Json.createObjectBuilder().add("channel_id", "missed").build());
+
+            DiscordSocket second = newSocket(store, received);
+            assertTrue(second.resumeFromCheckpoint());
+            awaitTrue(() -> received.contains("missed"));
+            assertEquals(1, gateway.getIdentifyCount());
+            assertEquals(1, gateway.getResumeCount());
+            second.disconnect(true);
+
+            // a session the gateway has dropped is cleared rather than retried
+            gateway.invalidateSessions(false);
+            DiscordSocket third = newSocket(store, received);
+            assertFalse(third.resumeFromCheckpoint());
+            assertEquals(1, gateway.getFailedResumeCount());
+            awaitTrue(() -> store.load(0, 1) == null);
+        }
+    }
+
+    @Test
+    public void normal_disconnect_clears_the_checkpoint_after_the_gateway_closed(@TempDir Path directory) throws Exception {
+        DiscordSessionFileStore store = new DiscordSessionFileStore(directory);
+        try (FakeDiscordGateway gateway = new FakeDiscordGateway(60_000)) {
+            DiscordSocket socket = newSocket(store, ConcurrentHashMap.newKeySet());
+            socket.connect(gateway.getUri());
+            awaitTrue(() -> store.load(0, 1) != null);
+            gateway.closeConnections(4000);
+            awaitTrue(() -> !socket.isConnected());
+
+            socket.disconnect();
+            assertNull(store.load(0, 1));
+        }
+    }
+
+    private static DiscordSocket newSocket(DiscordSessionStore store, Set<String> received) {
+        DiscordSocket socket = new DiscordSocket("token", event -> {
+            if ("TYPING_START".equals(event.name)) {
+                received.add(event.getData().getString("channel_id"));
+            }
+        });
+        socket.setAutoReconnect(false);
+        socket.setSessionStore(store);
+        socket.setCheckpointInterval(20);
+        return socket;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("condition not met within 5 seconds");
+            }
+            Thread.sleep(10L);
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class DiscordShardManagerTest {
+
+    @Test
+    public void shuts_down_only_the_dispatcher_it_created() throws InterruptedException {
+        DiscordShardManager manager = new DiscordShardManager("token", 1, event -> {
+        });
+        EventDispatcher created = manager.getDispatcher();
+        manager.disconnect();
+        assertThrows(RejectedExecutionException.class, () -> created.dispatch("key", () -> {
+        }));
+        EventDispatcher replacement = manager.getDispatcher();
+        assertNotSame(created, replacement);
+
+        EventDispatcher supplied = EventDispatcher.striped(1);
+        try {
+            manager.setDispatcher(supplied);
+            assertThrows(RejectedExecutionException.class, () -> replacement.dispatch("key", () -> {
+            }));
+            manager.disconnect();
+            assertSame(supplied, manager.getDispatcher());
+            CountDownLatch handled = new CountDownLatch(1);
+            supplied.dispatch("key", handled::countDown);
+            assertTrue(handled.await(5L, TimeUnit.SECONDS));
+        } finally {
+            supplied.shutdown();
+        }
+    }
+
+}
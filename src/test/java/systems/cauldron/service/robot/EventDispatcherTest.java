@@ -0,0 +1,84 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class EventDispatcherTest {
+
+    @Test
+    public void striped_keeps_per_key_order() throws InterruptedException {
+        assertPerKeyOrder(EventDispatcher.striped(4));
+    }
+
+    @Test
+    public void virtual_threads_keep_per_key_order() throws InterruptedException {
+        assertPerKeyOrder(EventDispatcher.virtualThreads());
+    }
+
+    @Test
+    public void striped_lane_survives_an_error_and_a_rejected_dispatch() throws InterruptedException {
+        EventDispatcher dispatcher = EventDispatcher.striped(1);
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch("channel", () -> {
+            throw new Error("handler failure");
+        });
+        dispatcher.dispatch("channel", done::countDown);
+        assertTrue(done.await(5L, TimeUnit.SECONDS));
+
+        dispatcher.shutdown();
+        long deadline = System.currentTimeMillis() + 1000L;
+        while (dispatcher.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertThrows(RejectedExecutionException.class, () -> dispatcher.dispatch("other", () -> {
+        }));
+        assertEquals(0L, dispatcher.getQueueDepth());
+    }
+
+    private static void assertPerKeyOrder(EventDispatcher dispatcher) throws InterruptedException {
+        int keys = 16;
+        int eventsPerKey = 2000;
+        List<List<Integer>> observed = new ArrayList<>();
+        for (int k = 0; k < keys; k++) {
+            observed.add(new ArrayList<>());
+        }
+        CountDownLatch done = new CountDownLatch(keys * eventsPerKey);
+        for (int i = 0; i < eventsPerKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                List<Integer> sink = observed.get(k);
+                int value = i;
+                dispatcher.dispatch("channel-" + k, () -> {
+                    sink.add(value);
+                    done.countDown();
+                });
+            }
+        }
+        assertTrue(done.await(10L, TimeUnit.SECONDS));
+        for (List<Integer> sink : observed) {
+            assertEquals(eventsPerKey, sink.size());
+            for (int i = 0; i < eventsPerKey; i++) {
+                assertEquals(i, sink.get(i).intValue());
+            }
+        }
+        long deadline = System.currentTimeMillis() + 1000L;
+        while (dispatcher.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertEquals(0L, dispatcher.getQueueDepth());
+        assertEquals(keys * eventsPerKey, dispatcher.getHandlerTime().getCount());
+        dispatcher.shutdown();
+    }
+
+}
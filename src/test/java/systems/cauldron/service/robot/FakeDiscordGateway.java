@@ -0,0 +1,205 @@
+package systems.cauldron.service.robot;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for the Discord gateway: HELLO, IDENTIFY/READY, heartbeat ACKs, RESUME with replay of missed
+ * dispatches, and on demand op 7, op 9 and server side closes.
+ *
+ * @author Amann Malik
+ */
+class FakeDiscordGateway implements WebSocketStub.Handler, AutoCloseable {
+
+    private static final int RESUME_BACKLOG = 10_000;
+
+    private final WebSocketStub server;
+    private final int heartbeatInterval;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger identifyCount = new AtomicInteger();
+    private final AtomicInteger resumeCount = new AtomicInteger();
+    private final AtomicInteger failedResumeCount = new AtomicInteger();
+    private final AtomicInteger heartbeatCount = new AtomicInteger();
+
+    FakeDiscordGateway(int heartbeatInterval) throws IOException {
+        this.heartbeatInterval = heartbeatInterval;
+        this.server = new WebSocketStub(this);
+    }
+
+    URI getUri() {
+        return server.getUri();
+    }
+
+    int getIdentifyCount() {
+        return identifyCount.get();
+    }
+
+    int getResumeCount() {
+        return resumeCount.get();
+    }
+
+    int getFailedResumeCount() {
+        return failedResumeCount.get();
+    }
+
+    int getHeartbeatCount() {
+        return heartbeatCount.get();
+    }
+
+    /**
+     * Sends a dispatch to every session; sessions that are currently disconnected receive it when they resume.
+     */
+    void dispatch(String eventName, JsonObject data) {
+        String dataText = data.toString();
+        for (Session session : sessions.values()) {
+            session.dispatch(eventName, dataText);
+        }
+    }
+
+    void requestReconnect() {
+        for (WebSocketStub.Connection connection : server.getConnections()) {
+            connection.sendText("{\"op\":7,\"d\":null}");
+        }
+    }
+
+    void invalidateSessions(boolean resumable) {
+        if (!resumable) {
+            sessions.clear();
+        }
+        for (WebSocketStub.Connection connection : server.getConnections()) {
+            connection.sendText("{\"op\":9,\"d\":" + resumable + "}");
+        }
+    }
+
+    void closeConnections(int closeCode) {
+        for (WebSocketStub.Connection connection : server.getConnections()) {
+            connection.close(closeCode, "closed by fake gateway");
+        }
+    }
+
+    void abortConnections() {
+        for (WebSocketStub.Connection connection : server.getConnections()) {
+            connection.abort();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    @Override
+    public void onOpen(WebSocketStub.Connection connection) {
+        connection.sendText("{\"op\":10,\"d\":{\"heartbeat_interval\":" + heartbeatInterval + "}}");
+    }
+
+    @Override
+    public void onText(WebSocketStub.Connection connection, String text) {
+        JsonObject payload = Json.createReader(new StringReader(text)).readObject();
+        switch (payload.getInt("op")) {
+            case 1:
+                heartbeatCount.incrementAndGet();
+                connection.sendText("{\"op\":11}");
+                break;
+            case 2: {
+                identifyCount.incrementAndGet();
+                Session session = new Session(UUID.randomUUID().toString());
+                sessions.put(session.id, session);
+                connection.attachment = session;
+                session.attach(connection, "READY", Json.createObjectBuilder()
+                        .add("v", 6)
+                        .add("session_id", session.id)
+                        .add("user", Json.createObjectBuilder().add("id", "80351110224678912").add("username", "robot").add("bot", true))
+                        .add("guilds", Json.createArrayBuilder().add(Json.createObjectBuilder().add("id", "41771983423143937").add("unavailable", true)))
+                        .add("private_channels", Json.createArrayBuilder())
+                        .build().toString(), -1);
+            }
+            break;
+            case 6: {
+                JsonObject data = payload.getJsonObject("d");
+                Session session = sessions.get(data.getString("session_id"));
+                if (session == null) {
+                    failedResumeCount.incrementAndGet();
+                    connection.sendText("{\"op\":9,\"d\":false}");
+                    break;
+                }
+                resumeCount.incrementAndGet();
+                connection.attachment = session;
+                session.attach(connection, "RESUMED", "{}", data.getInt("seq"));
+            }
+            break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onClose(WebSocketStub.Connection connection, int closeCode) {
+        Object attachment = connection.attachment;
+        if (attachment instanceof Session) {
+            ((Session) attachment).detach(connection);
+        }
+    }
+
+    private static final class Session {
+
+        final String id;
+
+        private int sequence = 0;
+        private final ArrayDeque<String> backlog = new ArrayDeque<>();
+        private WebSocketStub.Connection connection;
+
+        Session(String id) {
+            this.id = id;
+        }
+
+        /**
+         * @param resumeFrom last sequence the client saw, or -1 for a new session
+         */
+        synchronized void attach(WebSocketStub.Connection connection, String eventName, String data, int resumeFrom) {
+            this.connection = connection;
+            if (resumeFrom >= 0) {
+                // the backlog holds the most recent dispatches in order, ending at the current sequence
+                int firstBacklogSequence = sequence - backlog.size() + 1;
+                int skip = Math.max(0, resumeFrom + 1 - firstBacklogSequence);
+                for (String frame : backlog) {
+                    if (skip-- > 0) {
+                        continue;
+                    }
+                    connection.sendText(frame);
+                }
+            }
+            send(eventName, data);
+        }
+
+        synchronized void detach(WebSocketStub.Connection connection) {
+            if (this.connection == connection) {
+                this.connection = null;
+            }
+        }
+
+        synchronized void dispatch(String eventName, String data) {
+            send(eventName, data);
+        }
+
+        private void send(String eventName, String data) {
+            String frame = "{\"t\":\"" + eventName + "\",\"s\":" + (++sequence) + ",\"op\":0,\"d\":" + data + "}";
+            backlog.addLast(frame);
+            if (backlog.size() > RESUME_BACKLOG) {
+                backlog.removeFirst();
+            }
+            if (connection != null && connection.isOpen()) {
+                connection.sendText(frame);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package systems.cauldron.service.robot;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for a Slack RTM websocket: greets with {@code hello}, acknowledges sent messages with
+ * {@code reply_to} and broadcasts message events.
+ *
+ * @author Amann Malik
+ */
+class FakeSlackRtm implements WebSocketStub.Handler, AutoCloseable {
+
+    private final WebSocketStub server;
+    private final AtomicInteger acknowledgedCount = new AtomicInteger();
+    private final AtomicInteger timestamp = new AtomicInteger();
+
+    FakeSlackRtm() throws IOException {
+        this.server = new WebSocketStub(this);
+    }
+
+    URI getUri() {
+        return server.getUri();
+    }
+
+    int getAcknowledgedCount() {
+        return acknowledgedCount.get();
+    }
+
+    void broadcastMessage(String channel, String user, String text) {
+        String frame = Json.createObjectBuilder()
+                .add("type", "message")
+                .add("channel", channel)
+                .add("user", user)
+                .add("text", text)
+                .add("ts", nextTimestamp())
+                .build().toString();
+        for (WebSocketStub.Connection connection : server.getConnections()) {
+            connection.sendText(frame);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    @Override
+    public void onOpen(WebSocketStub.Connection connection) {
+        connection.sendText("{\"type\":\"hello\"}");
+    }
+
+    @Override
+    public void onText(WebSocketStub.Connection connection, String text) {
+        JsonObject message = Json.createReader(new StringReader(text)).readObject();
+        if (message.containsKey("id")) {
+            acknowledgedCount.incrementAndGet();
+            connection.sendText(Json.createObjectBuilder()
+                    .add("ok", true)
+                    .add("reply_to", message.getInt("id"))
+                    .add("ts", nextTimestamp())
+                    .add("text", message.getString("text", ""))
+                    .build().toString());
+        }
+    }
+
+    private String nextTimestamp() {
+        return String.format("1592157764.%06d", timestamp.incrementAndGet() % 1_000_000);
+    }
+
+}
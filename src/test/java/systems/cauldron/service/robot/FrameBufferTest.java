@@ -0,0 +1,41 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Amann Malik
+ */
+public class FrameBufferTest {
+
+    @Test
+    public void matches_object_builder_serialization() {
+        FrameBuffer buffer = new FrameBuffer(4);
+        String text = "quote \" backslash \\ newline \n unicode \u2603";
+        String frame = buffer.writeObject(object -> object
+                .write("id", 7)
+                .write("type", "message")
+                .write("text", text));
+        JsonObject expected = Json.createObjectBuilder()
+                .add("id", 7)
+                .add("type", "message")
+                .add("text", text)
+                .build();
+        assertEquals(expected, Json.createReader(new StringReader(frame)).readObject());
+    }
+
+    @Test
+    public void fills_numeric_templates() {
+        FrameBuffer buffer = new FrameBuffer(4);
+        assertEquals("{\"op\":1,\"d\":0}", buffer.writeTemplate("{\"op\":1,\"d\":", 0L, "}"));
+        assertEquals("{\"op\":1,\"d\":1234567890123}", buffer.writeTemplate("{\"op\":1,\"d\":", 1234567890123L, "}"));
+        assertEquals("[-42]", buffer.writeTemplate("[", -42L, "]"));
+        assertEquals("[" + Long.MIN_VALUE + "]", buffer.writeTemplate("[", Long.MIN_VALUE, "]"));
+    }
+
+}
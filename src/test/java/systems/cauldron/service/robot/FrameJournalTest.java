@@ -0,0 +1,92 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class FrameJournalTest {
+
+    @Test
+    public void reads_back_every_record_across_segments(@TempDir Path directory) throws IOException {
+        String large = "x".repeat(10_000);
+        try (FrameJournal journal = new FrameJournal(directory)) {
+            journal.setSegmentSize(4096L);
+            for (int i = 0; i < 500; i++) {
+                journal.append(i, 1_592_157_764_000L + i, "{\"op\":0,\"s\":" + i + ",\"d\":{\"content\":\"snow \u2603 " + i + "\"}}");
+            }
+            journal.append(-1, 0L, large);
+        }
+        assertTrue(FrameJournal.listSegments(directory).size() > 5);
+
+        try (FrameJournalReader reader = new FrameJournalReader(directory)) {
+            for (int i = 0; i < 500; i++) {
+                assertTrue(reader.next());
+                assertEquals(i, reader.getSequence());
+                assertEquals(1_592_157_764_000L + i, reader.getReceivedAt());
+                assertEquals("snow \u2603 " + i, reader.getFrame().getData().getString("content"));
+            }
+            assertTrue(reader.next());
+            assertEquals(large, reader.getText());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void retains_only_the_newest_segments_within_the_size_limit(@TempDir Path directory) throws IOException {
+        try (FrameJournal journal = new FrameJournal(directory)) {
+            journal.setSegmentSize(4096L);
+            journal.setRetentionSize(3 * 4096L);
+            for (int i = 0; i < 1000; i++) {
+                journal.append(i, 0L, "{\"op\":11,\"padding\":\"" + "-".repeat(80) + "\"}");
+            }
+        }
+        assertTrue(FrameJournal.listSegments(directory).size() <= 4);
+
+        List<Integer> sequences = new ArrayList<>();
+        try (FrameJournalReader reader = new FrameJournalReader(directory)) {
+            while (reader.next()) {
+                sequences.add(reader.getSequence());
+            }
+        }
+        assertEquals(999, (int) sequences.get(sequences.size() - 1));
+        for (int i = 1; i < sequences.size(); i++) {
+            assertEquals(sequences.get(i - 1) + 1, (int) sequences.get(i));
+        }
+    }
+
+    @Test
+    public void replays_recorded_dispatches_through_the_handlers(@TempDir Path directory) {
+        try (FrameJournal journal = new FrameJournal(directory)) {
+            journal.append(new JsonFrame("{\"op\":10,\"d\":{\"heartbeat_interval\":41250}}"));
+            journal.append(new JsonFrame("{\"t\":\"READY\",\"s\":1,\"op\":0,\"d\":{\"session_id\":\"abc\",\"guilds\":[]}}"));
+            for (int i = 2; i <= 4; i++) {
+                journal.append(new JsonFrame("{\"t\":\"MESSAGE_CREATE\",\"s\":" + i + ",\"op\":0,\"d\":{\"channel_id\":\"41771983423143937\",\"content\":\"m" + i + "\"}}"));
+            }
+            journal.append(new JsonFrame("{\"op\":11}"));
+        }
+        // a second journal on the same directory continues in a new segment
+        try (FrameJournal journal = new FrameJournal(directory)) {
+            journal.append(new JsonFrame("{\"t\":\"MESSAGE_CREATE\",\"s\":5,\"op\":0,\"d\":{\"channel_id\":\"41771983423143937\",\"content\":\"m5\"}}"));
+        }
+
+        List<String> contents = new ArrayList<>();
+        DiscordSocket socket = new DiscordSocket("token");
+        socket.addEventHandler("MESSAGE_CREATE", event -> contents.add(event.getData().getString("content")));
+        try (FrameJournalReader reader = new FrameJournalReader(directory)) {
+            socket.replay(reader);
+        }
+        assertEquals(List.of("m2", "m3", "m4", "m5"), contents);
+    }
+
+}
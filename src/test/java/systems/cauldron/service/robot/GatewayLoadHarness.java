@@ -0,0 +1,345 @@
+package systems.cauldron.service.robot;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Drives {@link DiscordSocket} and {@link SlackSocket} clients against {@link FakeDiscordGateway} and
+ * {@link FakeSlackRtm}: replays synthetic events at a fixed rate, then drops every gateway connection while events
+ * keep arriving, and reports throughput, delivery latency and how long the clients took to resume.
+ * <p>
+ * Latency is measured from the moment the fake server writes an event to the moment a client handler sees it, so it
+ * covers framing, parsing and dispatch. Before the events start, a batch of idle connections is opened and closed in
+ * bulk to measure what a connection costs in heap and {@link WebSocketRuntime} threads. Run {@link #main} for a larger
+ * configuration than the tests use.
+ *
+ * @author Amann Malik
+ */
+class GatewayLoadHarness {
+
+    private static final String SLACK_CHANNEL = "C024BE91L";
+    private static final String SLACK_USER = "U024BE7LH";
+
+    private int discordClients = 4;
+    private int slackClients = 2;
+    private int events = 1_000;
+    private int eventsPerSecond = 5_000;
+    private int outageEvents = 100;
+    private int idleClients = 100;
+    private int heartbeatInterval = 1_000;
+    private long timeoutMilliseconds = 30_000L;
+
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final LatencyHistogram recoveryTime = new LatencyHistogram();
+    private final LongAdder discordDeliveries = new LongAdder();
+    private final LongAdder slackDeliveries = new LongAdder();
+    private volatile boolean measuringLatency;
+
+    void setDiscordClients(int discordClients) {
+        this.discordClients = discordClients;
+    }
+
+    void setSlackClients(int slackClients) {
+        this.slackClients = slackClients;
+    }
+
+    /**
+     * @param events number of events sent to every client during the steady phase
+     */
+    void setEvents(int events) {
+        this.events = events;
+    }
+
+    void setEventsPerSecond(int eventsPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    /**
+     * @param outageEvents number of events dispatched right after the gateway drops its connections; clients only
+     *                     receive them by resuming
+     */
+    void setOutageEvents(int outageEvents) {
+        this.outageEvents = outageEvents;
+    }
+
+    /**
+     * @param idleClients number of Slack connections opened, measured and closed again before the steady phase
+     */
+    void setIdleClients(int idleClients) {
+        this.idleClients = idleClients;
+    }
+
+    void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    void setTimeout(long timeoutMilliseconds) {
+        this.timeoutMilliseconds = timeoutMilliseconds;
+    }
+
+    Report run() throws Exception {
+        deliveryLatency.reset();
+        recoveryTime.reset();
+        discordDeliveries.reset();
+        slackDeliveries.reset();
+        List<DiscordSocket> discordSockets = new ArrayList<>();
+        List<SlackSocket> slackSockets = new ArrayList<>();
+        try (FakeDiscordGateway gateway = new FakeDiscordGateway(heartbeatInterval);
+             FakeSlackRtm rtm = new FakeSlackRtm()) {
+            try {
+                return run(gateway, rtm, discordSockets, slackSockets);
+            } finally {
+                // clients go first so they do not start reconnecting to the closing servers
+                for (DiscordSocket socket : discordSockets) {
+                    socket.disconnect();
+                }
+                for (SlackSocket socket : slackSockets) {
+                    try {
+                        socket.disconnect();
+                    } catch (RuntimeException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    private Report run(FakeDiscordGateway gateway, FakeSlackRtm rtm, List<DiscordSocket> discordSockets,
+                       List<SlackSocket> slackSockets) throws Exception {
+        List<CompletableFuture<DiscordGatewaySession>> handshakes = new ArrayList<>(discordClients);
+        for (int i = 0; i < discordClients; i++) {
+            DiscordSocket socket = new DiscordSocket("load-test-token", i, discordClients, null);
+            socket.addEventHandler("MESSAGE_CREATE", this::recordDiscordEvent);
+            socket.setReconnectBackoff(10L, 100L);
+            socket.setRecoveryTime(recoveryTime);
+            handshakes.add(socket.connectAsync(gateway.getUri()));
+            discordSockets.add(socket);
+        }
+        CompletableFuture.allOf(handshakes.toArray(new CompletableFuture<?>[0])).join();
+        for (int i = 0; i < slackClients; i++) {
+            SlackSocket socket = new SlackSocket("load-test-token", this::recordSlackEvent);
+            socket.connect(rtm.getUri());
+            slackSockets.add(socket);
+        }
+        Footprint footprint = measureFootprint(rtm);
+
+        long expectedDiscord = (long) events * discordClients;
+        long expectedSlack = (long) events * slackClients;
+        measuringLatency = true;
+        long start = System.nanoTime();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1L) / Math.max(1, eventsPerSecond);
+        for (int i = 0; i < events; i++) {
+            long due = start + i * intervalNanos;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0L) {
+                LockSupport.parkNanos(wait);
+            }
+            gateway.dispatch("MESSAGE_CREATE", messageCreate(i));
+            if (slackClients > 0) {
+                rtm.broadcastMessage(SLACK_CHANNEL, SLACK_USER, Long.toString(System.nanoTime()));
+            }
+        }
+        awaitCondition(() -> discordDeliveries.sum() >= expectedDiscord && slackDeliveries.sum() >= expectedSlack);
+        long elapsed = System.nanoTime() - start;
+        // replayed events would count their time spent in the gateway backlog
+        measuringLatency = false;
+
+        List<CompletableFuture<Boolean>> acknowledgements = new ArrayList<>();
+        for (SlackSocket socket : slackSockets) {
+            acknowledgements.add(socket.sendMessage(SLACK_CHANNEL, "load test complete"));
+        }
+        CompletableFuture.allOf(acknowledgements.toArray(new CompletableFuture<?>[0]))
+                .get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+
+        int identifiesBeforeOutage = gateway.getIdentifyCount();
+        gateway.closeConnections(4000);
+        for (int i = 0; i < outageEvents; i++) {
+            gateway.dispatch("MESSAGE_CREATE", messageCreate(events + i));
+        }
+        long expectedAfterOutage = expectedDiscord + (long) outageEvents * discordClients;
+        awaitCondition(() -> recoveryTime.getCount() >= discordClients && discordDeliveries.sum() >= expectedAfterOutage);
+
+        return new Report(
+                discordDeliveries.sum(),
+                slackDeliveries.sum(),
+                elapsed,
+                deliveryLatency.getPercentile(99.0),
+                deliveryLatency.getMax(),
+                recoveryTime.getPercentile(99.0),
+                recoveryTime.getMax(),
+                gateway.getIdentifyCount() - identifiesBeforeOutage,
+                gateway.getResumeCount(),
+                rtm.getAcknowledgedCount(),
+                footprint);
+    }
+
+    /**
+     * Opens the idle connections through a {@link ConnectionRegistry}, then closes them again.
+     */
+    private Footprint measureFootprint(FakeSlackRtm rtm) {
+        WebSocketRuntime runtime = WebSocketRuntime.getDefault();
+        if (idleClients == 0) {
+            return new Footprint(runtime.getConnectionCount(), runtime.getThreadCount(), 0L);
+        }
+        ConnectionRegistry<Integer, RealtimeConnection> registry = new ConnectionRegistry<>();
+        for (int i = 0; i < idleClients; i++) {
+            SlackSocket socket = new SlackSocket("load-test-token");
+            registry.register(i, new RealtimeConnection() {
+                @Override
+                public void connect() {
+                    socket.connect(rtm.getUri());
+                }
+
+                @Override
+                public CompletableFuture<Void> connectAsync() {
+                    return socket.connectAsync(rtm.getUri());
+                }
+
+                @Override
+                public void disconnect() {
+                    socket.disconnect();
+                }
+
+                @Override
+                public boolean isConnected() {
+                    return socket.isConnected();
+                }
+            });
+        }
+        long heapBefore = usedHeap();
+        Map<Integer, RuntimeException> failures = registry.connectAll(16);
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException(failures.size() + " idle connections failed", failures.values().iterator().next());
+        }
+        long heapPerConnection = (usedHeap() - heapBefore) / idleClients;
+        Footprint footprint = new Footprint(runtime.getConnectionCount(), runtime.getThreadCount(), heapPerConnection);
+        registry.disconnectAll();
+        return footprint;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void recordDiscordEvent(DiscordEvent event) {
+        if (measuringLatency) {
+            deliveryLatency.record(System.nanoTime() - Long.parseLong(event.getData().getString("nonce")));
+        }
+        discordDeliveries.increment();
+    }
+
+    private void recordSlackEvent(SlackMessageEvent event) {
+        if (measuringLatency) {
+            deliveryLatency.record(System.nanoTime() - Long.parseLong(event.text));
+        }
+        slackDeliveries.increment();
+    }
+
+    private static JsonObject messageCreate(int index) {
+        return Json.createObjectBuilder()
+                .add("id", Long.toString(700_000_000_000_000_000L + index))
+                .add("channel_id", Long.toString(600_000_000_000_000_000L + index % 16))
+                .add("guild_id", "41771983423143937")
+                .add("content", "load test message " + index)
+                .add("nonce", Long.toString(System.nanoTime()))
+                .build();
+    }
+
+    private void awaitCondition(BooleanSupplier condition) throws TimeoutException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0L) {
+                throw new TimeoutException("load test did not complete: " + discordDeliveries.sum() + " discord and "
+                        + slackDeliveries.sum() + " slack events delivered, " + recoveryTime.getCount() + " recoveries");
+            }
+            Thread.sleep(5L);
+        }
+    }
+
+    static final class Footprint {
+
+        final int connections;
+        final int clientThreads;
+        /**
+         * Includes the fake server's side of each connection, so it overstates what a client connection costs.
+         */
+        final long heapPerConnection;
+
+        Footprint(int connections, int clientThreads, long heapPerConnection) {
+            this.connections = connections;
+            this.clientThreads = clientThreads;
+            this.heapPerConnection = heapPerConnection;
+        }
+    }
+
+    static final class Report {
+
+        final long discordDeliveries;
+        final long slackDeliveries;
+        final long elapsedNanos;
+        final long p99DeliveryNanos;
+        final long maxDeliveryNanos;
+        final long p99RecoveryNanos;
+        final long maxRecoveryNanos;
+        final int identifiesAfterOutage;
+        final int resumes;
+        final int slackAcknowledgements;
+        final Footprint footprint;
+
+        Report(long discordDeliveries, long slackDeliveries, long elapsedNanos, long p99DeliveryNanos, long maxDeliveryNanos,
+               long p99RecoveryNanos, long maxRecoveryNanos, int identifiesAfterOutage, int resumes, int slackAcknowledgements,
+               Footprint footprint) {
+            this.discordDeliveries = discordDeliveries;
+            this.slackDeliveries = slackDeliveries;
+            this.elapsedNanos = elapsedNanos;
+            this.p99DeliveryNanos = p99DeliveryNanos;
+            this.maxDeliveryNanos = maxDeliveryNanos;
+            this.p99RecoveryNanos = p99RecoveryNanos;
+            this.maxRecoveryNanos = maxRecoveryNanos;
+            this.identifiesAfterOutage = identifiesAfterOutage;
+            this.resumes = resumes;
+            this.slackAcknowledgements = slackAcknowledgements;
+            this.footprint = footprint;
+        }
+
+        /**
+         * @return events delivered per second during the steady phase, across all clients
+         */
+        double getThroughput() {
+            return elapsedNanos == 0L ? 0.0 : (discordDeliveries + slackDeliveries) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("throughput=%.0f events/s delivery p99=%.3fms max=%.3fms recovery p99=%.1fms max=%.1fms resumes=%d identifies after outage=%d"
+                            + " connections=%d client threads=%d heap per connection=%.1fKB",
+                    getThroughput(), p99DeliveryNanos / 1e6, maxDeliveryNanos / 1e6, p99RecoveryNanos / 1e6, maxRecoveryNanos / 1e6,
+                    resumes, identifiesAfterOutage, footprint.connections, footprint.clientThreads, footprint.heapPerConnection / 1024.0);
+        }
+    }
+
+    /**
+     * Arguments, all optional: discord clients, slack clients, events per client, events per second, idle connections.
+     */
+    public static void main(String[] args) throws Exception {
+        GatewayLoadHarness harness = new GatewayLoadHarness();
+        harness.setDiscordClients(args.length > 0 ? Integer.parseInt(args[0]) : 16);
+        harness.setSlackClients(args.length > 1 ? Integer.parseInt(args[1]) : 4);
+        harness.setEvents(args.length > 2 ? Integer.parseInt(args[2]) : 20_000);
+        harness.setEventsPerSecond(args.length > 3 ? Integer.parseInt(args[3]) : 10_000);
+        harness.setIdleClients(args.length > 4 ? Integer.parseInt(args[4]) : 1_000);
+        harness.setOutageEvents(1_000);
+        System.out.println(harness.run());
+    }
+
+}
@@ -0,0 +1,67 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import javax.json.Json;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class GatewayLoadHarnessTest {
+
+    @Test
+    public void delivers_every_event_and_resumes_after_the_gateway_drops_connections() throws Exception {
+        GatewayLoadHarness harness = new GatewayLoadHarness();
+        harness.setDiscordClients(3);
+        harness.setSlackClients(2);
+        harness.setEvents(300);
+        harness.setEventsPerSecond(3_000);
+        harness.setOutageEvents(50);
+        harness.setIdleClients(40);
+        GatewayLoadHarness.Report report = harness.run();
+        assertEquals(3L * 350, report.discordDeliveries);
+        assertEquals(2L * 300, report.slackDeliveries);
+        assertEquals(2, report.slackAcknowledgements);
+        assertEquals(3, report.resumes);
+        assertEquals(0, report.identifiesAfterOutage);
+        assertTrue(report.getThroughput() > 0.0);
+        assertTrue(report.p99DeliveryNanos > 0L);
+        assertTrue(report.maxRecoveryNanos > 0L);
+        // the idle connections were open alongside the clients, all on the runtime's bounded pool
+        assertEquals(3 + 2 + 40, report.footprint.connections);
+        assertTrue(report.footprint.clientThreads < report.footprint.connections);
+    }
+
+    @Test
+    public void reconnect_request_resumes_the_session() throws Exception {
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        try (FakeDiscordGateway gateway = new FakeDiscordGateway(60_000)) {
+            DiscordSocket socket = new DiscordSocket("token", event -> {
+                if ("TYPING_START".equals(event.name)) {
+                    received.add(event.getData().getString("channel_id"));
+                }
+            });
+            socket.setReconnectBackoff(10L, 100L);
+            socket.connect(gateway.getUri());
+            try {
+                gateway.requestReconnect();
+                gateway.dispatch("TYPING_START", Json.createObjectBuilder().add("channel_id", "during").build());
+                long deadline = System.nanoTime() + 5_000_000_000L;
+                while ((gateway.getResumeCount() == 0 || !received.contains("during")) && System.nanoTime() < deadline) {
+                    Thread.sleep(10L);
+                }
+                assertTrue(received.contains("during"));
+                assertEquals(1, gateway.getResumeCount());
+                assertEquals(1, gateway.getIdentifyCount());
+            } finally {
+                socket.disconnect();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class GatewaySendSchedulerTest {
+
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1L, TimeUnit.MILLISECONDS, 64, Runnable::run);
+    private final List<String> sent = new ArrayList<>();
+    private final List<Long> sentAt = new ArrayList<>();
+
+    @AfterEach
+    public void stopTimer() {
+        timer.stop();
+    }
+
+    @Test
+    public void never_exceeds_the_limit_in_any_window() throws InterruptedException {
+        // 60 per 300 ms: a burst of 10, then one every 6 ms
+        GatewaySendScheduler scheduler = newScheduler(60, 300L);
+        scheduler.open();
+        scheduler.establish();
+        for (int i = 0; i < 150; i++) {
+            scheduler.submit(GatewaySendScheduler.Priority.REQUEST, "REQUEST", "request " + i);
+        }
+        awaitSent(150, 5000L);
+        assertEquals(0, scheduler.getQueueDepth());
+        long window = TimeUnit.MILLISECONDS.toNanos(300L);
+        synchronized (sent) {
+            for (int i = 0; i < sentAt.size(); i++) {
+                int inWindow = 0;
+                for (int j = i; j < sentAt.size() && sentAt.get(j) - sentAt.get(i) < window; j++) {
+                    inWindow++;
+                }
+                assertTrue(inWindow <= 60, "sent " + inWindow + " frames within one window");
+            }
+            assertEquals("request 0", sent.get(0));
+            assertEquals("request 149", sent.get(149));
+        }
+        assertTrue(scheduler.getSendDelay().getMax() > 0L);
+    }
+
+    @Test
+    public void control_frames_go_ahead_of_waiting_lower_lanes() throws InterruptedException {
+        // a burst of 10, then one every 60 ms
+        GatewaySendScheduler scheduler = newScheduler(60, 3000L);
+        scheduler.open();
+        scheduler.submit(GatewaySendScheduler.Priority.PRESENCE, "PRESENCE", "presence 1");
+        scheduler.submit(GatewaySendScheduler.Priority.REQUEST, "REQUEST", "request 1");
+        scheduler.submit(GatewaySendScheduler.Priority.PRESENCE, "PRESENCE", "presence 2");
+        scheduler.submit(GatewaySendScheduler.Priority.CONTROL, "CONTROL", "identify");
+        // lower lanes wait for the session
+        assertEquals(List.of("identify"), snapshot());
+
+        for (int i = 2; i <= 20; i++) {
+            scheduler.submit(GatewaySendScheduler.Priority.REQUEST, "REQUEST", "request " + i);
+        }
+        scheduler.establish();
+        List<String> burst = snapshot();
+        assertEquals("presence 2", burst.get(1));
+        assertEquals("request 1", burst.get(2));
+        // the last tokens of the burst are left to control frames
+        assertEquals(7, burst.size());
+        scheduler.submit(GatewaySendScheduler.Priority.CONTROL, "CONTROL", "heartbeat");
+        assertEquals("heartbeat", snapshot().get(7));
+
+        awaitSent(22, 5000L);
+        assertTrue(snapshot().indexOf("presence 1") < 0);
+    }
+
+    @Test
+    public void drops_stale_control_frames_and_holds_the_rest_across_reconnects() {
+        GatewaySendScheduler scheduler = newScheduler(12, 60_000L);
+        scheduler.open();
+        scheduler.submit(GatewaySendScheduler.Priority.CONTROL, "CONTROL", "identify");
+        scheduler.submit(GatewaySendScheduler.Priority.CONTROL, "CONTROL", "heartbeat");
+        scheduler.submit(GatewaySendScheduler.Priority.CONTROL, "CONTROL", "stale heartbeat");
+        scheduler.close();
+        scheduler.submit(GatewaySendScheduler.Priority.REQUEST, "REQUEST", "request");
+        assertEquals(1, scheduler.getQueueDepth());
+        scheduler.open();
+        scheduler.submit(GatewaySendScheduler.Priority.CONTROL, "CONTROL", "resume");
+        scheduler.establish();
+        assertEquals(List.of("identify", "heartbeat", "resume"), snapshot().subList(0, 3));
+        assertEquals(1, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void counts_frames_as_sent_only_once_written() {
+        GatewaySendScheduler scheduler = new GatewaySendScheduler(sent::add, "send-metrics-test", 60, 60_000L, TimeUnit.MILLISECONDS);
+        scheduler.setTimer(timer);
+        scheduler.open();
+        scheduler.submit(GatewaySendScheduler.Priority.CONTROL, "IDENTIFY", "identify");
+        scheduler.submit(GatewaySendScheduler.Priority.REQUEST, "REQUEST_GUILD_MEMBERS", "request");
+        Map<String, Long> framesSent = ((JmxMetrics) Metrics.get()).getFramesSent();
+        assertEquals(Long.valueOf(1L), framesSent.get("send-metrics-test/IDENTIFY"));
+        assertNull(framesSent.get("send-metrics-test/REQUEST_GUILD_MEMBERS"));
+
+        scheduler.establish();
+        framesSent = ((JmxMetrics) Metrics.get()).getFramesSent();
+        assertEquals(Long.valueOf(1L), framesSent.get("send-metrics-test/REQUEST_GUILD_MEMBERS"));
+    }
+
+    private GatewaySendScheduler newScheduler(int limit, long windowMilliseconds) {
+        GatewaySendScheduler scheduler = new GatewaySendScheduler(frame -> {
+            synchronized (sent) {
+                sent.add(frame);
+                sentAt.add(System.nanoTime());
+            }
+        }, "test", limit, windowMilliseconds, TimeUnit.MILLISECONDS);
+        scheduler.setTimer(timer);
+        return scheduler;
+    }
+
+    private List<String> snapshot() {
+        synchronized (sent) {
+            return new ArrayList<>(sent);
+        }
+    }
+
+    private void awaitSent(int count, long timeoutMilliseconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMilliseconds;
+        while (snapshot().size() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "only " + snapshot().size() + " of " + count + " frames sent");
+            Thread.sleep(5L);
+        }
+    }
+
+}
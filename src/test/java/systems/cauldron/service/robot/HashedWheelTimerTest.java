@@ -0,0 +1,64 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class HashedWheelTimerTest {
+
+    @Test
+    public void fires_uncancelled_timeouts_within_a_tick_or_so() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5L, TimeUnit.MILLISECONDS, 16, Runnable::run);
+        try {
+            int timeouts = 10_000;
+            CountDownLatch fired = new CountDownLatch(timeouts / 2);
+            AtomicInteger cancelledRuns = new AtomicInteger();
+            List<HashedWheelTimer.Timeout> cancelled = new ArrayList<>();
+            for (int i = 0; i < timeouts; i++) {
+                // delays span several revolutions of the 16 bucket wheel
+                long delay = 200L + (i % 200);
+                if (i % 2 == 0) {
+                    timer.schedule(fired::countDown, delay, TimeUnit.MILLISECONDS);
+                } else {
+                    cancelled.add(timer.schedule(cancelledRuns::incrementAndGet, delay, TimeUnit.MILLISECONDS));
+                }
+            }
+            cancelled.forEach(HashedWheelTimer.Timeout::cancel);
+            assertTrue(fired.await(5L, TimeUnit.SECONDS));
+            Thread.sleep(50L);
+            assertEquals(0, cancelledRuns.get());
+            assertEquals(0L, timer.getPendingCount());
+            assertEquals(timeouts / 2, timer.getSchedulingLag().getCount());
+            assertTrue(timer.getSchedulingLag().getPercentile(50.0) < TimeUnit.MILLISECONDS.toNanos(50L), timer.getSchedulingLag().toString());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void periodic_task_runs_at_fixed_rate_until_stopped() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1L, TimeUnit.MILLISECONDS, 64, Runnable::run);
+        try {
+            PeriodicTask task = new PeriodicTask(timer);
+            CountDownLatch runs = new CountDownLatch(5);
+            task.start(10, runs::countDown);
+            assertTrue(runs.await(2L, TimeUnit.SECONDS));
+            task.stop();
+            Thread.sleep(20L);
+            assertEquals(0L, timer.getPendingCount());
+        } finally {
+            timer.stop();
+        }
+    }
+
+}
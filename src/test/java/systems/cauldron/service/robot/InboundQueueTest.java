@@ -0,0 +1,198 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Amann Malik
+ */
+public class InboundQueueTest {
+
+    @Test
+    public void coalesces_waiting_events_by_key() {
+        SteppedDispatcher dispatcher = new SteppedDispatcher();
+        List<String> handled = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("test");
+        queue.setMaxInFlight(1);
+        queue.coalesce("presence_change", frame -> frame.getObject().getString("user", null));
+
+        offer(queue, dispatcher, handled, "message", "U0", "first");
+        offer(queue, dispatcher, handled, "presence_change", "U1", "away");
+        offer(queue, dispatcher, handled, "presence_change", "U2", "away");
+        offer(queue, dispatcher, handled, "presence_change", "U1", "active");
+        assertEquals(2, queue.getDepth());
+
+        dispatcher.runAll();
+        assertEquals(List.of("first", "active", "away"), handled);
+        assertEquals(1L, queue.getCoalescedCount());
+        assertEquals(0, queue.getInFlight());
+    }
+
+    @Test
+    public void full_queue_drops_the_oldest_droppable_event() {
+        SteppedDispatcher dispatcher = new SteppedDispatcher();
+        List<String> handled = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("test");
+        queue.setMaxInFlight(1);
+        queue.setCapacity(2);
+        queue.setPolicy("user_typing", InboundQueue.Policy.DROP_OLDEST);
+
+        offer(queue, dispatcher, handled, "message", "U0", "first");
+        offer(queue, dispatcher, handled, "user_typing", "U1", "typing-1");
+        offer(queue, dispatcher, handled, "message", "U0", "second");
+        offer(queue, dispatcher, handled, "user_typing", "U2", "typing-2");
+        offer(queue, dispatcher, handled, "user_typing", "U3", "typing-3");
+
+        dispatcher.runAll();
+        assertEquals(List.of("first", "second", "typing-3"), handled);
+        assertEquals(2L, queue.getDroppedCount());
+        assertEquals(0L, queue.getBlockedCount());
+    }
+
+    @Test
+    public void full_queue_blocks_the_receive_thread() throws InterruptedException {
+        SteppedDispatcher dispatcher = new SteppedDispatcher();
+        List<String> handled = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("test");
+        queue.setMaxInFlight(1);
+        queue.setCapacity(1);
+
+        offer(queue, dispatcher, handled, "message", "U0", "first");
+        offer(queue, dispatcher, handled, "message", "U0", "second");
+        Thread receiver = new Thread(() -> offer(queue, dispatcher, handled, "message", "U0", "third"));
+        receiver.start();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (queue.getBlockedCount() == 0L && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(1L, queue.getBlockedCount());
+
+        dispatcher.runNext();
+        receiver.join(5_000L);
+        dispatcher.runAll();
+        assertEquals(List.of("first", "second", "third"), handled);
+    }
+
+    @Test
+    public void released_receive_thread_drops_its_event() throws InterruptedException {
+        SteppedDispatcher dispatcher = new SteppedDispatcher();
+        List<String> handled = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("test");
+        queue.setMaxInFlight(1);
+        queue.setCapacity(1);
+
+        offer(queue, dispatcher, handled, "message", "U0", "first");
+        offer(queue, dispatcher, handled, "message", "U0", "second");
+        Thread receiver = new Thread(() -> offer(queue, dispatcher, handled, "message", "U0", "third"));
+        receiver.start();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (queue.getBlockedCount() == 0L && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        queue.releaseBlocked();
+        receiver.join(5_000L);
+        assertFalse(receiver.isAlive());
+        assertEquals(1L, queue.getDroppedCount());
+
+        dispatcher.runAll();
+        assertEquals(List.of("first", "second"), handled);
+    }
+
+    @Test
+    public void rejected_dispatch_releases_its_slot() {
+        EventDispatcher rejecting = EventDispatcher.striped(1);
+        rejecting.shutdown();
+        SteppedDispatcher dispatcher = new SteppedDispatcher();
+        List<String> handled = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("test");
+        queue.setMaxInFlight(1);
+
+        assertThrows(RejectedExecutionException.class, () -> offer(queue, rejecting, handled, "message", "U0", "lost"));
+        assertEquals(0, queue.getInFlight());
+        offer(queue, dispatcher, handled, "message", "U0", "next");
+        dispatcher.runAll();
+        assertEquals(List.of("next"), handled);
+    }
+
+    @Test
+    public void events_of_one_key_stay_in_order_across_handler_threads() throws InterruptedException {
+        EventDispatcher dispatcher = EventDispatcher.striped(4);
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+        InboundQueue queue = new InboundQueue("test");
+        queue.setMaxInFlight(4);
+        queue.setCapacity(16);
+        JsonFrame frame = new JsonFrame("{\"type\":\"message\"}");
+        int events = 20_000;
+        try {
+            for (int i = 0; i < events; i++) {
+                int sequence = i;
+                queue.offer(dispatcher, "message", frame, "C1", () -> handled.add(sequence));
+            }
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (handled.size() < events && System.nanoTime() < deadline) {
+                Thread.sleep(10L);
+            }
+        } finally {
+            dispatcher.shutdown();
+        }
+        assertEquals(events, handled.size());
+        for (int i = 0; i < events; i++) {
+            assertEquals(i, handled.get(i));
+        }
+    }
+
+    private static void offer(InboundQueue queue, EventDispatcher dispatcher, List<String> handled, String type, String user, String text) {
+        JsonFrame frame = new JsonFrame("{\"type\":\"" + type + "\",\"user\":\"" + user + "\",\"text\":\"" + text + "\"}");
+        queue.offer(dispatcher, type, frame, user, () -> handled.add(text));
+    }
+
+    /**
+     * Holds dispatched handlers until the test runs them.
+     */
+    private static final class SteppedDispatcher implements EventDispatcher {
+
+        private final ArrayDeque<Runnable> handlers = new ArrayDeque<>();
+
+        @Override
+        public synchronized void dispatch(Object orderingKey, Runnable handler) {
+            handlers.add(handler);
+        }
+
+        void runNext() {
+            Runnable handler;
+            synchronized (this) {
+                handler = handlers.poll();
+            }
+            handler.run();
+        }
+
+        void runAll() {
+            while (getQueueDepth() > 0L) {
+                runNext();
+            }
+        }
+
+        @Override
+        public synchronized long getQueueDepth() {
+            return handlers.size();
+        }
+
+        @Override
+        public LatencyHistogram getHandlerTime() {
+            return null;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class JmxMetricsTest {
+
+    @Test
+    public void aggregates_series_by_source_and_type() {
+        JmxMetrics metrics = new JmxMetrics();
+        metrics.frameReceived("discord", "MESSAGE_CREATE");
+        metrics.frameReceived("discord", "MESSAGE_CREATE");
+        metrics.frameReceived("slack", "message");
+        metrics.bytesReceived("discord", 1024L);
+        metrics.restCall("POST /channels/{channel.id}/messages", 200, 1_000_000L);
+        metrics.restCall("POST /channels/{channel.id}/messages", 429, 2_000_000L);
+        metrics.restCall("POST /channels/{channel.id}/messages", 0, 3_000_000L);
+        metrics.pendingAcks("slack", 1);
+        metrics.pendingAcks("slack", 1);
+        metrics.pendingAcks("slack", -1);
+        metrics.reconnect("discord", true);
+
+        assertEquals(Long.valueOf(2L), metrics.getFramesReceived().get("discord/MESSAGE_CREATE"));
+        assertEquals(Long.valueOf(1L), metrics.getFramesReceived().get("slack/message"));
+        assertEquals(Long.valueOf(1024L), metrics.getBytesReceived().get("discord"));
+        Map<String, Long> responses = metrics.getRestResponses();
+        assertEquals(Long.valueOf(1L), responses.get("POST /channels/{channel.id}/messages/2xx"));
+        assertEquals(Long.valueOf(1L), responses.get("POST /channels/{channel.id}/messages/4xx"));
+        assertEquals(Long.valueOf(1L), responses.get("POST /channels/{channel.id}/messages/error"));
+        assertEquals(3L, metrics.getRestLatency("POST /channels/{channel.id}/messages").getCount());
+        assertEquals(Long.valueOf(1L), metrics.getPendingAcks().get("slack"));
+        assertEquals(Long.valueOf(1L), metrics.getReconnects().get("discord/succeeded"));
+    }
+
+    @Test
+    public void default_instance_is_readable_over_jmx() throws Exception {
+        Metrics.get().frameReceived("test", "ping");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JmxMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertTrue(server.getAttribute(name, "FramesReceived") != null);
+    }
+
+}
@@ -0,0 +1,61 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import javax.json.JsonValue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author Amann Malik
+ */
+public class JsonFrameTest {
+
+    @Test
+    public void reads_discord_envelope_around_nested_payload() {
+        JsonFrame frame = new JsonFrame("{\"t\":\"MESSAGE_CREATE\",\"d\":{\"op\":99,\"t\":\"nested\",\"mentions\":[{\"s\":1,\"channel_id\":\"1\"}],\"channel_id\":\"41771983423143937\",\"guild_id\":\"41771983423143936\"},\"s\":42,\"op\":0}");
+        assertEquals(0, frame.getOp());
+        assertEquals("41771983423143937", frame.getChannelId());
+        assertEquals("41771983423143936", frame.getGuildId());
+        assertEquals(42, frame.getSequence());
+        assertEquals("MESSAGE_CREATE", frame.getEventName());
+        assertNull(frame.getType());
+        assertEquals(99, frame.getData().getInt("op"));
+    }
+
+    @Test
+    public void reads_non_object_payloads() {
+        JsonFrame heartbeatAck = new JsonFrame("{\"op\":11}");
+        assertEquals(11, heartbeatAck.getOp());
+        assertEquals(-1, heartbeatAck.getSequence());
+        assertEquals(JsonValue.NULL, heartbeatAck.getDataValue());
+
+        JsonFrame invalidSession = new JsonFrame("{\"op\":9,\"s\":null,\"d\":true}");
+        assertEquals(-1, invalidSession.getSequence());
+        assertEquals(JsonValue.TRUE, invalidSession.getDataValue());
+        assertNull(invalidSession.getData());
+    }
+
+    @Test
+    public void reads_payload_after_escaped_and_non_ascii_text() {
+        JsonFrame frame = new JsonFrame("{\"t\":\"caf\\u00e9 \u00e9\\\"{\", \"d\" : [{\"channel_id\":\"1\"}, 2],\"op\":0}");
+        assertEquals(0, frame.getOp());
+        assertNull(frame.getChannelId());
+        assertEquals(2, frame.getDataValue().asJsonArray().getInt(1));
+
+        JsonFrame dispatch = new JsonFrame("{\"t\":\"\u00e9\",\"d\":{\"guild_id\":\"41771983423143936\",\"channel_id\":\"41771983423143937\"}}");
+        assertEquals("41771983423143937", dispatch.getChannelId());
+        assertEquals("41771983423143936", dispatch.getData().getString("guild_id"));
+    }
+
+    @Test
+    public void reads_slack_type() {
+        JsonFrame frame = new JsonFrame("{\"type\":\"message\",\"channel\":\"C2147483705\",\"user\":\"U2147483697\",\"text\":\"Hello world\",\"ts\":\"1355517523.000005\"}");
+        assertEquals("message", frame.getType());
+        assertEquals("C2147483705", frame.getChannel());
+        assertEquals(-1, frame.getOp());
+        assertEquals("Hello world", frame.getObject().getString("text"));
+    }
+
+}
@@ -0,0 +1,38 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Amann Malik
+ */
+public class LongObjectMapTest {
+
+    @Test
+    public void matches_hash_map_under_random_operations() {
+        Random random = new Random(42L);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> reference = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // small key space so puts, overwrites and removals collide often
+            long key = 1L + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(key), map.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertEquals(reference.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(reference.size(), map.size());
+        for (Map.Entry<Long, Long> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(reference.size(), map.keys().length);
+    }
+
+}
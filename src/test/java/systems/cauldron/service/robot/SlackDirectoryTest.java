@@ -0,0 +1,68 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import javax.json.Json;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class SlackDirectoryTest {
+
+    private static final String START_RESPONSE = "{\"ok\":true,\"self\":{\"id\":\"U1\",\"prefs\":{\"a\":[1,2,{\"b\":null}]}},"
+            + "\"users\":[{\"id\":\"U1\",\"name\":\"robot\",\"is_bot\":true,\"profile\":{\"image\":\"x\"}},{\"id\":\"U2\",\"name\":\"amann\",\"real_name\":\"Amann\"}],"
+            + "\"channels\":[{\"id\":\"C1\",\"name\":\"general\",\"is_member\":true,\"members\":[\"U1\",\"U2\"],\"topic\":{\"value\":\"hi\"}}],"
+            + "\"groups\":[{\"id\":\"G1\",\"name\":\"secret\",\"is_group\":true,\"members\":[\"U2\"]}],"
+            + "\"ims\":[{\"id\":\"D1\",\"is_im\":true,\"user\":\"U2\"}],"
+            + "\"url\":\"wss://example.com/websocket\"}";
+
+    @Test
+    public void streams_start_response_into_directory() {
+        SlackDirectory directory = new SlackDirectory();
+        SlackDirectory.Page page = directory.ingest(stream(START_RESPONSE));
+        assertEquals("wss://example.com/websocket", page.url);
+        assertNull(page.nextCursor);
+        assertEquals(2, directory.getUserCount());
+        assertTrue(directory.getUser(SlackId.of("U1")).bot);
+        assertEquals("Amann", directory.getUser(SlackId.of("U2")).realName);
+        assertEquals(2, directory.getChannelCount());
+        assertEquals(2, directory.getChannel(SlackId.of("C1")).members.size());
+        assertTrue(directory.getChannel(SlackId.of("G1")).privateChannel);
+        assertEquals(SlackId.of("U2"), directory.getIm(SlackId.of("D1")).user);
+    }
+
+    @Test
+    public void applies_rtm_events() {
+        SlackDirectory directory = new SlackDirectory();
+        directory.ingest(stream(START_RESPONSE));
+        directory.handleEvent("member_left_channel", Json.createObjectBuilder().add("user", "U2").add("channel", "C1").build());
+        directory.handleEvent("channel_rename", Json.createObjectBuilder().add("channel", Json.createObjectBuilder().add("id", "C1").add("name", "lobby")).build());
+        directory.handleEvent("channel_archive", Json.createObjectBuilder().add("channel", "C1").build());
+        directory.handleEvent("team_join", Json.createObjectBuilder().add("user", Json.createObjectBuilder().add("id", "U3").add("name", "new")).build());
+        SlackDirectory.Channel channel = directory.getChannel(SlackId.of("C1"));
+        assertEquals("lobby", channel.name);
+        assertTrue(channel.archived);
+        assertFalse(channel.members.contains(SlackId.of("U2")));
+        assertEquals("new", directory.getUser(SlackId.of("U3")).name);
+    }
+
+    @Test
+    public void reads_next_cursor_of_paged_listing() {
+        SlackDirectory directory = new SlackDirectory();
+        SlackDirectory.Page page = directory.ingest(stream("{\"ok\":true,\"members\":[{\"id\":\"U9\"}],\"response_metadata\":{\"next_cursor\":\"dXNlcjpVMEc5V0ZYTlo=\"}}"));
+        assertEquals("dXNlcjpVMEc5V0ZYTlo=", page.nextCursor);
+        assertEquals(1, directory.getUserCount());
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
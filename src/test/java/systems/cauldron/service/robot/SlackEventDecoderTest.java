@@ -0,0 +1,97 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class SlackEventDecoderTest {
+
+    @Test
+    public void decodes_bot_messages_and_edits_without_user_or_text() {
+        SlackMessageEvent bot = SlackEventDecoder.decodeMessage(new JsonFrame("{\"type\":\"message\",\"subtype\":\"bot_message\",\"channel\":\"C024BE91L\",\"bot_id\":\"B0AB12CDE\",\"attachments\":[{\"text\":\"x\"}],\"ts\":\"1592157764.000200\"}"));
+        assertEquals("bot_message", bot.subtype);
+        assertEquals(SlackId.of("C024BE91L"), bot.channel);
+        assertEquals(SlackId.of("B0AB12CDE"), bot.botId);
+        assertNull(bot.user);
+        assertNull(bot.text);
+        assertEquals(Instant.ofEpochSecond(1592157764L, 200_000L), bot.timestamp);
+
+        SlackMessageEvent edit = SlackEventDecoder.decodeMessage(new JsonFrame("{\"type\":\"message\",\"subtype\":\"message_changed\",\"hidden\":true,\"channel\":\"C024BE91L\",\"ts\":\"1592157800.000300\",\"message\":{\"type\":\"message\",\"user\":\"U024BE7LH\",\"text\":\"fixed\",\"edited\":{\"user\":\"U024BE7LH\",\"ts\":\"1592157800.000000\"},\"ts\":\"1592157764.000200\"}}"));
+        assertEquals(SlackId.of("U024BE7LH"), edit.user);
+        assertEquals("fixed", edit.text);
+        assertEquals("1592157800.000300", edit.ts);
+        assertEquals("1592157764.000200", edit.targetTs);
+
+        SlackMessageEvent deletion = SlackEventDecoder.decodeMessage(new JsonFrame("{\"type\":\"message\",\"subtype\":\"message_deleted\",\"channel\":\"C024BE91L\",\"ts\":\"1592157900.000400\",\"deleted_ts\":\"1592157764.000200\"}"));
+        assertEquals("1592157764.000200", deletion.targetTs);
+        assertNull(deletion.user);
+    }
+
+    @Test
+    public void decodes_reaction_channel_user_and_presence_events() {
+        SlackReactionEvent reaction = SlackEventDecoder.decodeReaction(new JsonFrame("{\"type\":\"reaction_removed\",\"user\":\"U024BE7LH\",\"reaction\":\"thumbsup\",\"item_user\":\"U0G9QF9C6\",\"item\":{\"type\":\"message\",\"channel\":\"C024BE91L\",\"ts\":\"1592157764.000200\"},\"event_ts\":\"1592157765.000100\"}"));
+        assertFalse(reaction.added);
+        assertEquals("thumbsup", reaction.reaction);
+        assertEquals(SlackId.of("C024BE91L"), reaction.channel);
+        assertEquals("1592157764.000200", reaction.itemTs);
+        assertEquals(SlackId.of("U0G9QF9C6"), reaction.itemUser);
+
+        SlackChannelEvent created = SlackEventDecoder.decodeChannel(new JsonFrame("{\"type\":\"channel_created\",\"channel\":{\"id\":\"C024BE91L\",\"name\":\"fun\",\"created\":1360782804,\"creator\":\"U024BE7LH\"}}"));
+        assertEquals("channel_created", created.type);
+        assertEquals("fun", created.name);
+        assertEquals(SlackId.of("U024BE7LH"), created.user);
+        SlackChannelEvent archived = SlackEventDecoder.decodeChannel(new JsonFrame("{\"type\":\"channel_archive\",\"channel\":\"C024BE91L\",\"user\":\"U0G9QF9C6\"}"));
+        assertEquals(SlackId.of("C024BE91L"), archived.channel);
+        assertEquals(SlackId.of("U0G9QF9C6"), archived.user);
+        assertNull(archived.name);
+
+        SlackUserEvent user = SlackEventDecoder.decodeUser(new JsonFrame("{\"type\":\"user_change\",\"user\":{\"id\":\"U024BE7LH\",\"name\":\"bobby\",\"deleted\":true,\"profile\":{\"real_name\":\"Bobby Tables\",\"image_24\":\"https://example.com/a.png\"}}}"));
+        assertEquals(SlackId.of("U024BE7LH"), user.user);
+        assertEquals("Bobby Tables", user.realName);
+        assertTrue(user.deleted);
+        assertFalse(user.bot);
+
+        SlackPresenceEvent batch = SlackEventDecoder.decodePresence(new JsonFrame("{\"type\":\"presence_change\",\"users\":[\"U024BE7LH\",\"U0G9QF9C6\"],\"presence\":\"active\"}"));
+        assertEquals(List.of(SlackId.of("U024BE7LH"), SlackId.of("U0G9QF9C6")), batch.users);
+        assertTrue(batch.active);
+        SlackPresenceEvent single = SlackEventDecoder.decodePresence(new JsonFrame("{\"type\":\"presence_change\",\"user\":\"U024BE7LH\",\"presence\":\"away\"}"));
+        assertEquals(List.of(SlackId.of("U024BE7LH")), single.users);
+        assertFalse(single.active);
+    }
+
+    @Test
+    public void parses_timestamps_of_any_fraction_length() {
+        assertEquals(Instant.ofEpochSecond(1592157764L, 200_000L), Util.convertTimestamp("1592157764.000200"));
+        assertEquals(Instant.ofEpochSecond(1592157764L, 500_000_000L), Util.convertTimestamp("1592157764.5"));
+        assertEquals(Instant.ofEpochSecond(1592157764L), Util.convertTimestamp("1592157764"));
+        assertEquals(Instant.ofEpochSecond(1L, 123_456_789L), Util.convertTimestamp("1.123456789"));
+        assertThrows(IllegalArgumentException.class, () -> Util.convertTimestamp("1592157764.0000000001"));
+        assertThrows(IllegalArgumentException.class, () -> Util.convertTimestamp(".5"));
+        assertThrows(IllegalArgumentException.class, () -> Util.convertTimestamp("15x2.5"));
+    }
+
+    @Test
+    public void skips_unsubscribed_types_without_decoding_them() {
+        SlackSocket socket = new SlackSocket("token");
+        List<SlackReactionEvent> reactions = new ArrayList<>();
+        socket.addEventHandler(SlackEventType.REACTION, reactions::add);
+        // decoding this message would fail on its timestamp
+        socket.handleMessage(new JsonFrame("{\"type\":\"message\",\"channel\":\"C024BE91L\",\"user\":\"U024BE7LH\",\"text\":\"hi\",\"ts\":\"not a timestamp\"}"));
+        socket.handleMessage(new JsonFrame("{\"type\":\"reaction_added\",\"user\":\"U024BE7LH\",\"reaction\":\"tada\",\"item\":{\"type\":\"message\",\"channel\":\"C024BE91L\",\"ts\":\"1592157764.000200\"},\"event_ts\":\"1592157765.000100\"}"));
+        assertEquals(1, reactions.size());
+        assertTrue(reactions.get(0).added);
+        assertEquals("tada", reactions.get(0).reaction);
+    }
+
+}
@@ -0,0 +1,161 @@
+package systems.cauldron.service.robot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class SlackWebClientTest {
+
+    @Test
+    public void completes_with_the_real_result() throws IOException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        HttpServer server = startServer(executor, exchange -> {
+            JsonObject request = Json.createReader(exchange.getRequestBody()).readObject();
+            assertEquals("Bearer xoxb-test", exchange.getRequestHeaders().getFirst("Authorization"));
+            assertNull(exchange.getRequestURI().getQuery());
+            if ("thumbsup".equals(request.getString("name"))) {
+                respond(exchange, 200, "{\"ok\":true}");
+            } else {
+                respond(exchange, 200, "{\"ok\":false,\"error\":\"invalid_name\"}");
+            }
+        });
+        try {
+            SlackWebClient client = new SlackWebClient("xoxb-test", baseUrl(server));
+            assertTrue(client.addReaction("C1", "1592157764.000200", "thumbsup").join().getBoolean("ok"));
+            CompletionException failure = assertThrows(CompletionException.class,
+                    () -> client.addReaction("C1", "1592157764.000200", "not-an-emoji").join());
+            SlackApiException error = (SlackApiException) failure.getCause();
+            assertEquals("reactions.add", error.getMethod());
+            assertEquals("invalid_name", error.getError());
+        } finally {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void retries_after_429_without_exceeding_the_concurrency_limit() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        HttpServer server = startServer(executor, exchange -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20L);
+                if (calls.getAndIncrement() == 0) {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    respond(exchange, 429, "{\"ok\":false,\"error\":\"ratelimited\"}");
+                } else {
+                    respond(exchange, 200, "{\"ok\":true}");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        });
+        try {
+            SlackWebClient client = new SlackWebClient("xoxb-test", baseUrl(server));
+            client.setMaxConcurrentRequests(2);
+            long start = System.currentTimeMillis();
+            List<CompletableFuture<JsonObject>> results = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                results.add(client.deleteMessage("C" + i, "1592157764.00020" + i));
+            }
+            for (CompletableFuture<JsonObject> result : results) {
+                assertTrue(result.join().getBoolean("ok"));
+            }
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertEquals(7, calls.get());
+            assertTrue(maxConcurrent.get() <= 2, "too many concurrent calls: " + maxConcurrent.get());
+            assertTrue(elapsed >= 1000L, "retried too early: " + elapsed);
+            assertEquals(0, client.getQueueDepth());
+        } finally {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void streams_pages_with_the_token_in_the_header_after_a_429() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        HttpServer server = startServer(executor, exchange -> {
+            assertEquals("Bearer xoxb-test", exchange.getRequestHeaders().getFirst("Authorization"));
+            assertEquals("limit=1000&cursor=abc", exchange.getRequestURI().getRawQuery());
+            if (calls.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                respond(exchange, 429, "{\"ok\":false,\"error\":\"ratelimited\"}");
+            } else {
+                respond(exchange, 200, "{\"ok\":true,\"members\":[]}");
+            }
+        });
+        try {
+            SlackWebClient client = new SlackWebClient("xoxb-test", baseUrl(server));
+            try (InputStream body = client.stream("users.list", SlackWebClient.Tier.TIER_2, "limit=1000&cursor=abc").join()) {
+                assertEquals("{\"ok\":true,\"members\":[]}", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            assertEquals(2, calls.get());
+        } finally {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private static HttpServer startServer(ExecutorService executor, Handler handler) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/", exchange -> {
+            try {
+                handler.handle(exchange);
+            } catch (AssertionError e) {
+                respond(exchange, 400, "{\"ok\":false,\"error\":\"" + e.getMessage() + "\"}");
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    private static String baseUrl(HttpServer server) {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
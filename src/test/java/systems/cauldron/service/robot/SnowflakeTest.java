@@ -0,0 +1,24 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Amann Malik
+ */
+public class SnowflakeTest {
+
+    @Test
+    public void parses_the_full_unsigned_range_and_rejects_past_it() {
+        assertEquals(175928847299117063L, Snowflake.parseLong("175928847299117063"));
+        assertEquals(-1L, Snowflake.parseLong("18446744073709551615"));
+        assertEquals(Long.MIN_VALUE, Snowflake.parseLong("9223372036854775808"));
+        assertThrows(NumberFormatException.class, () -> Snowflake.parseLong("18446744073709551616"));
+        assertThrows(NumberFormatException.class, () -> Snowflake.parseLong("99999999999999999999"));
+        assertThrows(NumberFormatException.class, () -> Snowflake.parseLong("100000000000000000000"));
+        assertThrows(NumberFormatException.class, () -> Snowflake.parseLong("12a"));
+    }
+
+}
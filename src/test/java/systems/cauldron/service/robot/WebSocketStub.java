@@ -0,0 +1,306 @@
+package systems.cauldron.service.robot;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bare-bones RFC 6455 server: just enough of the protocol (handshake, text frames, fragmentation, ping and close) to
+ * stand in for the Discord gateway and Slack RTM in tests, without a server container dependency.
+ *
+ * @author Amann Malik
+ */
+class WebSocketStub implements AutoCloseable {
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    interface Handler {
+
+        void onOpen(Connection connection);
+
+        void onText(Connection connection, String text);
+
+        default void onClose(Connection connection, int closeCode) {
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final Handler handler;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    WebSocketStub(Handler handler) throws IOException {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "websocket-stub-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    URI getUri() {
+        return URI.create("ws://localhost:" + serverSocket.getLocalPort() + "/");
+    }
+
+    Set<Connection> getConnections() {
+        return connections;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Connection connection : connections) {
+            connection.abort();
+        }
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> serve(socket), "websocket-stub-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException ex) {
+                if (running) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Connection connection = null;
+        int closeCode = 1006;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = socket.getOutputStream();
+            String requestTarget = handshake(in, out);
+            connection = new Connection(socket, out, requestTarget);
+            connections.add(connection);
+            handler.onOpen(connection);
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            while (true) {
+                int first = in.readUnsignedByte();
+                int second = in.readUnsignedByte();
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0F;
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = in.readLong();
+                }
+                byte[] mask = new byte[4];
+                if ((second & 0x80) != 0) {
+                    in.readFully(mask);
+                }
+                byte[] payload = new byte[(int) length];
+                in.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+                switch (opcode) {
+                    case 0x0:
+                    case 0x1:
+                        message.write(payload);
+                        if (fin) {
+                            String text = message.toString(StandardCharsets.UTF_8);
+                            message.reset();
+                            handler.onText(connection, text);
+                        }
+                        break;
+                    case 0x8:
+                        closeCode = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : 1005;
+                        connection.replyToClose(payload);
+                        return;
+                    case 0x9:
+                        connection.writeFrame(0xA, payload);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (EOFException | SocketException ex) {
+            // peer went away
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            if (connection != null) {
+                connections.remove(connection);
+                connection.abort();
+                handler.onClose(connection, closeCode);
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static String handshake(InputStream in, OutputStream out) throws IOException {
+        String requestLine = readLine(in);
+        String key = null;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+        if (key == null) {
+            throw new IOException("not a websocket upgrade: " + requestLine);
+        }
+        String accept;
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            accept = Base64.getEncoder().encodeToString(sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        String[] parts = requestLine.split(" ");
+        return parts.length > 1 ? parts[1] : "/";
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        if (c == -1 && line.length() == 0) {
+            throw new EOFException();
+        }
+        return line.toString();
+    }
+
+    static final class Connection {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final String requestTarget;
+        private boolean closeSent = false;
+
+        volatile Object attachment;
+
+        private Connection(Socket socket, OutputStream out, String requestTarget) {
+            this.socket = socket;
+            this.out = out;
+            this.requestTarget = requestTarget;
+        }
+
+        String getRequestTarget() {
+            return requestTarget;
+        }
+
+        boolean isOpen() {
+            return !socket.isClosed();
+        }
+
+        /**
+         * Does nothing once the closing handshake has started, as no data frames may follow a close frame.
+         */
+        void sendText(String text) {
+            try {
+                synchronized (this) {
+                    if (closeSent) {
+                        return;
+                    }
+                    writeFrame(0x1, text.getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException ex) {
+                abort();
+            }
+        }
+
+        /**
+         * Starts the closing handshake; the connection ends once the client echoes the close.
+         */
+        void close(int closeCode, String reason) {
+            byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+            byte[] payload = new byte[2 + reasonBytes.length];
+            payload[0] = (byte) (closeCode >>> 8);
+            payload[1] = (byte) closeCode;
+            System.arraycopy(reasonBytes, 0, payload, 2, reasonBytes.length);
+            try {
+                synchronized (this) {
+                    if (closeSent) {
+                        return;
+                    }
+                    closeSent = true;
+                    writeFrame(0x8, payload);
+                }
+            } catch (IOException ex) {
+                abort();
+            }
+        }
+
+        /**
+         * Drops the TCP connection without a closing handshake, like a network failure would.
+         */
+        void abort() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void replyToClose(byte[] payload) throws IOException {
+            synchronized (this) {
+                if (!closeSent) {
+                    closeSent = true;
+                    writeFrame(0x8, payload.length >= 2 ? new byte[]{payload[0], payload[1]} : new byte[0]);
+                }
+            }
+        }
+
+        private synchronized void writeFrame(int opcode, byte[] payload) throws IOException {
+            int length = payload.length;
+            byte[] header;
+            if (length < 126) {
+                header = new byte[]{(byte) (0x80 | opcode), (byte) length};
+            } else if (length < 65536) {
+                header = new byte[]{(byte) (0x80 | opcode), 126, (byte) (length >>> 8), (byte) length};
+            } else {
+                header = new byte[10];
+                header[0] = (byte) (0x80 | opcode);
+                header[1] = 127;
+                for (int i = 0; i < 8; i++) {
+                    header[9 - i] = (byte) ((long) length >>> (8 * i));
+                }
+            }
+            out.write(header);
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package systems.cauldron.service.robot;
+
+import org.junit.jupiter.api.Test;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Amann Malik
+ */
+public class ZlibStreamDecoderTest {
+
+    @Test
+    public void inflates_consecutive_payloads_sharing_one_context() {
+        Deflater deflater = new Deflater();
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        for (int i = 0; i < 50; i++) {
+            String payload = guildCreate(i, 20);
+            assertTrue(decoder.feed(ByteBuffer.wrap(compress(deflater, payload))));
+            assertEquals(payload, new String(decoder.buffer(), 0, decoder.length(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void waits_for_flush_suffix_across_split_frames() {
+        Deflater deflater = new Deflater();
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        String payload = guildCreate(1, 2000);
+        byte[] compressed = compress(deflater, payload);
+        int split = compressed.length / 2;
+        assertFalse(decoder.feed(ByteBuffer.wrap(Arrays.copyOfRange(compressed, 0, split))));
+        assertTrue(decoder.feed(ByteBuffer.wrap(Arrays.copyOfRange(compressed, split, compressed.length))));
+        assertEquals(payload, new String(decoder.buffer(), 0, decoder.length(), StandardCharsets.UTF_8));
+    }
+
+    private static byte[] compress(Deflater deflater, String payload) {
+        deflater.setInput(payload.getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[1024];
+        byte[] result = new byte[0];
+        int length;
+        do {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            int offset = result.length;
+            result = Arrays.copyOf(result, offset + length);
+            System.arraycopy(buffer, 0, result, offset, length);
+        } while (length == buffer.length);
+        return result;
+    }
+
+    private static String guildCreate(int sequence, int memberCount) {
+        long guildId = 81384788765712384L + sequence;
+        JsonArrayBuilder members = Json.createArrayBuilder();
+        for (int i = 0; i < memberCount; i++) {
+            members.add(Json.createObjectBuilder()
+                    .add("user", Json.createObjectBuilder()
+                            .add("id", Long.toString(80351110224678912L + i))
+                            .add("username", "member" + i)
+                            .add("discriminator", String.format("%04d", i % 10000))
+                            .addNull("avatar"))
+                    .add("roles", Json.createArrayBuilder().add(Long.toString(guildId)))
+                    .add("joined_at", "2018-03-01T12:00:00.000000+00:00")
+                    .add("deaf", false)
+                    .add("mute", false));
+        }
+        JsonObject message = Json.createObjectBuilder()
+                .add("t", "GUILD_CREATE")
+                .add("s", sequence)
+                .add("op", 0)
+                .add("d", Json.createObjectBuilder()
+                        .add("id", Long.toString(guildId))
+                        .add("name", "guild " + sequence)
+                        .add("member_count", memberCount)
+                        .add("members", members))
+                .build();
+        return message.toString();
+    }
+
+}